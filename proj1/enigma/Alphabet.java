@@ -1,5 +1,9 @@
 package enigma;
 
+import java.util.Arrays;
+
+import static enigma.EnigmaException.*;
+
 /** An alphabet of encodable characters.  Provides a mapping from characters
  *  to and from indices into the alphabet.
  *  @author Preston Weber
@@ -8,17 +12,29 @@ class Alphabet {
 
     /** An alphabet of characters.*/
     private String _chars;
-    /** A character list.*/
-    private char[] _charAt;
+    /** The code point of each character, indexed by its alphabet index. */
+    private int[] _codePointAt;
+
+    /** Largest code point range that is indexed with a dense table. */
+    private static final int MAX_DENSE_RANGE = 1 << 12;
+
+    /** Smallest code point in the alphabet. */
+    private int _minCodePoint;
+    /** Dense index table: _dense[cp - _minCodePoint] is the index of cp,
+     *  or -1.  Null when the alphabet is indexed with _keys instead. */
+    private int[] _dense;
+    /** Open-addressed hash table of code points for sparse alphabets.
+     *  Empty slots hold -1.  Its length is a power of two. */
+    private int[] _keys;
+    /** Alphabet index of the code point held in the same slot of _keys. */
+    private int[] _values;
 
     /** A new alphabet containing CHARS.  Character number #k has index
      *  K (numbering from 0). No character may be duplicated. */
     Alphabet(String chars) {
         _chars = chars;
-        _charAt = new char[_chars.length()];
-        for (int i = 0; i < _chars.length(); i++) {
-            _charAt[i] += _chars.charAt(i);
-        }
+        _codePointAt = chars.codePoints().toArray();
+        compile();
     }
 
     /** A default alphabet of all upper-case characters. */
@@ -28,29 +44,141 @@ class Alphabet {
 
     /** Returns the size of the alphabet. */
     int size() {
-        return _chars.length();
+        return _codePointAt.length;
     }
 
     /** Returns true if preprocess(CH) is in this alphabet.
      * EDIT: Returns true if CH is in this alphabet. */
     boolean contains(char ch) {
-        for (int i = 0; i < _charAt.length; i++) {
-            if (_charAt[i] == ch) {
-                return true;
-            }
-        }
-        return false;
+        return indexOf(ch) >= 0;
+    }
+
+    /** Returns true iff the code point CODEPOINT is in this alphabet. */
+    boolean containsCodePoint(int codePoint) {
+        return indexOf(codePoint) >= 0;
     }
 
     /** Returns character number INDEX in the alphabet, where
-     *  0 <= INDEX < size(). */
+     *  0 <= INDEX < size().  The character must not be a supplementary
+     *  character, which does not fit in a char; see symbol(). */
     char toChar(int index) {
-        return _charAt[index];
+        int cp = _codePointAt[index];
+        if (Character.isSupplementaryCodePoint(cp)) {
+            throw error("character %s does not fit in a char",
+                        symbol(index));
+        }
+        return (char) cp;
+    }
+
+    /** Returns character number INDEX in the alphabet, where
+     *  0 <= INDEX < size(), as a string (of two chars if it is a
+     *  supplementary character). */
+    String symbol(int index) {
+        return new String(Character.toChars(_codePointAt[index]));
+    }
+
+    /** Returns the code point of character number INDEX in the alphabet,
+     *  where 0 <= INDEX < size(). */
+    int toCodePoint(int index) {
+        return _codePointAt[index];
     }
 
     /** Returns the index of character CH, which must be in
      *  the alphabet. This is the inverse of toChar(). */
     int toInt(char ch) {
-        return _chars.indexOf(ch);
+        return indexOf(ch);
+    }
+
+    /** Returns the index of the code point CODEPOINT, or -1 if it is not
+     *  in the alphabet.  This is the inverse of toCodePoint(). */
+    int indexOf(int codePoint) {
+        if (_dense != null) {
+            int offset = codePoint - _minCodePoint;
+            if (offset < 0 || offset >= _dense.length) {
+                return -1;
+            }
+            return _dense[offset];
+        }
+        int mask = _keys.length - 1;
+        for (int slot = hash(codePoint) & mask; ; slot = (slot + 1) & mask) {
+            int key = _keys[slot];
+            if (key == codePoint) {
+                return _values[slot];
+            } else if (key == -1) {
+                return -1;
+            }
+        }
+    }
+
+    /** Returns the indices of the characters of TEXT other than white
+     *  space, all of which must be in the alphabet. */
+    int[] indices(String text) {
+        int[] result = new int[text.length()];
+        int n = 0;
+        for (int i = 0; i < text.length(); i += Character.charCount(
+                 text.codePointAt(i))) {
+            int c = text.codePointAt(i);
+            if (Character.isWhitespace(c)) {
+                continue;
+            }
+            result[n] = indexOf(c);
+            if (result[n] < 0) {
+                throw error("character '%s' is not in the alphabet",
+                            new String(Character.toChars(c)));
+            }
+            n += 1;
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    /** Build the lookup structure used by indexOf: a dense table when the
+     *  code points span a small range, and otherwise a hash table. */
+    private void compile() {
+        if (size() == 0) {
+            _dense = new int[0];
+            return;
+        }
+        int min = Integer.MAX_VALUE, max = Integer.MIN_VALUE;
+        for (int cp : _codePointAt) {
+            min = Math.min(min, cp);
+            max = Math.max(max, cp);
+        }
+        _minCodePoint = min;
+        if (max - min < MAX_DENSE_RANGE) {
+            _dense = new int[max - min + 1];
+            Arrays.fill(_dense, -1);
+            for (int i = 0; i < size(); i++) {
+                int cp = _codePointAt[i];
+                if (_dense[cp - min] >= 0) {
+                    throw error("duplicate character in alphabet: %s",
+                                new String(Character.toChars(cp)));
+                }
+                _dense[cp - min] = i;
+            }
+            return;
+        }
+        int capacity = Integer.highestOneBit(size() * 2 - 1) << 1;
+        _keys = new int[capacity];
+        _values = new int[capacity];
+        Arrays.fill(_keys, -1);
+        for (int i = 0; i < size(); i++) {
+            int cp = _codePointAt[i];
+            int slot = hash(cp) & (capacity - 1);
+            while (_keys[slot] != -1) {
+                if (_keys[slot] == cp) {
+                    throw error("duplicate character in alphabet: %s",
+                                new String(Character.toChars(cp)));
+                }
+                slot = (slot + 1) & (capacity - 1);
+            }
+            _keys[slot] = cp;
+            _values[slot] = i;
+        }
+    }
+
+    /** Returns a well-mixed hash of CODEPOINT. */
+    private static int hash(int codePoint) {
+        int h = codePoint * 0x9E3779B9;
+        return h ^ (h >>> 16);
     }
 }
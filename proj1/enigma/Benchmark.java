@@ -0,0 +1,519 @@
+package enigma;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static enigma.EnigmaException.*;
+
+/** A throughput benchmark suite for the engine, to guard against
+ *  regressions.  It measures Permutation.permute and invert,
+ *  Alphabet.toInt, Rotor.convertForward, Machine.convert one character
+ *  at a time and in bulk, and Main end to end on generated inputs, for
+ *  machines wired at random with each of a list of alphabet sizes and
+ *  numbers of rotor slots (all but two of them moving).  Each case is
+ *  run for some warm-up iterations, whose results are discarded, and
+ *  then for some measured iterations, each repeating the case's work
+ *  for a fixed time, and its cost is reported in nanoseconds per
+ *  character (or per operation) with its standard deviation.
+ *
+ *  The parameters are set with system properties:
+ *      enigma.bench.alphabets   alphabet sizes (default 26,64,256)
+ *      enigma.bench.rotors      numbers of rotor slots (default 5,10)
+ *      enigma.bench.sizes       characters in each Main input, with
+ *                               suffixes K, M or G (default 1K,1M,64M)
+ *      enigma.bench.warmup      warm-up iterations (default 3)
+ *      enigma.bench.iterations  measured iterations (default 5)
+ *      enigma.bench.time        milliseconds per iteration (default 500)
+ *      enigma.bench.tolerance   slowdown allowed by check (default 0.1)
+ *  @author Preston Weber
+ */
+public final class Benchmark {
+
+    /** Run benchmarks, as specified by ARGS, which is one of
+     *      run [PATTERN...]
+     *      save FILE [PATTERN...]
+     *      check FILE [PATTERN...]
+     *  Runs the cases whose names contain one of the PATTERNs (all of
+     *  them if there are none), writing a line for each.  "save" also
+     *  writes the results to FILE as a baseline; "check" compares them
+     *  with the baseline in FILE and fails if any case is slower than
+     *  its baseline by more than the tolerance.  Exits normally if
+     *  there are no errors or regressions; otherwise with code 1. */
+    public static void main(String... args) {
+        try {
+            if (args.length < 1) {
+                throw error("usage: run|save FILE|check FILE [PATTERN...]");
+            }
+            int first = args[0].equals("run") ? 1 : 2;
+            if (first > args.length || !args[0].equals("run")
+                && !args[0].equals("save") && !args[0].equals("check")) {
+                throw error("usage: run|save FILE|check FILE [PATTERN...]");
+            }
+            Map<String, Double> baseline = null;
+            if (args[0].equals("check")) {
+                baseline = load(args[1]);
+            }
+            List<String> patterns = new ArrayList<>();
+            for (int i = first; i < args.length; i += 1) {
+                patterns.add(args[i]);
+            }
+            Map<String, Double> results = run(patterns);
+            if (args[0].equals("save")) {
+                save(results, args[1]);
+            } else if (baseline != null) {
+                check(results, baseline);
+            }
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Number of warm-up iterations of each case. */
+    static final int WARMUP = Integer.getInteger("enigma.bench.warmup", 3);
+
+    /** Number of measured iterations of each case. */
+    static final int ITERATIONS =
+        Integer.getInteger("enigma.bench.iterations", 5);
+
+    /** Nanoseconds for which each iteration repeats its case's work. */
+    static final long ITERATION_NANOS =
+        Integer.getInteger("enigma.bench.time", 500) * 1_000_000L;
+
+    /** Largest fraction by which a case may be slower than its
+     *  baseline. */
+    static final double TOLERANCE =
+        Double.parseDouble(System.getProperty("enigma.bench.tolerance",
+                                              "0.1"));
+
+    /** Number of operations in each batch of the small cases. */
+    static final int BATCH = 1 << 12;
+
+    /** Number of characters converted at a time in bulk. */
+    static final int BULK = 1 << 16;
+
+    /** Number of characters in each message line of a Main input. */
+    static final int LINE_LENGTH = 1000;
+
+    /** Seed of the random wirings and inputs. */
+    static final long SEED = 61;
+
+    /** One repetition of the work of a case. */
+    private interface Workload {
+        /** Do the work once, returning the number of characters (or
+         *  operations) processed. */
+        long run();
+    }
+
+    /** Run the cases whose names contain one of PATTERNS, or all of them
+     *  if it is empty, writing a line for each, and return their costs
+     *  in nanoseconds per character, by name. */
+    static Map<String, Double> run(List<String> patterns) {
+        int[] alphabets = parseList(
+            System.getProperty("enigma.bench.alphabets", "26,64,256"));
+        int[] rotors =
+            parseList(System.getProperty("enigma.bench.rotors", "5,10"));
+        int[] sizes = parseList(
+            System.getProperty("enigma.bench.sizes", "1K,1M,64M"));
+        Map<String, Double> results = new LinkedHashMap<>();
+        for (int size : alphabets) {
+            Alphabet alphabet = alphabet(size);
+            for (int r = 0; r < rotors.length; r += 1) {
+                Machine machine = machine(alphabet, rotors[r]);
+                String params = "/alphabet=" + size;
+                if (r == 0) {
+                    for (Map.Entry<String, Workload> e
+                             : primitives(machine).entrySet()) {
+                        measure(e.getKey() + params, e.getValue(),
+                                patterns, results);
+                    }
+                }
+                params += "/rotors=" + rotors[r];
+                measure("convertChar" + params, convertChar(machine),
+                        patterns, results);
+                measure("convertBulk" + params, convertBulk(machine),
+                        patterns, results);
+                for (int chars : sizes) {
+                    String name =
+                        "main" + params + "/size=" + formatSize(chars);
+                    if (!selected(name, patterns)) {
+                        continue;
+                    } else if (!encodable(alphabet)) {
+                        System.out.printf("%-44s skipped: alphabet not in"
+                                          + " the default charset%n", name);
+                    } else {
+                        try (MainWorkload main =
+                                 new MainWorkload(machine, chars)) {
+                            measure(name, main, patterns, results);
+                        }
+                    }
+                }
+            }
+        }
+        return results;
+    }
+
+    /** Return the workloads of the primitive operations on the parts of
+     *  MACHINE, which has been set up, by name. */
+    private static Map<String, Workload> primitives(Machine machine) {
+        Alphabet alphabet = machine.alphabet();
+        Rotor rotor = machine.allRotors().stream()
+            .filter(Rotor::rotates).findFirst().get();
+        Permutation perm = rotor.permutation();
+        int[] indices = randomIndices(alphabet.size(), BATCH);
+        int[] settings = new Random(SEED + 1)
+            .ints(BATCH, 0, alphabet.size()).toArray();
+        char[] chars = new char[BATCH];
+        for (int i = 0; i < BATCH; i += 1) {
+            chars[i] = alphabet.toChar(indices[i]);
+        }
+        Map<String, Workload> workloads = new LinkedHashMap<>();
+        workloads.put("permute", () -> {
+            long sum = 0;
+            for (int i = 0; i < BATCH; i += 1) {
+                sum += perm.permute(indices[i]);
+            }
+            _sink = sum;
+            return BATCH;
+        });
+        workloads.put("invert", () -> {
+            long sum = 0;
+            for (int i = 0; i < BATCH; i += 1) {
+                sum += perm.invert(indices[i]);
+            }
+            _sink = sum;
+            return BATCH;
+        });
+        workloads.put("toInt", () -> {
+            long sum = 0;
+            for (int i = 0; i < BATCH; i += 1) {
+                sum += alphabet.toInt(chars[i]);
+            }
+            _sink = sum;
+            return BATCH;
+        });
+        workloads.put("convertForward", () -> {
+            long sum = 0;
+            for (int i = 0; i < BATCH; i += 1) {
+                sum += rotor.convertForward(indices[i], settings[i]);
+            }
+            _sink = sum;
+            return BATCH;
+        });
+        return workloads;
+    }
+
+    /** Return the workload converting one character at a time with
+     *  MACHINE, which has been set up. */
+    private static Workload convertChar(Machine machine) {
+        int[] indices = randomIndices(machine.alphabet().size(), BATCH);
+        return () -> {
+            long sum = 0;
+            for (int i = 0; i < BATCH; i += 1) {
+                sum += machine.convert(indices[i]);
+            }
+            _sink = sum;
+            return BATCH;
+        };
+    }
+
+    /** Return the workload converting a buffer of characters in bulk
+     *  with MACHINE, which has been set up. */
+    private static Workload convertBulk(Machine machine) {
+        Alphabet alphabet = machine.alphabet();
+        int[] indices = randomIndices(alphabet.size(), BULK);
+        char[] buffer = new char[BULK];
+        for (int i = 0; i < BULK; i += 1) {
+            buffer[i] = alphabet.toChar(indices[i]);
+        }
+        return () -> {
+            machine.convert(buffer, 0, buffer, 0, BULK);
+            _sink = buffer[0];
+            return BULK;
+        };
+    }
+
+    /** The workload running Main on a generated input, whose files are
+     *  deleted when it is closed. */
+    private static final class MainWorkload
+        implements Workload, AutoCloseable {
+
+        /** A workload converting CHARS random characters with the
+         *  configuration of MACHINE, which has been set up. */
+        MainWorkload(Machine machine, int chars) {
+            _chars = chars;
+            try {
+                _config = File.createTempFile("enigma", ".conf");
+                _input = File.createTempFile("enigma", ".in");
+                _output = File.createTempFile("enigma", ".out");
+                _config.delete();
+                CompiledConfig.save(machine,
+                                    _config.getPath() + CompiledConfig.SUFFIX);
+                writeInput(machine, chars, _input.getPath());
+            } catch (IOException excp) {
+                close();
+                throw error("could not create benchmark input: %s",
+                            excp.getMessage());
+            }
+        }
+
+        @Override
+        public long run() {
+            Main.main(_config.getPath(), _input.getPath(),
+                      _output.getPath());
+            return _chars;
+        }
+
+        @Override
+        public void close() {
+            for (File file : new File[] {
+                    _config, _input, _output,
+                    _config == null ? null
+                    : new File(_config.getPath() + CompiledConfig.SUFFIX) }) {
+                if (file != null) {
+                    file.delete();
+                }
+            }
+        }
+
+        /** Number of message characters in the input. */
+        private final int _chars;
+
+        /** Name of the configuration, whose compiled form is used. */
+        private File _config;
+
+        /** The input and output files. */
+        private File _input, _output;
+    }
+
+    /** Write to the file named NAME an input for Main setting up
+     *  MACHINE's rotors at their first setting and then converting
+     *  CHARS random characters in lines of LINE_LENGTH. */
+    private static void writeInput(Machine machine, int chars, String name)
+        throws IOException {
+        Alphabet alphabet = machine.alphabet();
+        Random random = new Random(SEED);
+        try (BufferedWriter out = Files.newBufferedWriter(
+                 Paths.get(name), Charset.defaultCharset())) {
+            out.write("* " + String.join(" ", rotorNames(machine)) + " ");
+            for (int i = 1; i < machine.numRotors(); i += 1) {
+                out.write(alphabet.toChar(0));
+            }
+            out.newLine();
+            for (int i = 0; i < chars; i += 1) {
+                out.write(alphabet.toChar(random.nextInt(alphabet.size())));
+                if (i % LINE_LENGTH == LINE_LENGTH - 1 || i == chars - 1) {
+                    out.newLine();
+                }
+            }
+        }
+    }
+
+    /** Measure the case named NAME doing WORKLOAD, if its name contains
+     *  one of PATTERNS or PATTERNS is empty, writing a line for it and
+     *  adding its cost to RESULTS. */
+    private static void measure(String name, Workload workload,
+                                List<String> patterns,
+                                Map<String, Double> results) {
+        if (!selected(name, patterns)) {
+            return;
+        }
+        for (int i = 0; i < WARMUP; i += 1) {
+            iteration(workload);
+        }
+        double[] costs = new double[ITERATIONS];
+        double mean = 0;
+        for (int i = 0; i < ITERATIONS; i += 1) {
+            costs[i] = iteration(workload);
+            mean += costs[i] / ITERATIONS;
+        }
+        double variance = 0;
+        for (double cost : costs) {
+            variance += (cost - mean) * (cost - mean) / ITERATIONS;
+        }
+        System.out.printf("%-44s %10.3f +- %7.3f ns/char %9.1f Mchar/s%n",
+                          name, mean, Math.sqrt(variance), 1e3 / mean);
+        results.put(name, mean);
+    }
+
+    /** Return the cost, in nanoseconds per character, of repeating
+     *  WORKLOAD for ITERATION_NANOS (and at least once). */
+    private static double iteration(Workload workload) {
+        long start = System.nanoTime(), elapsed, chars = 0;
+        do {
+            chars += workload.run();
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < ITERATION_NANOS);
+        return (double) elapsed / chars;
+    }
+
+    /** Return true iff NAME contains one of PATTERNS, or PATTERNS is
+     *  empty. */
+    private static boolean selected(String name, List<String> patterns) {
+        if (patterns.isEmpty()) {
+            return true;
+        }
+        for (String pattern : patterns) {
+            if (name.contains(pattern)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Write RESULTS to the file named NAME, a line per case. */
+    private static void save(Map<String, Double> results, String name) {
+        try (PrintWriter out = new PrintWriter(name)) {
+            for (Map.Entry<String, Double> e : results.entrySet()) {
+                out.printf("%s %s%n", e.getKey(), e.getValue());
+            }
+        } catch (IOException excp) {
+            throw error("could not write %s", name);
+        }
+    }
+
+    /** Return the results saved in the file named NAME. */
+    private static Map<String, Double> load(String name) {
+        Map<String, Double> results = new LinkedHashMap<>();
+        for (String line : Main.readFile(name).split("\\R")) {
+            if (line.isBlank()) {
+                continue;
+            }
+            String[] fields = line.trim().split(" ");
+            try {
+                results.put(fields[0], Double.parseDouble(fields[1]));
+            } catch (NumberFormatException
+                     | ArrayIndexOutOfBoundsException excp) {
+                throw error("bad baseline line: %s", line);
+            }
+        }
+        return results;
+    }
+
+    /** Fail if any of RESULTS is slower than its entry in BASELINE by
+     *  more than TOLERANCE. */
+    private static void check(Map<String, Double> results,
+                              Map<String, Double> baseline) {
+        List<String> regressions = new ArrayList<>();
+        for (Map.Entry<String, Double> e : results.entrySet()) {
+            Double base = baseline.get(e.getKey());
+            if (base != null && e.getValue() > base * (1 + TOLERANCE)) {
+                regressions.add(String.format("%s %.3f -> %.3f ns/char",
+                                              e.getKey(), base,
+                                              e.getValue()));
+            }
+        }
+        if (!regressions.isEmpty()) {
+            throw error("slower than baseline: %s",
+                        String.join(", ", regressions));
+        }
+    }
+
+    /** Return an alphabet of SIZE characters: the upper-case letters,
+     *  the lower-case letters, the digits, the ASCII punctuation other
+     *  than parentheses and '*', and then letters from the Latin-1
+     *  Supplement on. */
+    private static Alphabet alphabet(int size) {
+        StringBuilder chars = new StringBuilder();
+        String ascii = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz"
+            + "0123456789!\"#$%&'+,-./:;<=>?@[\\]^_`{|}~";
+        chars.append(ascii, 0, Math.min(size, ascii.length()));
+        for (char c = '\u00c0'; chars.length() < size; c += 1) {
+            chars.append(c);
+        }
+        return new Alphabet(chars.toString());
+    }
+
+    /** Return true iff every character of ALPHABET can be written in
+     *  the default charset, as Main requires. */
+    private static boolean encodable(Alphabet alphabet) {
+        CharsetEncoder encoder = Charset.defaultCharset().newEncoder();
+        for (int c = 0; c < alphabet.size(); c += 1) {
+            if (!encoder.canEncode(alphabet.toChar(c))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Return a machine with alphabet ALPHABET and SLOTS rotor slots,
+     *  all but two of them moving (at least one), wired at random and
+     *  set up with its rotors at their first setting. */
+    private static Machine machine(Alphabet alphabet, int slots) {
+        Machine machine = ByteMode.wire(alphabet, slots,
+                                        Math.max(1, slots - 2), SEED);
+        machine.insertRotors(rotorNames(machine));
+        machine.setRotors(String.valueOf(alphabet.toChar(0))
+                          .repeat(slots - 1));
+        machine.setPlugboard(new Permutation("", alphabet));
+        return machine;
+    }
+
+    /** Return the names of the rotors of MACHINE, in slot order. */
+    private static String[] rotorNames(Machine machine) {
+        return machine.allRotors().stream().map(Rotor::name)
+            .toArray(String[]::new);
+    }
+
+    /** Return N random indices into an alphabet of SIZE characters. */
+    private static int[] randomIndices(int size, int n) {
+        return new Random(SEED).ints(n, 0, size).toArray();
+    }
+
+    /** Return the numbers in the comma-separated LIST, each optionally
+     *  followed by K, M or G to multiply it by 2**10, 2**20 or 2**30. */
+    private static int[] parseList(String list) {
+        String[] items = list.split(",");
+        int[] values = new int[items.length];
+        for (int i = 0; i < items.length; i += 1) {
+            String item = items[i].trim();
+            int shift = 0;
+            if (item.endsWith("K")) {
+                shift = 10;
+            } else if (item.endsWith("M")) {
+                shift = 20;
+            } else if (item.endsWith("G")) {
+                shift = 30;
+            }
+            try {
+                long value = Long.parseLong(shift == 0 ? item
+                    : item.substring(0, item.length() - 1)) << shift;
+                if (value <= 0 || value > Integer.MAX_VALUE) {
+                    throw new NumberFormatException();
+                }
+                values[i] = (int) value;
+            } catch (NumberFormatException excp) {
+                throw error("bad benchmark parameter: %s", item);
+            }
+        }
+        return values;
+    }
+
+    /** Return SIZE in the format read by parseList. */
+    private static String formatSize(int size) {
+        if (size % (1 << 30) == 0) {
+            return size / (1 << 30) + "G";
+        } else if (size % (1 << 20) == 0) {
+            return size / (1 << 20) + "M";
+        } else if (size % (1 << 10) == 0) {
+            return size / (1 << 10) + "K";
+        }
+        return Integer.toString(size);
+    }
+
+    /** Receives results of the benchmarks, so that they are not
+     *  optimized away. */
+    private static volatile long _sink;
+}
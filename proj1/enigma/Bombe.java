@@ -0,0 +1,361 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+
+import static enigma.EnigmaException.*;
+
+/** A crib-driven search for the settings of an Enigma machine, after the
+ *  Turing-Welchman bombe.  A crib (a guess at part of the plaintext)
+ *  placed against the ciphertext gives a menu of letter pairings.  For
+ *  every rotor order and start position, and every guess at the
+ *  plugboard partner of a letter of the menu, the consequences of the
+ *  guess are followed around the menu; a guess is dropped as soon as it
+ *  requires some letter to be plugged to two different letters.  The
+ *  positions at which a guess survives (the stops) are reported as
+ *  settings lines in the format read by Main, together with a plugboard
+ *  consistent with the whole crib.
+ *
+ *  The rotor orders and positions searched are those of a Keyspace.
+ *  Only plugboard pairs fixed by the crib are
+ *  reported; when several components of the menu admit more than one
+ *  consistent plugboard, the first one found is reported.
+ *  @author Preston Weber
+ */
+public final class Bombe {
+
+    /** Search for the settings of a message, as specified by ARGS, where
+     *  3 <= ARGS.length <= 4.  ARGS[0] is the name of a configuration
+     *  file, ARGS[1] the name of a file containing the ciphertext (blanks
+     *  and line breaks are ignored) and ARGS[2] the crib.  ARGS[3], when
+     *  present, is the position in the ciphertext of the first character
+     *  of the crib; otherwise every position at which the crib fits is
+     *  tried.  Stops are printed on the standard output as they are
+     *  found, by all the processors available. */
+    public static void main(String... args) {
+        try {
+            if (args.length < 3 || args.length > 4) {
+                throw error("Only 3 or 4 command-line arguments allowed");
+            }
+            Bombe bombe = new Bombe(Main.configure(args[0]));
+            List<Menu> menus = bombe.menus(args);
+            bombe.search(menus, ForkJoinPool.commonPool(),
+                         System.out::println);
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Largest number of keys searched by one worker without
+     *  splitting. */
+    static final long GRAIN = 1 << 12;
+
+    /** A bombe for machines configured like CONFIG, whose rotors need
+     *  not have been inserted. */
+    Bombe(Machine config) {
+        _keyspace = new Keyspace(config);
+        _alphabet = config.alphabet();
+        _size = _alphabet.size();
+        _numRotors = config.numRotors();
+        _identity = new int[_size];
+        for (int i = 0; i < _size; i += 1) {
+            _identity[i] = i;
+        }
+    }
+
+    /** Return the keys I search. */
+    Keyspace keyspace() {
+        return _keyspace;
+    }
+
+    /** Return the menus described by ARGS, the arguments of main. */
+    List<Menu> menus(String[] args) {
+        Alphabet alphabet = _keyspace.alphabet();
+        int[] ciphertext = alphabet.indices(Main.readFile(args[1]));
+        int[] crib = alphabet.indices(args[2]);
+        if (args.length > 3) {
+            return List.of(menu(ciphertext, crib, parseOffset(args[3])));
+        }
+        return menus(ciphertext, crib);
+    }
+
+    /** Return the menu of CRIB placed at position OFFSET of
+     *  CIPHERTEXT. */
+    Menu menu(int[] ciphertext, int[] crib, int offset) {
+        if (crib.length == 0) {
+            throw error("empty crib");
+        }
+        if (offset < 0 || offset + crib.length > ciphertext.length) {
+            throw error("crib does not fit in the ciphertext at %d", offset);
+        }
+        return new Menu(ciphertext, crib, offset, _size);
+    }
+
+    /** Return the menus of CRIB at every position of CIPHERTEXT where it
+     *  fits.  When no character can encipher to itself (every reflector
+     *  is a derangement), positions where the crib would do so are
+     *  skipped. */
+    List<Menu> menus(int[] ciphertext, int[] crib) {
+        boolean deranged = true;
+        for (int k = 0; k < _keyspace.numOrders(); k += 1) {
+            deranged &= _keyspace.order(k)[0].permutation().derangement();
+        }
+        ArrayList<Menu> menus = new ArrayList<>();
+        for (int offset = 0; offset + crib.length <= ciphertext.length;
+             offset += 1) {
+            boolean fits = true;
+            for (int i = 0; deranged && i < crib.length; i += 1) {
+                fits &= crib[i] != ciphertext[offset + i];
+            }
+            if (fits) {
+                menus.add(menu(ciphertext, crib, offset));
+            }
+        }
+        if (menus.isEmpty()) {
+            throw error("crib fits nowhere in the ciphertext");
+        }
+        return menus;
+    }
+
+    /** Test MENUS at every key on the workers of POOL, passing each stop
+     *  to STOPS as soon as it is found.  STOPS may be called from several
+     *  threads at once. */
+    void search(List<Menu> menus, ForkJoinPool pool,
+                Consumer<String> stops) {
+        search(menus, 0, _keyspace.size(), pool, stops);
+    }
+
+    /** Test MENUS at keys FROM .. TO-1 on the workers of POOL, passing
+     *  each stop to STOPS as soon as it is found. */
+    void search(List<Menu> menus, long from, long to, ForkJoinPool pool,
+                Consumer<String> stops) {
+        KeyspaceTask.Range range =
+            (first, end) -> search(menus, first, end, stops);
+        pool.invoke(new KeyspaceTask(range, from, to, GRAIN));
+    }
+
+    /** Test MENUS at keys FROM .. TO-1, passing each stop to STOPS. */
+    void search(List<Menu> menus, long from, long to,
+                Consumer<String> stops) {
+        new Search(menus, stops).run(from, to);
+    }
+
+    /** Return the crib offset given by TEXT. */
+    private static int parseOffset(String text) {
+        try {
+            return Integer.parseInt(text);
+        } catch (NumberFormatException excp) {
+            throw error("bad crib offset: %s", text);
+        }
+    }
+
+    /** The state of one thread searching a range of keys. */
+    private class Search {
+
+        /** A search testing MENUS and passing stops to STOPS. */
+        Search(List<Menu> menus, Consumer<String> stops) {
+            _menus = menus;
+            _stops = stops;
+            int end = 0;
+            for (Menu menu : menus) {
+                end = Math.max(end, menu.offset() + menu.length());
+            }
+            _start = new int[_numRotors];
+            _settings = new int[_numRotors];
+            _fastAt = new int[end];
+            _innerAt = new int[end];
+            _inners = new int[end + 1][];
+            _stecker = new int[_size];
+            Arrays.fill(_stecker, -1);
+            _trail = new int[_size];
+            _queue = new int[_size];
+        }
+
+        /** Test my menus at keys FROM .. TO-1. */
+        void run(long from, long to) {
+            int order = _keyspace.orderOf(from);
+            _keyspace.start(from, _start);
+            CompiledRotors compiled = _keyspace.compile(order);
+            for (long key = from; key < to; key += 1) {
+                test(compiled, order);
+                if (!_keyspace.next(_start) && key + 1 < to) {
+                    order += 1;
+                    compiled = _keyspace.compile(order);
+                }
+            }
+        }
+
+        /** Test my menus with the rotors of ORDER, compiled as COMPILED,
+         *  starting at _start. */
+        private void test(CompiledRotors compiled, int order) {
+            System.arraycopy(_start, 0, _settings, 0, _numRotors);
+            int inner = 0;
+            compiled.inner(_settings, inner(inner));
+            for (int k = 0; k < _fastAt.length; k += 1) {
+                if (compiled.step(_settings)) {
+                    inner += 1;
+                    compiled.inner(_settings, inner(inner));
+                }
+                _fastAt[k] = _settings[_numRotors - 1];
+                _innerAt[k] = inner;
+            }
+            _compiled = compiled;
+            for (Menu menu : _menus) {
+                int root = menu.root(0);
+                for (int x = 0; x < _size; x += 1) {
+                    if (assume(menu, root, x) && complete(menu, 1)) {
+                        _stops.accept(_keyspace.settingsLine(order, _start,
+                                                             _stecker));
+                    }
+                    undo(0);
+                }
+            }
+        }
+
+        /** Return true iff the plugboard guessed so far extends to one
+         *  consistent with components K and above of MENU, which it is
+         *  then left holding. */
+        private boolean complete(Menu menu, int k) {
+            if (k == menu.numComponents()) {
+                return true;
+            }
+            int root = menu.root(k);
+            if (_stecker[root] >= 0) {
+                return complete(menu, k + 1);
+            }
+            int mark = _trailed;
+            for (int x = 0; x < _size; x += 1) {
+                if (assume(menu, root, x) && complete(menu, k + 1)) {
+                    return true;
+                }
+                undo(mark);
+            }
+            return false;
+        }
+
+        /** Guess that C is plugged to X and follow the consequences
+         *  around MENU, returning false if they contradict the plugboard
+         *  guessed so far. */
+        private boolean assume(Menu menu, int c, int x) {
+            _head = _tail = 0;
+            if (!plug(c, x)) {
+                return false;
+            }
+            while (_head < _tail) {
+                int u = _queue[_head++];
+                int plugged = _stecker[u];
+                for (int e = menu.first(u); e < menu.first(u + 1); e += 1) {
+                    int k = menu.offset() + menu.at(e);
+                    int w = _compiled.convert(plugged, _fastAt[k],
+                                              _inners[_innerAt[k]],
+                                              _identity);
+                    if (!plug(menu.to(e), w)) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        /** Record that A and B are plugged together, queueing any newly
+         *  plugged letters.  Return false if either is already plugged
+         *  to another letter. */
+        private boolean plug(int a, int b) {
+            if (_stecker[a] == b) {
+                return true;
+            } else if (_stecker[a] >= 0 || _stecker[b] >= 0) {
+                return false;
+            }
+            _stecker[a] = b;
+            _stecker[b] = a;
+            _trail[_trailed++] = a;
+            _queue[_tail++] = a;
+            if (b != a) {
+                _trail[_trailed++] = b;
+                _queue[_tail++] = b;
+            }
+            return true;
+        }
+
+        /** Forget every plug recorded since the trail held MARK
+         *  letters. */
+        private void undo(int mark) {
+            while (_trailed > mark) {
+                _trailed -= 1;
+                _stecker[_trail[_trailed]] = -1;
+            }
+        }
+
+        /** Return scratch table K for inner permutations. */
+        private int[] inner(int k) {
+            if (_inners[k] == null) {
+                _inners[k] = new int[_size];
+            }
+            return _inners[k];
+        }
+
+        /** The menus tested at each key. */
+        private final List<Menu> _menus;
+
+        /** Receives the stops found. */
+        private final Consumer<String> _stops;
+
+        /** Start position being tested, by slot. */
+        private final int[] _start;
+
+        /** Settings of the rotors while stepping from _start. */
+        private final int[] _settings;
+
+        /** Rotors being tested. */
+        private CompiledRotors _compiled;
+
+        /** _fastAt[K] is the setting of the fast rotor while message
+         *  character K is converted. */
+        private final int[] _fastAt;
+
+        /** _inners[_innerAt[K]] is the inner permutation while message
+         *  character K is converted. */
+        private final int[] _innerAt;
+
+        /** Inner permutations, reused from one start position to the
+         *  next. */
+        private final int[][] _inners;
+
+        /** Plugboard guessed so far: _stecker[C] is the letter plugged to
+         *  C, or -1. */
+        private final int[] _stecker;
+
+        /** Letters plugged so far, in order. */
+        private final int[] _trail;
+
+        /** Number of letters in _trail. */
+        private int _trailed;
+
+        /** Letters whose consequences are yet to be followed, from _head
+         *  to _tail - 1. */
+        private final int[] _queue;
+
+        /** Bounds of the live part of _queue. */
+        private int _head, _tail;
+    }
+
+    /** The keys searched. */
+    private final Keyspace _keyspace;
+
+    /** Alphabet of the machine. */
+    private final Alphabet _alphabet;
+
+    /** Size of _alphabet. */
+    private final int _size;
+
+    /** Number of rotor slots. */
+    private final int _numRotors;
+
+    /** The identity table, used for the absent plugboard. */
+    private final int[] _identity;
+}
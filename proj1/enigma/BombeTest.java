@@ -0,0 +1,69 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Bombe class.
+ *  @author Preston Weber
+ */
+public class BombeTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return a three-slot machine with two pawls holding reflector B and
+     *  rotors I, III and IV. */
+    private Machine smallMachine() {
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        rotors.add(new Reflector("B", new Permutation(NAVALA.get("B"),
+                                                      UPPER)));
+        rotors.add(new MovingRotor("I", new Permutation(NAVALA.get("I"),
+                                                        UPPER), "Q"));
+        rotors.add(new MovingRotor("III",
+                                   new Permutation(NAVALA.get("III"),
+                                                   UPPER), "V"));
+        rotors.add(new MovingRotor("IV", new Permutation(NAVALA.get("IV"),
+                                                         UPPER), "J"));
+        return new Machine(UPPER, 3, 2, rotors);
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testFindsSettings() {
+        Machine machine = smallMachine();
+        machine.insertRotors(new String[] {"B", "IV", "I"});
+        machine.setRotors("QM");
+        machine.setPlugboard(new Permutation("(AG) (EX) (TR) (BY)", UPPER));
+        String plain = "ATTACKATDAWNONTHEEASTERNFLANKWITHTANKS";
+        String cipher = machine.convert(plain);
+
+        Bombe bombe = new Bombe(smallMachine());
+        assertEquals(6 * 26 * 26, bombe.keyspace().size());
+        int[] ciphertext = UPPER.indices(cipher);
+        int[] crib = UPPER.indices("DAWNONTHEEASTERNFLANK");
+        List<String> stops = Collections.synchronizedList(new ArrayList<>());
+        bombe.search(List.of(bombe.menu(ciphertext, crib, 8)),
+                     new ForkJoinPool(2), stops::add);
+        assertTrue(stops.toString(),
+                   stops.contains("* B IV I QM (AG) (BY) (EX) (RT)"));
+
+        stops.clear();
+        bombe.search(bombe.menus(ciphertext, crib), new ForkJoinPool(2),
+                     stops::add);
+        assertTrue(stops.toString(),
+                   stops.contains("* B IV I QM (AG) (BY) (EX) (RT)"));
+    }
+}
@@ -0,0 +1,265 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static enigma.EnigmaException.*;
+
+/** Enigma conversion of arbitrary binary files.  A byte configuration is
+ *  a compiled configuration (see CompiledConfig) whose alphabet is the
+ *  256 code points 0 .. 255 in order, so that each byte, taken as
+ *  unsigned, is its own alphabet index and needs no decoding.  Input and
+ *  output files are memory-mapped a window at a time and converted a
+ *  chunk of bytes at a time.
+ *
+ *  Since most bytes cannot be written in a settings line, rotor
+ *  settings and plugboard cycles are written in hexadecimal, two digits
+ *  per byte: "B F1 M1 M2 M3 00ff41 (0a41) (2021)".
+ *  @author Preston Weber
+ */
+public final class ByteMode {
+
+    /** Convert or configure, as specified by ARGS, which is one of
+     *      wire SPEC SLOTS PAWLS SEED
+     *          Write to SPEC a byte configuration with SLOTS rotor slots,
+     *          PAWLS of them moving, and one rotor for each slot, wired at
+     *          random from the number SEED: a reflector B, fixed rotors
+     *          F1, F2, ..., and moving rotors M1, M2, ..., each with one
+     *          notch.
+     *      convert SPEC INPUT OUTPUT ROTOR... SETTING [CYCLE...]
+     *          Convert the file INPUT into the file OUTPUT with the
+     *          machine configured by the byte configuration SPEC and set
+     *          up with the named rotors, the hexadecimal rotor SETTING and
+     *          the hexadecimal plugboard CYCLEs.
+     *  Exits normally if there are no errors; otherwise with code 1. */
+    public static void main(String... args) {
+        try {
+            if (args.length == 5 && args[0].equals("wire")) {
+                CompiledConfig.save(wire(parseCount(args[2]),
+                                         parseCount(args[3]),
+                                         parseSeed(args[4])),
+                                    args[1]);
+            } else if (args.length >= 6 && args[0].equals("convert")) {
+                Machine machine = load(args[1]);
+                List<String> settings = new ArrayList<>();
+                for (int i = 4; i < args.length; i += 1) {
+                    settings.add(args[i]);
+                }
+                setUp(machine, settings);
+                convert(machine, args[2], args[3]);
+            } else {
+                throw error("usage: wire SPEC SLOTS PAWLS SEED"
+                            + " | convert SPEC INPUT OUTPUT ROTOR..."
+                            + " SETTING [CYCLE...]");
+            }
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Number of symbols in a byte alphabet. */
+    static final int SIZE = 256;
+
+    /** Number of bytes of each file mapped at a time. */
+    static final int WINDOW = 1 << 26;
+
+    /** Number of bytes converted at a time. */
+    static final int CHUNK = 1 << 16;
+
+    /** Return the alphabet of the 256 byte values. */
+    static Alphabet alphabet() {
+        int[] codePoints = new int[SIZE];
+        for (int c = 0; c < SIZE; c += 1) {
+            codePoints[c] = c;
+        }
+        return new Alphabet(new String(codePoints, 0, SIZE));
+    }
+
+    /** Return a byte machine, with no rotors inserted, having SLOTS rotor
+     *  slots, PAWLS of them moving, and one rotor for each slot, wired
+     *  at random from SEED as described for main. */
+    static Machine wire(int slots, int pawls, long seed) {
+        return wire(alphabet(), slots, pawls, seed);
+    }
+
+    /** Return a machine as for wire(SLOTS, PAWLS, SEED), but with the
+     *  alphabet ALPHABET, which must have an even number of
+     *  characters. */
+    static Machine wire(Alphabet alphabet, int slots, int pawls,
+                        long seed) {
+        if (slots < 2 || pawls < 1 || pawls >= slots) {
+            throw error("need 0 < PAWLS < SLOTS");
+        }
+        int size = alphabet.size();
+        if (size % 2 != 0) {
+            throw error("cannot wire a reflector for an odd alphabet");
+        }
+        Random random = new Random(seed);
+        List<Rotor> rotors = new ArrayList<>();
+        int[] pairs = shuffled(random, size);
+        int[] reflection = new int[size];
+        for (int i = 0; i < size; i += 2) {
+            reflection[pairs[i]] = pairs[i + 1];
+            reflection[pairs[i + 1]] = pairs[i];
+        }
+        rotors.add(new Reflector("B", new Permutation(reflection, alphabet)));
+        for (int k = 1; k < slots - pawls; k += 1) {
+            rotors.add(new FixedRotor("F" + k, new Permutation(
+                shuffled(random, size), alphabet)));
+        }
+        for (int k = 1; k <= pawls; k += 1) {
+            String notch = String.valueOf(
+                alphabet.toChar(random.nextInt(size)));
+            rotors.add(new MovingRotor("M" + k, new Permutation(
+                shuffled(random, size), alphabet), notch));
+        }
+        return new Machine(alphabet, slots, pawls, rotors);
+    }
+
+    /** Return the byte machine, with no rotors inserted, configured by
+     *  the byte configuration in the file named SPEC. */
+    static Machine load(String spec) {
+        Machine machine = CompiledConfig.load(spec);
+        Alphabet alphabet = machine.alphabet();
+        boolean bytes = alphabet.size() == SIZE;
+        for (int c = 0; bytes && c < SIZE; c += 1) {
+            bytes = alphabet.toCodePoint(c) == c;
+        }
+        if (!bytes) {
+            throw error("%s is not a byte configuration", spec);
+        }
+        return machine;
+    }
+
+    /** Set up MACHINE, a byte machine, according to SETTINGS: the names
+     *  of its rotors, then its rotor settings and any plugboard cycles,
+     *  in hexadecimal. */
+    static void setUp(Machine machine, List<String> settings) {
+        int numRotors = machine.numRotors();
+        if (settings.size() < numRotors + 1) {
+            throw error("Settings line too short.");
+        }
+        String[] rotors =
+            settings.subList(0, numRotors).toArray(new String[0]);
+        Main.checkRotors(machine, rotors);
+        machine.insertRotors(rotors);
+        machine.setRotors(new String(parseBytes(settings.get(numRotors))));
+
+        int[] plugboard = new int[SIZE];
+        for (int c = 0; c < SIZE; c += 1) {
+            plugboard[c] = c;
+        }
+        for (String cycle : settings.subList(numRotors + 1,
+                                             settings.size())) {
+            if (!cycle.startsWith("(") || !cycle.endsWith(")")) {
+                throw error("bad plugboard cycle: %s", cycle);
+            }
+            char[] bytes =
+                parseBytes(cycle.substring(1, cycle.length() - 1));
+            for (int i = 0; i < bytes.length; i += 1) {
+                if (plugboard[bytes[i]] != bytes[i]) {
+                    throw error("byte %02x plugged twice", (int) bytes[i]);
+                }
+                plugboard[bytes[i]] = bytes[(i + 1) % bytes.length];
+            }
+        }
+        machine.setPlugboard(new Permutation(plugboard, machine.alphabet()));
+    }
+
+    /** Convert the file named INPUT into the file named OUTPUT with
+     *  MACHINE, a byte machine that has been set up. */
+    static void convert(Machine machine, String input, String output) {
+        Path in = Paths.get(input), out = Paths.get(output);
+        try {
+            if (Files.exists(out) && Files.isSameFile(in, out)) {
+                throw error("input and output must be different files");
+            }
+        } catch (IOException excp) {
+            throw error("could not open %s", input);
+        }
+        try (FileChannel source = FileChannel.open(in);
+             FileChannel sink = FileChannel.open(
+                 out, StandardOpenOption.CREATE,
+                 StandardOpenOption.TRUNCATE_EXISTING,
+                 StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = source.size();
+            byte[] chunk = new byte[CHUNK];
+            for (long start = 0; start < size; start += WINDOW) {
+                long len = Math.min(WINDOW, size - start);
+                MappedByteBuffer from =
+                    source.map(FileChannel.MapMode.READ_ONLY, start, len);
+                MappedByteBuffer to =
+                    sink.map(FileChannel.MapMode.READ_WRITE, start, len);
+                while (from.hasRemaining()) {
+                    int n = Math.min(CHUNK, from.remaining());
+                    from.get(chunk, 0, n);
+                    machine.convert(chunk, 0, chunk, 0, n);
+                    to.put(chunk, 0, n);
+                }
+            }
+        } catch (IOException excp) {
+            throw error("could not convert %s: %s", input,
+                        excp.getMessage());
+        }
+    }
+
+    /** Return the bytes written in hexadecimal by TEXT, as chars. */
+    private static char[] parseBytes(String text) {
+        if (text.length() % 2 != 0) {
+            throw error("bad hexadecimal bytes: %s", text);
+        }
+        char[] bytes = new char[text.length() / 2];
+        for (int i = 0; i < bytes.length; i += 1) {
+            int high = Character.digit(text.charAt(2 * i), 16);
+            int low = Character.digit(text.charAt(2 * i + 1), 16);
+            if (high < 0 || low < 0) {
+                throw error("bad hexadecimal bytes: %s", text);
+            }
+            bytes[i] = (char) (16 * high + low);
+        }
+        return bytes;
+    }
+
+    /** Return the count given by TEXT. */
+    private static int parseCount(String text) {
+        try {
+            return Integer.parseInt(text);
+        } catch (NumberFormatException excp) {
+            throw error("bad count: %s", text);
+        }
+    }
+
+    /** Return the seed given by TEXT. */
+    private static long parseSeed(String text) {
+        try {
+            return Long.parseLong(text);
+        } catch (NumberFormatException excp) {
+            throw error("bad seed: %s", text);
+        }
+    }
+
+    /** Return a random permutation of 0 .. SIZE-1 from RANDOM. */
+    private static int[] shuffled(Random random, int size) {
+        int[] values = new int[size];
+        for (int i = 0; i < size; i += 1) {
+            values[i] = i;
+        }
+        for (int i = size - 1; i > 0; i -= 1) {
+            int j = random.nextInt(i + 1);
+            int v = values[i];
+            values[i] = values[j];
+            values[j] = v;
+        }
+        return values;
+    }
+}
@@ -0,0 +1,71 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/** The suite of all JUnit tests for the ByteMode class.
+ *  @author Preston Weber
+ */
+public class ByteModeTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /** Settings used for each conversion. */
+    private static final List<String> SETTINGS =
+        List.of("B", "F1", "M1", "M2", "M3", "00ff4120", "(0a41)", "(2028)");
+
+    /** Return a new temporary file, deleted on exit. */
+    private File tempFile() throws Exception {
+        File file = File.createTempFile("enigma", ".bin");
+        file.deleteOnExit();
+        return file;
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        File spec = tempFile(), plain = tempFile();
+        File cipher = tempFile(), back = tempFile();
+        CompiledConfig.save(ByteMode.wire(5, 3, 1), spec.getPath());
+
+        byte[] data = new byte[3 * ByteMode.CHUNK + 17];
+        new Random(2).nextBytes(data);
+        Files.write(plain.toPath(), data);
+
+        Machine machine = ByteMode.load(spec.getPath());
+        ByteMode.setUp(machine, SETTINGS);
+        ByteMode.convert(machine, plain.getPath(), cipher.getPath());
+        byte[] converted = Files.readAllBytes(cipher.toPath());
+        assertEquals(data.length, converted.length);
+        for (int i = 0; i < data.length; i += 1) {
+            assertTrue("byte converted to itself",
+                       data[i] != converted[i]);
+        }
+
+        machine = ByteMode.load(spec.getPath());
+        ByteMode.setUp(machine, SETTINGS);
+        ByteMode.convert(machine, cipher.getPath(), back.getPath());
+        assertTrue(Arrays.equals(data, Files.readAllBytes(back.toPath())));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testTextConfiguration() throws Exception {
+        File spec = tempFile();
+        Machine text = new Machine(new Alphabet(), 2, 1, List.of(
+            new Reflector("B", new Permutation(TestUtils.NAVALA.get("B"),
+                                               new Alphabet())),
+            new MovingRotor("I", new Permutation(TestUtils.NAVALA.get("I"),
+                                                 new Alphabet()), "Q")));
+        CompiledConfig.save(text, spec.getPath());
+        ByteMode.load(spec.getPath());
+    }
+}
@@ -0,0 +1,488 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static enigma.EnigmaException.*;
+
+/** A catalog of the characteristics of every key of a Keyspace, after
+ *  Rejewski's card catalog.  A message key of L characters (one per
+ *  rotor setting) enciphered twice at the start of each message is
+ *  enciphered by the permutations P1 .. P2L of the first 2L positions
+ *  after the ground setting, and P1 then P(L+1), P2 then P(L+2), and so
+ *  on (Rejewski's AD, BE and CF) can be read off a day's indicators.
+ *  The lengths of the cycles of these L products, the characteristic,
+ *  do not depend on the plugboard, so the characteristic of a day's
+ *  indicators narrows the ground setting down to the few keys having
+ *  it.
+ *
+ *  A catalog file holds the int MAGIC, the size of the alphabet, the
+ *  number of rotor slots, the number S of distinct characteristics, the
+ *  capacity C of the hash table and the long number of keys, all
+ *  big-endian, followed by the code point of each character of the
+ *  alphabet; then the S characteristics in increasing order, each as L
+ *  lists of cycle lengths, longest first, one byte each and padded with
+ *  zeros to the size of the alphabet; then S + 1 longs, the I-th being
+ *  the index in the key list of the first key of characteristic I; then
+ *  the list of keys, as longs, sorted by characteristic and then key;
+ *  and last an open-addressed hash table of C ints, each 0 or 1 + the
+ *  index of a characteristic.  The file is memory-mapped and searched
+ *  in place, so a lookup costs one hash probe (or a few) however large
+ *  the catalog.
+ *  @author Preston Weber
+ */
+public final class Catalog {
+
+    /** Build or search a catalog, as specified by ARGS.  With ARGS[0]
+     *  "build", ARGS[1] is the name of a configuration file and ARGS[2]
+     *  that of the catalog to write, using all the processors available.
+     *  With ARGS[0] "find", ARGS[1] is the name of a configuration file,
+     *  ARGS[2] that of its catalog and ARGS[3] that of a file of the
+     *  day's indicators, each a message key enciphered twice, separated
+     *  by whitespace; the settings line (with an empty plugboard) of each
+     *  ground setting with their characteristic is printed.  Exits
+     *  normally if there are no errors; otherwise with code 1. */
+    public static void main(String... args) {
+        try {
+            if (args.length == 3 && args[0].equals("build")) {
+                Keyspace keyspace = new Keyspace(Main.configure(args[1]));
+                build(keyspace, ForkJoinPool.commonPool(), args[2]);
+            } else if (args.length == 4 && args[0].equals("find")) {
+                Keyspace keyspace = new Keyspace(Main.configure(args[1]));
+                Catalog catalog = load(keyspace, args[2]);
+                List<int[]> indicators = new ArrayList<>();
+                for (String word : Main.readFile(args[3]).trim()
+                         .split("\\s+")) {
+                    indicators.add(keyspace.alphabet().indices(word));
+                }
+                int[] none = new int[keyspace.alphabet().size()];
+                Arrays.fill(none, -1);
+                int[] settings = new int[keyspace.numRotors()];
+                for (long key : catalog.lookup(
+                         characteristic(keyspace, indicators))) {
+                    keyspace.start(key, settings);
+                    System.out.println(keyspace.settingsLine(
+                        keyspace.orderOf(key), settings, none));
+                }
+            } else {
+                throw error("usage: build CONFIG CATALOG "
+                            + "or find CONFIG CATALOG INDICATORS");
+            }
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Magic number at the start of every catalog ("ENRC"). */
+    static final int MAGIC = 0x454e5243;
+
+    /** Length of the fixed part of the header, in bytes. */
+    static final int HEADER = 28;
+
+    /** Largest number of keys whose characteristics are computed by one
+     *  worker without splitting. */
+    static final long GRAIN = 1 << 12;
+
+    /** The catalog of the keys of KEYSPACE in MAP, holding SIGNATURES
+     *  characteristics in a hash table of CAPACITY entries. */
+    private Catalog(Keyspace keyspace, MappedByteBuffer map, int signatures,
+                    int capacity) {
+        _width = (keyspace.numRotors() - 1) * keyspace.alphabet().size();
+        _signatures = signatures;
+        _capacity = capacity;
+        _map = map;
+        _characteristics = HEADER + 4 * keyspace.alphabet().size();
+        _starts = _characteristics + (long) signatures * _width;
+        _keys = _starts + 8L * (signatures + 1);
+        _table = _keys + 8 * keyspace.size();
+    }
+
+    /** Return the characteristic of KEY of KEYSPACE: the cycle lengths,
+     *  longest first, of each of the products of the permutations of
+     *  the positions after its ground setting described above. */
+    static int[][] characteristic(Keyspace keyspace, long key) {
+        int[] settings = new int[keyspace.numRotors()];
+        keyspace.start(key, settings);
+        return characteristic(keyspace.compile(keyspace.orderOf(key)),
+                              settings, new Scratch(keyspace));
+    }
+
+    /** Return the characteristic of the day's INDICATORS, each a message
+     *  key of KEYSPACE's machines enciphered twice, as alphabet indices.
+     *  They must include, for each position of the key, an indicator
+     *  starting with each character. */
+    static int[][] characteristic(Keyspace keyspace, List<int[]> indicators) {
+        int len = keyspace.numRotors() - 1;
+        int size = keyspace.alphabet().size();
+        int[][] products = new int[len][size];
+        for (int[] product : products) {
+            Arrays.fill(product, -1);
+        }
+        for (int[] indicator : indicators) {
+            if (indicator.length != 2 * len) {
+                throw error("indicators must have %d characters", 2 * len);
+            }
+            for (int i = 0; i < len; i += 1) {
+                int from = indicator[i], to = indicator[i + len];
+                if (products[i][from] >= 0 && products[i][from] != to) {
+                    throw error("inconsistent indicators");
+                }
+                products[i][from] = to;
+            }
+        }
+        int[][] result = new int[len][];
+        for (int i = 0; i < len; i += 1) {
+            for (int c = 0; c < size; c += 1) {
+                if (products[i][c] < 0) {
+                    throw error("no indicator has '%s' at position %d",
+                                keyspace.alphabet().symbol(c), i + 1);
+                }
+            }
+            result[i] = new Permutation(products[i], keyspace.alphabet())
+                .cycleLengths();
+        }
+        return result;
+    }
+
+    /** Write the catalog of KEYSPACE to the file named NAME, computing
+     *  the characteristics on the workers of POOL. */
+    static void build(Keyspace keyspace, ForkJoinPool pool, String name) {
+        int size = keyspace.alphabet().size();
+        int len = keyspace.numRotors() - 1;
+        if (size > 255) {
+            throw error("alphabet too large to catalog");
+        }
+        if (keyspace.size() > (Integer.MAX_VALUE - 8) / len) {
+            throw error("too many keys to catalog");
+        }
+        int keys = (int) keyspace.size();
+        if (length(size, len, keys, 1, 4) > Integer.MAX_VALUE) {
+            throw error("catalog too large to map");
+        }
+
+        ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+        AtomicInteger numIds = new AtomicInteger();
+        int[] cycleIds = new int[keys * len];
+        KeyspaceTask.Range range = (from, to) -> {
+            Scratch scratch = new Scratch(keyspace);
+            int[] settings = new int[keyspace.numRotors()];
+            CompiledRotors compiled = null;
+            int order = -1;
+            for (long key = from; key < to; key += 1) {
+                if (keyspace.orderOf(key) != order) {
+                    order = keyspace.orderOf(key);
+                    compiled = keyspace.compile(order);
+                }
+                keyspace.start(key, settings);
+                int[][] lengths = characteristic(compiled, settings, scratch);
+                for (int i = 0; i < len; i += 1) {
+                    cycleIds[(int) (key * len) + i] =
+                        ids.computeIfAbsent(encode(lengths[i], size),
+                                            s -> numIds.getAndIncrement());
+                }
+            }
+        };
+        pool.invoke(new KeyspaceTask(range, 0, keys, GRAIN));
+
+        String[] byRank = ids.keySet().toArray(new String[0]);
+        Arrays.sort(byRank);
+        int[] rank = new int[byRank.length];
+        for (int r = 0; r < byRank.length; r += 1) {
+            rank[ids.get(byRank[r])] = r;
+        }
+        try {
+            long codes = 1;
+            for (int i = 0; i < len; i += 1) {
+                codes = Math.multiplyExact(codes, byRank.length);
+            }
+        } catch (ArithmeticException excp) {
+            throw error("too many distinct characteristics to catalog");
+        }
+        HashMap<Long, Integer> counts = new HashMap<>();
+        long[] codes = new long[keys];
+        for (int key = 0; key < keys; key += 1) {
+            long code = 0;
+            for (int i = 0; i < len; i += 1) {
+                code = code * byRank.length + rank[cycleIds[key * len + i]];
+            }
+            codes[key] = code;
+            counts.merge(code, 1, Integer::sum);
+        }
+        long[] signatures = new long[counts.size()];
+        int numSignatures = 0;
+        for (long code : counts.keySet()) {
+            signatures[numSignatures] = code;
+            numSignatures += 1;
+        }
+        Arrays.sort(signatures);
+        HashMap<Long, Integer> index = new HashMap<>();
+        for (int s = 0; s < numSignatures; s += 1) {
+            index.put(signatures[s], s);
+        }
+
+        long capacity = Long.highestOneBit(2L * numSignatures) * 2;
+        long length = length(size, len, keys, numSignatures, capacity);
+        if (length > Integer.MAX_VALUE) {
+            throw error("catalog too large to map");
+        }
+        try (FileChannel file = FileChannel.open(
+                 Paths.get(name), StandardOpenOption.CREATE,
+                 StandardOpenOption.TRUNCATE_EXISTING,
+                 StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer map =
+                file.map(FileChannel.MapMode.READ_WRITE, 0, length);
+            map.putInt(MAGIC).putInt(size).putInt(keyspace.numRotors())
+                .putInt(numSignatures).putInt((int) capacity).putLong(keys);
+            for (int c = 0; c < size; c += 1) {
+                map.putInt(keyspace.alphabet().toCodePoint(c));
+            }
+            Catalog catalog = new Catalog(keyspace, map, numSignatures,
+                                          (int) capacity);
+            byte[] signature = new byte[len * size];
+            for (int s = 0; s < numSignatures; s += 1) {
+                long code = signatures[s];
+                for (int i = len - 1; i >= 0; i -= 1) {
+                    String cycles = byRank[(int) (code % byRank.length)];
+                    code /= byRank.length;
+                    for (int j = 0; j < size; j += 1) {
+                        signature[i * size + j] = (byte) cycles.charAt(j);
+                    }
+                }
+                map.put(signature);
+                catalog.insert(signature, s);
+            }
+            long[] starts = new long[numSignatures + 1];
+            for (int s = 0; s < numSignatures; s += 1) {
+                starts[s + 1] = starts[s] + counts.get(signatures[s]);
+            }
+            for (long start : starts) {
+                map.putLong(start);
+            }
+            long[] next = Arrays.copyOf(starts, numSignatures);
+            for (int key = 0; key < keys; key += 1) {
+                int s = index.get(codes[key]);
+                map.putLong((int) (catalog._keys + 8 * next[s]), key);
+                next[s] += 1;
+            }
+            map.force();
+        } catch (IOException excp) {
+            throw error("could not write %s", name);
+        }
+    }
+
+    /** Return the catalog of the keys of KEYSPACE in the file named NAME,
+     *  written by build. */
+    static Catalog load(Keyspace keyspace, String name) {
+        int size = keyspace.alphabet().size();
+        try (FileChannel file = FileChannel.open(Paths.get(name))) {
+            if (file.size() > Integer.MAX_VALUE) {
+                throw error("%s is too large to map", name);
+            }
+            MappedByteBuffer map =
+                file.map(FileChannel.MapMode.READ_ONLY, 0, file.size());
+            if (map.remaining() < HEADER || map.getInt() != MAGIC) {
+                throw error("%s is not a catalog", name);
+            }
+            if (map.getInt() != size
+                || map.getInt() != keyspace.numRotors()) {
+                throw error("%s is for another configuration", name);
+            }
+            int signatures = map.getInt(), capacity = map.getInt();
+            if (map.getLong() != keyspace.size()
+                || map.remaining() < 4L * size) {
+                throw error("%s is for another configuration", name);
+            }
+            for (int c = 0; c < size; c += 1) {
+                if (map.getInt() != keyspace.alphabet().toCodePoint(c)) {
+                    throw error("%s is for another alphabet", name);
+                }
+            }
+            Catalog catalog = new Catalog(keyspace, map, signatures,
+                                          capacity);
+            if (signatures < 0 || Integer.bitCount(capacity) != 1
+                || catalog._table + 4L * capacity != file.size()) {
+                throw error("%s is truncated", name);
+            }
+            return catalog;
+        } catch (IOException excp) {
+            throw error("could not read %s", name);
+        }
+    }
+
+    /** Return the number of distinct characteristics I hold. */
+    int numSignatures() {
+        return _signatures;
+    }
+
+    /** Return the keys with characteristic CHARACTERISTIC, in increasing
+     *  order. */
+    long[] lookup(int[][] characteristic) {
+        int size = _width / characteristic.length;
+        byte[] signature = new byte[_width];
+        for (int i = 0; i < characteristic.length; i += 1) {
+            String cycles = encode(characteristic[i], size);
+            for (int j = 0; j < size; j += 1) {
+                signature[i * size + j] = (byte) cycles.charAt(j);
+            }
+        }
+        int s = find(signature);
+        if (s < 0) {
+            return new long[0];
+        }
+        long from = _map.getLong((int) (_starts + 8L * s));
+        long to = _map.getLong((int) (_starts + 8L * (s + 1)));
+        long[] keys = new long[(int) (to - from)];
+        for (int k = 0; k < keys.length; k += 1) {
+            keys[k] = _map.getLong((int) (_keys + 8 * (from + k)));
+        }
+        return keys;
+    }
+
+    /** Return the index of characteristic SIGNATURE, encoded as in the
+     *  file, or -1 if it is not in the catalog. */
+    private int find(byte[] signature) {
+        for (int slot = hash(signature); true;
+             slot = (slot + 1) & (_capacity - 1)) {
+            int entry = _map.getInt((int) (_table + 4L * slot));
+            if (entry == 0) {
+                return -1;
+            }
+            int s = entry - 1;
+            long at = _characteristics + (long) s * _width;
+            boolean same = true;
+            for (int j = 0; same && j < _width; j += 1) {
+                same = _map.get((int) at + j) == signature[j];
+            }
+            if (same) {
+                return s;
+            }
+        }
+    }
+
+    /** Enter characteristic number S, SIGNATURE, in the hash table. */
+    private void insert(byte[] signature, int s) {
+        int slot = hash(signature);
+        while (_map.getInt((int) (_table + 4L * slot)) != 0) {
+            slot = (slot + 1) & (_capacity - 1);
+        }
+        _map.putInt((int) (_table + 4L * slot), s + 1);
+    }
+
+    /** Return the first slot of the hash table to probe for
+     *  SIGNATURE. */
+    private int hash(byte[] signature) {
+        int h = Arrays.hashCode(signature);
+        return (h ^ (h >>> 16)) & (_capacity - 1);
+    }
+
+    /** Return the length in bytes of a catalog of KEYS keys of machines
+     *  with an alphabet of SIZE characters and LEN + 1 rotor slots,
+     *  having SIGNATURES characteristics in a hash table of CAPACITY
+     *  entries. */
+    private static long length(int size, int len, long keys,
+                               long signatures, long capacity) {
+        return HEADER + 4L * size + signatures * len * size
+            + 8L * (signatures + 1) + 8L * keys + 4L * capacity;
+    }
+
+    /** Return the cycle lengths LENGTHS as a string of SIZE characters,
+     *  one per length, padded with zeros. */
+    private static String encode(int[] lengths, int size) {
+        char[] result = new char[size];
+        for (int i = 0; i < lengths.length; i += 1) {
+            result[i] = (char) lengths[i];
+        }
+        return new String(result);
+    }
+
+    /** Return the characteristic of the ground setting SETTINGS, which is
+     *  left changed, of the rotors COMPILED, using the arrays of
+     *  SCRATCH. */
+    private static int[][] characteristic(CompiledRotors compiled,
+                                          int[] settings, Scratch scratch) {
+        int len = scratch._positions.length / 2;
+        int fast = settings.length - 1;
+        for (int[] position : scratch._positions) {
+            compiled.step(settings);
+            compiled.inner(settings, scratch._inner);
+            for (int c = 0; c < position.length; c += 1) {
+                position[c] = compiled.convert(c, settings[fast],
+                                               scratch._inner,
+                                               scratch._identity);
+            }
+        }
+        int[][] result = new int[len][];
+        for (int i = 0; i < len; i += 1) {
+            int[] first = scratch._positions[i];
+            int[] second = scratch._positions[i + len];
+            for (int c = 0; c < first.length; c += 1) {
+                scratch._product[c] = second[first[c]];
+            }
+            result[i] = Permutation.cycleLengths(scratch._product);
+        }
+        return result;
+    }
+
+    /** Working storage for computing characteristics. */
+    private static class Scratch {
+        /** Scratch arrays for the keys of KEYSPACE. */
+        Scratch(Keyspace keyspace) {
+            int size = keyspace.alphabet().size();
+            _positions = new int[2 * (keyspace.numRotors() - 1)][size];
+            _inner = new int[size];
+            _product = new int[size];
+            _identity = new int[size];
+            for (int c = 0; c < size; c += 1) {
+                _identity[c] = c;
+            }
+        }
+
+        /** The permutation of each position after the ground setting. */
+        final int[][] _positions;
+
+        /** The composite permutation of the slower rotors. */
+        final int[] _inner;
+
+        /** A product of two permutations. */
+        final int[] _product;
+
+        /** The identity permutation, standing in for the plugboard. */
+        final int[] _identity;
+    }
+
+    /** Number of bytes in each characteristic. */
+    private final int _width;
+
+    /** Number of characteristics. */
+    private final int _signatures;
+
+    /** Number of entries in the hash table, a power of two. */
+    private final int _capacity;
+
+    /** The catalog file. */
+    private final MappedByteBuffer _map;
+
+    /** Position in _map of the characteristics. */
+    private final long _characteristics;
+
+    /** Position in _map of the start of each characteristic's keys. */
+    private final long _starts;
+
+    /** Position in _map of the list of keys. */
+    private final long _keys;
+
+    /** Position in _map of the hash table. */
+    private final long _table;
+}
@@ -0,0 +1,113 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Catalog class.
+ *  @author Preston Weber
+ */
+public class CatalogTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return a three-slot machine with two pawls holding reflector B and
+     *  rotors I, III and IV. */
+    private Machine smallMachine() {
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        rotors.add(new Reflector("B", new Permutation(NAVALA.get("B"),
+                                                      UPPER)));
+        rotors.add(new MovingRotor("I", new Permutation(NAVALA.get("I"),
+                                                        UPPER), "Q"));
+        rotors.add(new MovingRotor("III",
+                                   new Permutation(NAVALA.get("III"),
+                                                   UPPER), "V"));
+        rotors.add(new MovingRotor("IV", new Permutation(NAVALA.get("IV"),
+                                                         UPPER), "J"));
+        return new Machine(UPPER, 3, 2, rotors);
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testTooLarge() throws Exception {
+        int[] codePoints = new int[120];
+        for (int c = 0; c < codePoints.length; c += 1) {
+            codePoints[c] = 0x4e00 + c;
+        }
+        Alphabet alphabet =
+            new Alphabet(new String(codePoints, 0, codePoints.length));
+        Keyspace keyspace =
+            new Keyspace(ByteMode.wire(alphabet, 5, 3, 1));
+        assertTrue(keyspace.size() < Integer.MAX_VALUE);
+        assertTrue(keyspace.size() * 4 > Integer.MAX_VALUE);
+        File file = File.createTempFile("enigma", ".cat");
+        file.deleteOnExit();
+        try {
+            Catalog.build(keyspace, new ForkJoinPool(2), file.getPath());
+            fail("catalog of too many keys built");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+    }
+
+    @Test
+    public void testFindsGroundSetting() throws Exception {
+        List<int[]> indicators = new ArrayList<>();
+        for (int c = 0; c < UPPER.size(); c += 1) {
+            Machine machine = smallMachine();
+            machine.insertRotors(new String[] {"B", "IV", "I"});
+            machine.setRotors("QM");
+            machine.setPlugboard(new Permutation("(AG) (EX) (TR) (BY)",
+                                                 UPPER));
+            int[] indicator = {c, c, c, c};
+            machine.convert(indicator, 0, indicator.length);
+            indicators.add(indicator);
+        }
+        Keyspace keyspace = new Keyspace(smallMachine());
+        int[][] characteristic =
+            Catalog.characteristic(keyspace, indicators);
+
+        File file = File.createTempFile("enigma", ".cat");
+        file.deleteOnExit();
+        Catalog.build(keyspace, new ForkJoinPool(2), file.getPath());
+        Catalog catalog = Catalog.load(keyspace, file.getPath());
+        assertTrue(catalog.numSignatures() > 1);
+        long[] keys = catalog.lookup(characteristic);
+        int[] none = new int[UPPER.size()];
+        Arrays.fill(none, -1);
+        int[] settings = new int[keyspace.numRotors()];
+        List<String> lines = new ArrayList<>();
+        for (long key : keys) {
+            assertArrayEquals(characteristic[0],
+                              Catalog.characteristic(keyspace, key)[0]);
+            assertArrayEquals(characteristic[1],
+                              Catalog.characteristic(keyspace, key)[1]);
+            keyspace.start(key, settings);
+            lines.add(keyspace.settingsLine(keyspace.orderOf(key), settings,
+                                            none));
+        }
+        assertTrue(lines.toString(), lines.contains("* B IV I QM"));
+        assertTrue(keys.length < keyspace.size() / 10);
+
+        long total = 0;
+        for (long key = 0; key < keyspace.size(); key += 1) {
+            total += catalog.lookup(
+                Catalog.characteristic(keyspace, key)).length > 0 ? 1 : 0;
+        }
+        assertEquals(keyspace.size(), total);
+    }
+}
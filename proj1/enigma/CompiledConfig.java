@@ -0,0 +1,197 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static enigma.EnigmaException.*;
+
+/** Machine configurations compiled into a compact binary form, which is
+ *  loaded by memory-mapping it, with none of the parsing of the text
+ *  form.  The compiled form of the configuration file NAME is kept in
+ *  the file NAME followed by SUFFIX, and is used by Main (and the other
+ *  commands reading configurations) in place of NAME whenever it is at
+ *  least as new as NAME.
+ *
+ *  A compiled configuration holds the int MAGIC, the size of the
+ *  alphabet and the code point of each of its characters, the number of
+ *  rotor slots, the number of pawls and the number of rotors, and then
+ *  for each rotor its kind ('M', 'N' or 'R'), its name and notches (each
+ *  as a length followed by its chars) and the forward table of its
+ *  permutation, as 16-bit unsigned values, all big-endian.
+ *  @author Preston Weber
+ */
+public final class CompiledConfig {
+
+    /** Compile a configuration, as specified by ARGS, where 1 <=
+     *  ARGS.length <= 2.  ARGS[0] is the name of a configuration file,
+     *  and ARGS[1], when present, the name of the compiled file to
+     *  write; otherwise it is ARGS[0] followed by SUFFIX.  Exits normally
+     *  if there are no errors; otherwise with code 1. */
+    public static void main(String... args) {
+        try {
+            if (args.length < 1 || args.length > 2) {
+                throw error("Only 1 or 2 command-line arguments allowed");
+            }
+            save(Main.parseConfig(args[0]),
+                 args.length > 1 ? args[1] : args[0] + SUFFIX);
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Magic number at the start of every compiled configuration
+     *  ("ENCF"). */
+    static final int MAGIC = 0x454e4346;
+
+    /** Suffix added to the name of a configuration file to name its
+     *  compiled form. */
+    static final String SUFFIX = ".bin";
+
+    /** Return the name of the compiled form of the configuration file
+     *  named NAME if it exists and is at least as new as NAME; otherwise
+     *  null. */
+    static String fresh(String name) {
+        File compiled = new File(name + SUFFIX);
+        File source = new File(name);
+        if (compiled.isFile()
+            && (!source.exists()
+                || compiled.lastModified() >= source.lastModified())) {
+            return compiled.getPath();
+        }
+        return null;
+    }
+
+    /** Write the configuration of CONFIG, a machine whose rotors need
+     *  not have been inserted, to the file named NAME. */
+    static void save(Machine config, String name) {
+        Alphabet alphabet = config.alphabet();
+        int size = alphabet.size();
+        if (size > Character.MAX_VALUE + 1) {
+            throw error("alphabet too large to compile");
+        }
+        long length = 4 * (5 + size);
+        for (Rotor rotor : config.allRotors()) {
+            length += 1 + 8 + 2 * rotor.name().length()
+                + 2 * notches(rotor).length() + 2 * size;
+        }
+        try (FileChannel file = FileChannel.open(
+                 Paths.get(name), StandardOpenOption.CREATE,
+                 StandardOpenOption.TRUNCATE_EXISTING,
+                 StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer map =
+                file.map(FileChannel.MapMode.READ_WRITE, 0, length);
+            map.putInt(MAGIC).putInt(size);
+            for (int c = 0; c < size; c += 1) {
+                map.putInt(alphabet.toCodePoint(c));
+            }
+            map.putInt(config.numRotors()).putInt(config.numPawls())
+                .putInt(config.allRotors().size());
+            for (Rotor rotor : config.allRotors()) {
+                map.put((byte) kind(rotor));
+                putString(map, rotor.name());
+                putString(map, notches(rotor));
+                for (int v : rotor.permutation().forwardTable()) {
+                    map.putChar((char) v);
+                }
+            }
+            map.force();
+        } catch (IOException excp) {
+            throw error("could not write %s", name);
+        }
+    }
+
+    /** Return a machine, with no rotors inserted, configured from the
+     *  compiled configuration in the file named NAME. */
+    static Machine load(String name) {
+        try (FileChannel file = FileChannel.open(Paths.get(name))) {
+            MappedByteBuffer map =
+                file.map(FileChannel.MapMode.READ_ONLY, 0, file.size());
+            if (map.remaining() < 8 || map.getInt() != MAGIC) {
+                throw error("%s is not a compiled configuration", name);
+            }
+            int size = map.getInt();
+            int[] codePoints = new int[size];
+            map.asIntBuffer().get(codePoints);
+            map.position(map.position() + 4 * size);
+            Alphabet alphabet =
+                new Alphabet(new String(codePoints, 0, size));
+            int numRotors = map.getInt(), pawls = map.getInt();
+            int count = map.getInt();
+            List<Rotor> rotors = new ArrayList<>(count);
+            for (int r = 0; r < count; r += 1) {
+                char kind = (char) map.get();
+                String rotorName = getString(map);
+                String notches = getString(map);
+                int[] forward = new int[size];
+                for (int c = 0; c < size; c += 1) {
+                    forward[c] = map.getChar();
+                }
+                Permutation perm = new Permutation(forward, alphabet);
+                if (kind == 'M') {
+                    rotors.add(new MovingRotor(rotorName, perm, notches));
+                } else if (kind == 'N') {
+                    rotors.add(new FixedRotor(rotorName, perm));
+                } else if (kind == 'R') {
+                    rotors.add(new Reflector(rotorName, perm));
+                } else {
+                    throw error("%s is corrupt", name);
+                }
+            }
+            if (map.hasRemaining()) {
+                throw error("%s is corrupt", name);
+            }
+            return new Machine(alphabet, numRotors, pawls, rotors);
+        } catch (BufferUnderflowException | NegativeArraySizeException
+                 | IllegalArgumentException excp) {
+            throw error("%s is corrupt", name);
+        } catch (IOException excp) {
+            throw error("could not read %s", name);
+        }
+    }
+
+    /** Return the kind of ROTOR, as its letter in a configuration
+     *  file. */
+    private static char kind(Rotor rotor) {
+        if (rotor instanceof MovingRotor) {
+            return 'M';
+        } else if (rotor.reflecting()) {
+            return 'R';
+        } else if (rotor instanceof FixedRotor) {
+            return 'N';
+        }
+        throw error("rotor %s cannot be compiled", rotor.name());
+    }
+
+    /** Return the notches of ROTOR, as a string of characters. */
+    private static String notches(Rotor rotor) {
+        return rotor instanceof MovingRotor
+            ? ((MovingRotor) rotor).notches() : "";
+    }
+
+    /** Write S to MAP as its length followed by its chars. */
+    private static void putString(ByteBuffer map, String s) {
+        map.putInt(s.length());
+        for (int i = 0; i < s.length(); i += 1) {
+            map.putChar(s.charAt(i));
+        }
+    }
+
+    /** Return the string written by putString at the position of MAP. */
+    private static String getString(ByteBuffer map) {
+        char[] chars = new char[map.getInt()];
+        for (int i = 0; i < chars.length; i += 1) {
+            chars[i] = map.getChar();
+        }
+        return new String(chars);
+    }
+}
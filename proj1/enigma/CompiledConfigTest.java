@@ -0,0 +1,73 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the CompiledConfig class.
+ *  @author Preston Weber
+ */
+public class CompiledConfigTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return the text of a configuration holding the naval rotors B,
+     *  Beta, I, III and IV. */
+    private String navalConfig() {
+        return UPPER_STRING + "\n5 3\n"
+            + "I MQ " + NAVALA.get("I") + "\n"
+            + "III MV " + NAVALA.get("III") + "\n"
+            + "IV MJ " + NAVALA.get("IV") + "\n"
+            + "Beta N " + NAVALA.get("Beta") + "\n"
+            + "B R " + NAVALA.get("B") + "\n";
+    }
+
+    /** Return the conversion of MSG by CONFIG set up as
+     *  "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)". */
+    private String convert(Machine config, String msg) {
+        config.insertRotors(new String[] {"B", "Beta", "III", "IV", "I"});
+        config.setRotors("AXLE");
+        config.setPlugboard(new Permutation("(HQ) (EX) (IP) (TR) (BY)",
+                                            UPPER));
+        return config.convert(msg);
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        File source = File.createTempFile("enigma", ".conf");
+        File compiled = new File(source.getPath() + CompiledConfig.SUFFIX);
+        source.deleteOnExit();
+        compiled.deleteOnExit();
+        Files.write(source.toPath(),
+                    navalConfig().getBytes(StandardCharsets.UTF_8));
+        assertNull(CompiledConfig.fresh(source.getPath()));
+
+        Machine parsed = Main.parseConfig(source.getPath());
+        CompiledConfig.save(parsed, compiled.getPath());
+        compiled.setLastModified(source.lastModified() + 1000);
+        assertEquals(compiled.getPath(),
+                     CompiledConfig.fresh(source.getPath()));
+        Machine loaded = Main.configure(source.getPath());
+        assertEquals(5, loaded.numRotors());
+        assertEquals(3, loaded.numPawls());
+        assertEquals(5, loaded.allRotors().size());
+        assertEquals("QVPQSOKOILPUBKJZPISFXDW",
+                     convert(loaded, "FROMHISSHOULDERHIAWATHA"));
+
+        compiled.setLastModified(source.lastModified() - 1000);
+        assertNull(CompiledConfig.fresh(source.getPath()));
+    }
+}
@@ -0,0 +1,236 @@
+package enigma;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/** The rotors in the slots of a machine, compiled into flat tables: the
+ *  forward and inverse permutation tables and the notch table of each
+ *  slot, and which slots move.  Everything a keystroke needs is decided
+ *  when the rotors are compiled, so stepping and conversion make no
+ *  virtual calls and no rotates()/reflecting() checks.  Instances are
+ *  shared by every machine using the same rotors; the settings are
+ *  passed in by the caller.  Apart from the stepping schedules found
+ *  for them, which they collect so that the schedules are dropped with
+ *  them, instances are immutable.
+ *  @author Preston Weber
+ */
+final class CompiledRotors {
+
+    /** Return the compiled form of the rotors in SLOTS (SLOTS[0] being
+     *  the reflector) of a machine with PAWLS pawls, or null if some
+     *  rotor's conversion is not fully described by its permutation, in
+     *  which case the caller must interpret the rotors directly. */
+    static CompiledRotors compile(Rotor[] slots, int pawls) {
+        for (Rotor rotor : slots) {
+            Class<?> kind = rotor.getClass();
+            if (kind != Rotor.class && kind != MovingRotor.class
+                && kind != FixedRotor.class && kind != Reflector.class) {
+                return null;
+            }
+        }
+        return new CompiledRotors(slots, pawls);
+    }
+
+    /** Compiled form of the rotors in SLOTS, with PAWLS pawls. */
+    private CompiledRotors(Rotor[] slots, int pawls) {
+        _size = slots[0].size();
+        _fast = slots.length - 1;
+        _forward = new int[slots.length][];
+        _inverse = new int[slots.length][];
+        _notchAt = new boolean[slots.length][_size];
+        _moves = new boolean[slots.length];
+        _doubleSteps = new boolean[slots.length];
+        _firstMoving = slots.length - pawls;
+        for (int i = 0; i < slots.length; i++) {
+            _forward[i] = slots[i].permutation().forwardTable();
+            _inverse[i] = slots[i].permutation().inverseTable();
+            _moves[i] = slots[i].rotates() && i >= _firstMoving;
+            for (int k = 0; k < _size; k++) {
+                _notchAt[i][k] = slots[i].atNotch(k);
+            }
+        }
+        for (int i = 1; i < slots.length; i++) {
+            _doubleSteps[i] = slots[i - 1].rotates();
+        }
+    }
+
+    /** Advance SETTINGS, the settings of my slots, for one keystroke.
+     *  Returns true iff some slot other than the fast one moved. */
+    boolean step(int[] settings) {
+        boolean slowMoved = false;
+        for (int j = _firstMoving; j < _fast; j++) {
+            if (_moves[j] && (_notchAt[j + 1][settings[j + 1]]
+                              || (_doubleSteps[j]
+                                  && _notchAt[j][settings[j]]))) {
+                settings[j] = next(settings[j]);
+                slowMoved = true;
+            }
+        }
+        if (_moves[_fast]) {
+            settings[_fast] = next(settings[_fast]);
+        }
+        return slowMoved;
+    }
+
+    /** Return true iff the next keystroke from SETTINGS will advance some
+     *  slot other than the fast one. */
+    boolean carryPending(int[] settings) {
+        for (int j = _firstMoving; j < _fast; j++) {
+            if (_notchAt[j + 1][settings[j + 1]]
+                || (_doubleSteps[j] && _notchAt[j][settings[j]])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Return the composite permutation of every slot but the fast one
+     *  at SETTINGS: forward to the reflector and back again. */
+    int[] inner(int[] settings) {
+        return inner(settings, new int[_size]);
+    }
+
+    /** Store the composite permutation of every slot but the fast one at
+     *  SETTINGS in INNER, which must have one element per character, and
+     *  return INNER. */
+    int[] inner(int[] settings, int[] inner) {
+        for (int x = 0; x < _size; x++) {
+            inner[x] = x;
+        }
+        for (int a = _fast - 1; a >= 0; a--) {
+            shift(inner, _forward[a], settings[a]);
+        }
+        for (int b = 1; b < _fast; b++) {
+            shift(inner, _inverse[b], settings[b]);
+        }
+        return inner;
+    }
+
+    /** Return the conversion of C with the fast rotor at setting FAST,
+     *  INNER the current result of inner(), and PLUGBOARD the forward
+     *  table of the plugboard. */
+    int convert(int c, int fast, int[] inner, int[] plugboard) {
+        int convert = plugboard[c] + fast;
+        if (convert >= _size) {
+            convert -= _size;
+        }
+        convert = _forward[_fast][convert] - fast;
+        if (convert < 0) {
+            convert += _size;
+        }
+        convert = inner[convert] + fast;
+        if (convert >= _size) {
+            convert -= _size;
+        }
+        convert = _inverse[_fast][convert] - fast;
+        if (convert < 0) {
+            convert += _size;
+        }
+        return plugboard[convert];
+    }
+
+    /** Replace each value V in VALUES by the result of passing V through
+     *  a rotor at setting SETTING whose permutation (or inverse) at
+     *  setting 0 is TABLE. */
+    private void shift(int[] values, int[] table, int setting) {
+        for (int i = 0; i < values.length; i++) {
+            int v = values[i] + setting;
+            if (v >= _size) {
+                v -= _size;
+            }
+            v = table[v] - setting;
+            if (v < 0) {
+                v += _size;
+            }
+            values[i] = v;
+        }
+    }
+
+    /** Return the number of slots I describe. */
+    int numSlots() {
+        return _fast + 1;
+    }
+
+    /** Return the index of the leftmost slot with a pawl. */
+    int firstMoving() {
+        return _firstMoving;
+    }
+
+    /** Return the forward permutation table of SLOT at setting 0. */
+    int[] forwardTable(int slot) {
+        return _forward[slot];
+    }
+
+    /** Return the inverse permutation table of SLOT at setting 0. */
+    int[] inverseTable(int slot) {
+        return _inverse[slot];
+    }
+
+    /** Return true iff SLOT is at a notch at setting SETTING. */
+    boolean atNotch(int slot, int setting) {
+        return _notchAt[slot][setting];
+    }
+
+    /** Return true iff SLOT moves: it has a pawl and its rotor a
+     *  ratchet. */
+    boolean moves(int slot) {
+        return _moves[slot];
+    }
+
+    /** Return true iff SLOT advances when it is itself at a notch. */
+    boolean doubleSteps(int slot) {
+        return _doubleSteps[slot];
+    }
+
+    /** Return the schedules of the cycles of settings built so far for
+     *  me.  Machines add to it as they build schedules. */
+    List<SteppingSchedule> schedules() {
+        return _schedules;
+    }
+
+    /** Return true iff my cycles have been found too long to schedule. */
+    boolean unscheduled() {
+        return _unscheduled;
+    }
+
+    /** Record that my cycles are too long to schedule. */
+    void markUnscheduled() {
+        _unscheduled = true;
+    }
+
+    /** Return the setting after SETTING. */
+    private int next(int setting) {
+        return setting + 1 == _size ? 0 : setting + 1;
+    }
+
+    /** Size of the alphabet. */
+    private final int _size;
+
+    /** Index of the fast (rightmost) slot. */
+    private final int _fast;
+
+    /** Index of the leftmost slot with a pawl. */
+    private final int _firstMoving;
+
+    /** Forward and inverse permutation tables of each slot, at setting
+     *  0. */
+    private final int[][] _forward, _inverse;
+
+    /** _notchAt[I][K] is true iff slot I is at a notch at setting K. */
+    private final boolean[][] _notchAt;
+
+    /** _moves[I] is true iff slot I has a pawl and its rotor a
+     *  ratchet. */
+    private final boolean[] _moves;
+
+    /** _doubleSteps[I] is true iff slot I advances when it is itself at
+     *  a notch, because the rotor to its left has a ratchet. */
+    private final boolean[] _doubleSteps;
+
+    /** Stepping schedules of the cycles built so far. */
+    private final List<SteppingSchedule> _schedules =
+        new CopyOnWriteArrayList<>();
+
+    /** True iff my cycles are too long to schedule. */
+    private volatile boolean _unscheduled;
+}
@@ -0,0 +1,80 @@
+package enigma;
+
+import java.util.concurrent.RecursiveAction;
+
+/** A fork/join task that converts a range of a message, splitting it into
+ *  chunks that are converted concurrently by independent copies of a
+ *  machine, each jumped ahead to the start of its chunk.
+ *  @author Preston Weber
+ */
+class ConvertTask extends RecursiveAction {
+
+    /** Serialization version.  Tasks are never serialized, but
+     *  RecursiveAction is Serializable. */
+    private static final long serialVersionUID = 1L;
+
+    /** Smallest number of characters given to a single worker. */
+    static final int MIN_CHUNK = 1 << 14;
+
+    /** A task converting characters START .. START+LEN-1 of the message
+     *  whose first character is SRC[SRCOFFSET], into the array DST whose
+     *  element DSTOFFSET receives the first converted character.  BASE
+     *  is in the state in which the message begins; it is only copied,
+     *  never changed.  The work is divided into about PARALLELISM
+     *  chunks. */
+    ConvertTask(Machine base, char[] src, int srcOffset,
+                char[] dst, int dstOffset, int start, int len,
+                int parallelism) {
+        _base = base;
+        _src = src;
+        _srcOffset = srcOffset;
+        _dst = dst;
+        _dstOffset = dstOffset;
+        _start = start;
+        _len = len;
+        _parallelism = parallelism;
+    }
+
+    @Override
+    protected void compute() {
+        if (_parallelism < 2 || _len < 2 * MIN_CHUNK) {
+            Machine machine = _base.copy();
+            machine.advanceBy(_start);
+            machine.convert(_src, _srcOffset + _start,
+                            _dst, _dstOffset + _start, _len);
+            return;
+        }
+        int half = _len / 2;
+        int halfParallelism = _parallelism / 2;
+        invokeAll(new ConvertTask(_base, _src, _srcOffset, _dst,
+                                  _dstOffset, _start, half,
+                                  halfParallelism),
+                  new ConvertTask(_base, _src, _srcOffset, _dst,
+                                  _dstOffset, _start + half, _len - half,
+                                  _parallelism - halfParallelism));
+    }
+
+    /** The machine in its state at the start of the message. */
+    private final Machine _base;
+
+    /** The message being converted. */
+    private final char[] _src;
+
+    /** Index in _src of the first character of the message. */
+    private final int _srcOffset;
+
+    /** Destination of the converted message. */
+    private final char[] _dst;
+
+    /** Index in _dst of the first converted character of the message. */
+    private final int _dstOffset;
+
+    /** Offset within the message of my first character. */
+    private final int _start;
+
+    /** Number of characters I convert. */
+    private final int _len;
+
+    /** Approximate number of chunks my range is divided into. */
+    private final int _parallelism;
+}
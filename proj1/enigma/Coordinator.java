@@ -0,0 +1,291 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static enigma.EnigmaException.*;
+
+/** Hands out the units of a keyspace search to Workers connecting over
+ *  a socket, and keeps a checkpoint of the units completed, so that a
+ *  search interrupted at any point resumes where it left off.  Unit U
+ *  is keys U * unitKeys .. (U + 1) * unitKeys - 1.
+ *
+ *  The protocol is line-based text.  A worker opens with "READY JOB",
+ *  JOB identifying the search, and is then sent "UNIT U FROM TO" for
+ *  each unit it is to search, answering with a "STOP LINE" for each
+ *  result and then "DONE U".  When no units are left it is sent
+ *  "FINISHED"; a worker for another job is sent "REJECT".  A unit's
+ *  results are passed on only once it is done, and the unit is then
+ *  marked in the checkpoint, so a unit is never lost; it may be searched
+ *  twice if the coordinator stops between the two.  The units of a
+ *  worker that disconnects are handed to the next one asking.
+ *
+ *  The checkpoint file holds the int MAGIC, the SHA-256 digest of the
+ *  job's UTF-8 encoding, the unit size and the number of units, followed
+ *  by a bitmap of the units done.  It is memory-mapped and forced to disk
+ *  as each unit completes.
+ *  @author Preston Weber
+ */
+class Coordinator {
+
+    /** Magic number at the start of every checkpoint ("ENCP"). */
+    static final int MAGIC = 0x454e4350;
+
+    /** Time given to each worker to be told that the search is
+     *  finished, in milliseconds. */
+    static final long GOODBYE_MILLIS = 1000;
+
+    /** Length of the digest identifying a job, in bytes. */
+    static final int DIGEST = 32;
+
+    /** Length of the checkpoint header, in bytes. */
+    static final int HEADER = 16 + DIGEST;
+
+    /** A coordinator for the search JOB of KEYS keys in units of
+     *  UNITKEYS, checkpointed in the file named CHECKPOINT (which is
+     *  created if missing, and otherwise continued), passing the
+     *  results of each unit done to RESULTS. */
+    Coordinator(String job, long keys, long unitKeys, String checkpoint,
+                Consumer<String> results) {
+        if (unitKeys <= 0) {
+            throw error("units must hold at least one key");
+        }
+        long units = (keys + unitKeys - 1) / unitKeys;
+        if (units > Integer.MAX_VALUE - 7) {
+            throw error("too many units: %d", units);
+        }
+        _job = job;
+        _digest = digest(job);
+        _keys = keys;
+        _unitKeys = unitKeys;
+        _units = (int) units;
+        _results = results;
+        _done = map(checkpoint);
+        for (int u = 0; u < _units; u += 1) {
+            if (!done(u)) {
+                _pending.add(u);
+            }
+        }
+    }
+
+    /** Return the number of units not yet done. */
+    synchronized int remaining() {
+        return _pending.size() + _inFlight;
+    }
+
+    /** Serve workers connecting to SERVER until every unit is done, and
+     *  then close SERVER. */
+    void serve(ServerSocket server) {
+        synchronized (this) {
+            _server = server;
+            if (remaining() == 0) {
+                close();
+                return;
+            }
+        }
+        List<Thread> handlers = new ArrayList<>();
+        try {
+            while (true) {
+                Socket socket = server.accept();
+                Thread thread = new Thread(() -> handle(socket),
+                                           "enigma-coordinator");
+                thread.setDaemon(true);
+                thread.start();
+                handlers.add(thread);
+            }
+        } catch (IOException excp) {
+            synchronized (this) {
+                if (remaining() > 0) {
+                    throw error("coordinator failed: %s", excp.getMessage());
+                }
+            }
+        }
+        try {
+            for (Thread handler : handlers) {
+                handler.join(GOODBYE_MILLIS);
+            }
+        } catch (InterruptedException excp) {
+            /* The workers will notice the coordinator is gone. */
+        }
+    }
+
+    /** Talk to the worker on SOCKET until it leaves or no units are
+     *  left. */
+    private void handle(Socket socket) {
+        int unit = -1;
+        try (socket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(
+                 socket.getInputStream(), StandardCharsets.UTF_8));
+             PrintWriter out = new PrintWriter(new OutputStreamWriter(
+                 socket.getOutputStream(), StandardCharsets.UTF_8))) {
+            if (!("READY " + _job).equals(in.readLine())) {
+                out.println("REJECT");
+                return;
+            }
+            for (unit = take(); unit >= 0; unit = take()) {
+                long from = unit * _unitKeys;
+                long to = Math.min(from + _unitKeys, _keys);
+                out.printf("UNIT %d %d %d%n", unit, from, to);
+                out.flush();
+                List<String> results = new ArrayList<>();
+                for (String line = in.readLine(); !("DONE " + unit)
+                         .equals(line); line = in.readLine()) {
+                    if (line == null || !line.startsWith("STOP ")) {
+                        throw new IOException("bad message from worker");
+                    }
+                    results.add(line.substring("STOP ".length()));
+                }
+                complete(unit, results);
+                unit = -1;
+            }
+            out.println("FINISHED");
+        } catch (IOException | InterruptedException excp) {
+            /* The worker is gone; its unit goes back to the others. */
+        } finally {
+            if (unit >= 0) {
+                release(unit);
+            }
+        }
+    }
+
+    /** Return the next unit to search, waiting while the only units
+     *  left are being searched, or -1 if every unit is done. */
+    private synchronized int take() throws InterruptedException {
+        while (_pending.isEmpty() && _inFlight > 0) {
+            wait();
+        }
+        if (_pending.isEmpty()) {
+            return -1;
+        }
+        _inFlight += 1;
+        return _pending.remove();
+    }
+
+    /** Record that UNIT is done with RESULTS. */
+    private synchronized void complete(int unit, List<String> results) {
+        for (String result : results) {
+            _results.accept(result);
+        }
+        int index = HEADER + unit / 8;
+        _done.put(index, (byte) (_done.get(index) | (1 << (unit % 8))));
+        _done.force();
+        _inFlight -= 1;
+        if (remaining() == 0) {
+            close();
+        }
+        notifyAll();
+    }
+
+    /** Return UNIT, which was not finished, to the pending units. */
+    private synchronized void release(int unit) {
+        _inFlight -= 1;
+        _pending.addFirst(unit);
+        notifyAll();
+    }
+
+    /** Return true iff unit U is marked done in the checkpoint. */
+    private boolean done(int u) {
+        return (_done.get(HEADER + u / 8) & (1 << (u % 8))) != 0;
+    }
+
+    /** Stop accepting workers. */
+    private void close() {
+        try {
+            if (_server != null) {
+                _server.close();
+            }
+        } catch (IOException excp) {
+            /* Nothing more to accept anyway. */
+        }
+    }
+
+    /** Return the checkpoint in the file named NAME, mapped into memory,
+     *  creating it if it is missing and checking that it belongs to my
+     *  job if it is not. */
+    private MappedByteBuffer map(String name) {
+        long length = HEADER + (_units + 7) / 8;
+        try (FileChannel file = FileChannel.open(
+                 Paths.get(name), StandardOpenOption.CREATE,
+                 StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            boolean fresh = file.size() == 0;
+            if (!fresh && file.size() != length) {
+                throw error("%s is not a checkpoint of this search", name);
+            }
+            MappedByteBuffer map =
+                file.map(FileChannel.MapMode.READ_WRITE, 0, length);
+            byte[] digest = new byte[DIGEST];
+            map.get(4, digest);
+            if (fresh) {
+                map.putInt(0, MAGIC).put(4, _digest)
+                    .putLong(4 + DIGEST, _unitKeys)
+                    .putInt(12 + DIGEST, _units);
+                map.force();
+            } else if (map.getInt(0) != MAGIC
+                       || !Arrays.equals(digest, _digest)
+                       || map.getLong(4 + DIGEST) != _unitKeys
+                       || map.getInt(12 + DIGEST) != _units) {
+                throw error("%s is not a checkpoint of this search", name);
+            }
+            return map;
+        } catch (IOException excp) {
+            throw error("could not open checkpoint %s", name);
+        }
+    }
+
+    /** Return the SHA-256 digest of TEXT's UTF-8 encoding. */
+    static byte[] digest(String text) {
+        try {
+            return MessageDigest.getInstance("SHA-256")
+                .digest(text.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException excp) {
+            throw error("SHA-256 is not available");
+        }
+    }
+
+    /** Identifies the search. */
+    private final String _job;
+
+    /** Digest of _job, identifying the search in the checkpoint. */
+    private final byte[] _digest;
+
+    /** Number of keys searched. */
+    private final long _keys;
+
+    /** Number of keys in a unit. */
+    private final long _unitKeys;
+
+    /** Number of units. */
+    private final int _units;
+
+    /** Receives the results of each unit done. */
+    private final Consumer<String> _results;
+
+    /** The checkpoint. */
+    private final MappedByteBuffer _done;
+
+    /** Units not yet handed out, in the order they will be. */
+    private final ArrayDeque<Integer> _pending = new ArrayDeque<>();
+
+    /** Number of units being searched. */
+    private int _inFlight;
+
+    /** Socket accepting workers, once serving. */
+    private ServerSocket _server;
+}
@@ -0,0 +1,166 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Coordinator and Worker classes.
+ *  @author Preston Weber
+ */
+public class CoordinatorTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return a three-slot machine with two pawls holding reflector B and
+     *  rotors I, III and IV. */
+    private Machine smallMachine() {
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        rotors.add(new Reflector("B", new Permutation(NAVALA.get("B"),
+                                                      UPPER)));
+        rotors.add(new MovingRotor("I", new Permutation(NAVALA.get("I"),
+                                                        UPPER), "Q"));
+        rotors.add(new MovingRotor("III",
+                                   new Permutation(NAVALA.get("III"),
+                                                   UPPER), "V"));
+        rotors.add(new MovingRotor("IV", new Permutation(NAVALA.get("IV"),
+                                                         UPPER), "J"));
+        return new Machine(UPPER, 3, 2, rotors);
+    }
+
+    /** Serve COORDINATOR to WORKERS workers doing SEARCH for JOB, each on
+     *  its own thread, and return once every unit is done. */
+    private void serve(Coordinator coordinator, String job,
+                       Worker.Search search, int workers)
+        throws IOException, InterruptedException {
+        ServerSocket server =
+            new ServerSocket(0, 0, InetAddress.getLoopbackAddress());
+        String host = InetAddress.getLoopbackAddress().getHostAddress();
+        List<Thread> threads = new ArrayList<>();
+        for (int w = 0; w < workers; w += 1) {
+            Thread thread = new Thread(() -> new Worker(job, search)
+                                       .run(host, server.getLocalPort()));
+            thread.start();
+            threads.add(thread);
+        }
+        coordinator.serve(server);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testMatchesBombe() throws Exception {
+        Machine machine = smallMachine();
+        machine.insertRotors(new String[] {"B", "IV", "I"});
+        machine.setRotors("QM");
+        machine.setPlugboard(new Permutation("(AG) (EX) (TR) (BY)", UPPER));
+        String cipher =
+            machine.convert("ATTACKATDAWNONTHEEASTERNFLANKWITHTANKS");
+        Bombe bombe = new Bombe(smallMachine());
+        List<Menu> menus =
+            List.of(bombe.menu(UPPER.indices(cipher),
+                               UPPER.indices("DAWNONTHEEASTERNFLANK"), 8));
+        ForkJoinPool pool = new ForkJoinPool(2);
+        List<String> expected =
+            Collections.synchronizedList(new ArrayList<>());
+        bombe.search(menus, pool, expected::add);
+
+        File checkpoint = File.createTempFile("enigma", ".ckpt");
+        checkpoint.delete();
+        checkpoint.deleteOnExit();
+        long keys = bombe.keyspace().size();
+        List<String> stops = Collections.synchronizedList(new ArrayList<>());
+        Worker.Search search =
+            (from, to, results) -> bombe.search(menus, from, to, pool,
+                                                results);
+        Coordinator coordinator =
+            new Coordinator("test", keys, 100, checkpoint.getPath(),
+                            stops::add);
+        assertEquals((keys + 99) / 100, coordinator.remaining());
+        serve(coordinator, "test", search, 3);
+        assertEquals(0, coordinator.remaining());
+        assertEquals(new HashSet<>(expected), new HashSet<>(stops));
+        assertEquals(expected.size(), stops.size());
+
+        Coordinator resumed =
+            new Coordinator("test", keys, 100, checkpoint.getPath(),
+                            stops::add);
+        assertEquals(0, resumed.remaining());
+        try {
+            new Coordinator("other", keys, 100, checkpoint.getPath(),
+                            stops::add);
+            fail("checkpoint of another job accepted");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+    }
+
+    @Test
+    public void testCheckpointCollision() throws Exception {
+        File checkpoint = File.createTempFile("enigma", ".ckpt");
+        checkpoint.delete();
+        checkpoint.deleteOnExit();
+        assertEquals("Aa".hashCode(), "BB".hashCode());
+        List<String> stops = new ArrayList<>();
+        new Coordinator("Aa", 1000, 100, checkpoint.getPath(), stops::add);
+        try {
+            new Coordinator("BB", 1000, 100, checkpoint.getPath(),
+                            stops::add);
+            fail("checkpoint of a job with the same hash code accepted");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+        assertEquals(10, new Coordinator("Aa", 1000, 100,
+                                         checkpoint.getPath(),
+                                         stops::add).remaining());
+    }
+
+    @Test
+    public void testJobCollision() throws Exception {
+        File text = File.createTempFile("enigma", ".txt");
+        text.deleteOnExit();
+        Files.write(text.toPath(), "ABC\n".getBytes(StandardCharsets.UTF_8));
+        String[] first = {text.getPath(), text.getPath(), "Aa"};
+        String[] second = {text.getPath(), text.getPath(), "BB"};
+        assertEquals("ABC\n\nABC\n\nAa".hashCode(),
+                     "ABC\n\nABC\n\nBB".hashCode());
+        assertEquals(Distributed.job(first), Distributed.job(first));
+        assertFalse(Distributed.job(first).equals(Distributed.job(second)));
+
+        File checkpoint = File.createTempFile("enigma", ".ckpt");
+        checkpoint.delete();
+        checkpoint.deleteOnExit();
+        List<String> stops = new ArrayList<>();
+        new Coordinator(Distributed.job(first), 1000, 100,
+                        checkpoint.getPath(), stops::add);
+        try {
+            new Coordinator(Distributed.job(second), 1000, 100,
+                            checkpoint.getPath(), stops::add);
+            fail("checkpoint of a search with a colliding description"
+                 + " accepted");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+    }
+}
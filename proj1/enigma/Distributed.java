@@ -0,0 +1,125 @@
+package enigma;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static enigma.EnigmaException.*;
+
+/** A bombe search (see Bombe) spread over several processes on one host:
+ *  a Coordinator hands out units of the keyspace to Workers, each of
+ *  which searches its units on all its processors, and checkpoints the
+ *  units done so that a search can be stopped and resumed.
+ *  @author Preston Weber
+ */
+public final class Distributed {
+
+    /** Run one process of a distributed search, as specified by ARGS.
+     *  With ARGS[0] "coordinate", ARGS[1] is the port to listen on,
+     *  ARGS[2] the name of the checkpoint file (created if missing, and
+     *  otherwise resumed) and the rest the arguments of Bombe; stops are
+     *  printed as their units are completed and appended to the file
+     *  named ARGS[2] followed by ".stops".  With ARGS[0] "work", ARGS[1]
+     *  is the port of the coordinator on this host and the rest the
+     *  arguments of Bombe, which must be those of the coordinator.
+     *  Exits normally if there are no errors; otherwise with code 1. */
+    public static void main(String... args) {
+        try {
+            if (args.length < 2) {
+                throw error("Too few command-line arguments");
+            }
+            int port = parsePort(args[1]);
+            if (args[0].equals("coordinate") && args.length >= 6
+                && args.length <= 7) {
+                coordinate(port, args[2], Arrays.copyOfRange(args, 3,
+                                                             args.length));
+            } else if (args[0].equals("work") && args.length >= 5
+                       && args.length <= 6) {
+                work(port, Arrays.copyOfRange(args, 2, args.length));
+            } else {
+                throw error("usage: coordinate PORT CHECKPOINT BOMBE-ARGS "
+                            + "or work PORT BOMBE-ARGS");
+            }
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Number of keys in each unit handed to a worker. */
+    static final long UNIT_KEYS = 1 << 20;
+
+    /** Coordinate the search with the Bombe arguments SEARCH on PORT,
+     *  checkpointing in the file named CHECKPOINT. */
+    static void coordinate(int port, String checkpoint, String[] search) {
+        Bombe bombe = new Bombe(Main.configure(search[0]));
+        bombe.menus(search);
+        String stops = checkpoint + ".stops";
+        Coordinator coordinator =
+            new Coordinator(job(search), bombe.keyspace().size(),
+                            UNIT_KEYS, checkpoint,
+                            stop -> record(stop, stops));
+        try (ServerSocket server = new ServerSocket(
+                 port, 0, InetAddress.getLoopbackAddress())) {
+            coordinator.serve(server);
+        } catch (IOException excp) {
+            throw error("could not listen on port %d", port);
+        }
+    }
+
+    /** Work on the search with the Bombe arguments SEARCH for the
+     *  coordinator on PORT. */
+    static void work(int port, String[] search) {
+        Bombe bombe = new Bombe(Main.configure(search[0]));
+        List<Menu> menus = bombe.menus(search);
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        new Worker(job(search),
+                   (from, to, results) -> bombe.search(menus, from, to,
+                                                       pool, results))
+            .run(InetAddress.getLoopbackAddress().getHostAddress(), port);
+    }
+
+    /** Return the name identifying the search with Bombe arguments
+     *  SEARCH: the hexadecimal SHA-256 digest of its configuration,
+     *  ciphertext, crib and offset. */
+    static String job(String[] search) {
+        String description = String.join("\n", Main.readFile(search[0]),
+                                         Main.readFile(search[1]),
+                                         String.join(" ", Arrays.copyOfRange(
+                                             search, 2, search.length)));
+        return "bombe-"
+            + HexFormat.of().formatHex(Coordinator.digest(description));
+    }
+
+    /** Print STOP and append it to the file named STOPS. */
+    private static void record(String stop, String stops) {
+        System.out.println(stop);
+        try {
+            Files.write(Paths.get(stops),
+                        (stop + System.lineSeparator())
+                        .getBytes(Charset.defaultCharset()),
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND,
+                        StandardOpenOption.SYNC);
+        } catch (IOException excp) {
+            throw error("could not write %s", stops);
+        }
+    }
+
+    /** Return the port number given by TEXT. */
+    private static int parsePort(String text) {
+        try {
+            return Integer.parseInt(text);
+        } catch (NumberFormatException excp) {
+            throw error("bad port: %s", text);
+        }
+    }
+}
@@ -7,6 +7,9 @@ package enigma;
  */
 class EnigmaException extends RuntimeException {
 
+    /** Serialization version. */
+    private static final long serialVersionUID = 1L;
+
     /** An exception whose getMessage() value is MSG. */
     EnigmaException(String msg) {
         super(msg);
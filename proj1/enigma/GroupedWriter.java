@@ -0,0 +1,109 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import static enigma.EnigmaException.*;
+
+/** A buffered formatter that writes message characters in groups of
+ *  five separated by single blanks, one message line at a time.
+ *  @author Preston Weber
+ */
+class GroupedWriter {
+
+    /** Number of characters in a group. */
+    static final int GROUP_SIZE = 5;
+
+    /** Default size of my character buffer. */
+    static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+    /** A formatter sending its output to OUT, buffering up to BUFFERSIZE
+     *  characters at a time. */
+    GroupedWriter(Writer out, int bufferSize) {
+        _out = out;
+        _buffer = new char[Math.max(bufferSize, GROUP_SIZE + 1)];
+    }
+
+    /** A formatter sending its output to OUT. */
+    GroupedWriter(Writer out) {
+        this(out, DEFAULT_BUFFER_SIZE);
+    }
+
+    /** Append the LEN message characters starting at CHARS[OFFSET] to the
+     *  current line. */
+    void write(char[] chars, int offset, int len) {
+        int end = offset + len;
+        while (offset < end) {
+            if (_inGroup == GROUP_SIZE) {
+                put(' ');
+                _inGroup = 0;
+            }
+            int run = Math.min(end - offset, GROUP_SIZE - _inGroup);
+            if (_buffer.length - _count < run) {
+                drain();
+            }
+            System.arraycopy(chars, offset, _buffer, _count, run);
+            _count += run;
+            _inGroup += run;
+            offset += run;
+        }
+    }
+
+    /** Continue a line of which COLUMN message characters have already
+     *  been written elsewhere, so that grouping carries on from them. */
+    void resumeLine(long column) {
+        _inGroup = column == 0 ? 0 : (int) ((column - 1) % GROUP_SIZE) + 1;
+    }
+
+    /** Terminate the current line, which may be empty. */
+    void endLine() {
+        for (int i = 0; i < LINE_SEPARATOR.length(); i++) {
+            put(LINE_SEPARATOR.charAt(i));
+        }
+        _inGroup = 0;
+    }
+
+    /** Write all buffered characters to my output and flush it. */
+    void flush() {
+        drain();
+        try {
+            _out.flush();
+        } catch (IOException excp) {
+            throw error("could not write output: %s", excp.getMessage());
+        }
+    }
+
+    /** Append C to my buffer. */
+    private void put(char c) {
+        if (_count == _buffer.length) {
+            drain();
+        }
+        _buffer[_count] = c;
+        _count += 1;
+    }
+
+    /** Write my buffered characters to my output. */
+    private void drain() {
+        try {
+            _out.write(_buffer, 0, _count);
+        } catch (IOException excp) {
+            throw error("could not write output: %s", excp.getMessage());
+        }
+        _count = 0;
+    }
+
+    /** Line terminator written at the end of each line. */
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    /** Destination of formatted output. */
+    private final Writer _out;
+
+    /** Characters not yet written to _out. */
+    private final char[] _buffer;
+
+    /** Number of valid characters in _buffer. */
+    private int _count;
+
+    /** Number of characters in the current group of the current line. */
+    private int _inGroup;
+}
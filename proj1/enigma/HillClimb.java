@@ -0,0 +1,460 @@
+package enigma;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static enigma.EnigmaException.*;
+
+/** A ciphertext-only attack on an Enigma message.  Every key of a
+ *  Keyspace is first tried without a plugboard, and the keys whose
+ *  decryptions have the highest index of coincidence are kept, since
+ *  the right rotors make the decryption look like (partly plugged)
+ *  plaintext even before the plugboard is known.  The plugboard of each
+ *  kept key is then found by hill climbing: pairs of letters are
+ *  plugged and unplugged one at a time, keeping each change that raises
+ *  the quadgram score of the decryption.  Climbs run in parallel; the
+ *  climbs after those from the kept keys restart from the best solution
+ *  found so far by any of them, randomly disturbed.  Decryptions run
+ *  on KeyTrials, so scoring allocates nothing.
+ *  @author Preston Weber
+ */
+public final class HillClimb {
+
+    /** Attack a message, as specified by ARGS, where 3 <= ARGS.length
+     *  <= 4.  ARGS[0] is the name of a configuration file, ARGS[1] the
+     *  name of a quadgram table written by Quadgrams for its alphabet
+     *  and ARGS[2] the name of a file holding the ciphertext (blanks and
+     *  line breaks are ignored).  ARGS[3], when present, is the number
+     *  of climbs, by default twice CANDIDATES.  Prints the settings line
+     *  of the best solution found and the decryption under it. */
+    public static void main(String... args) {
+        try {
+            if (args.length < 3 || args.length > 4) {
+                throw error("Only 3 or 4 command-line arguments allowed");
+            }
+            Machine config = Main.configure(args[0]);
+            Alphabet alphabet = config.alphabet();
+            HillClimb attack =
+                new HillClimb(config, Quadgrams.load(alphabet, args[1]),
+                              MAX_PAIRS);
+            int[] ciphertext = alphabet.indices(Main.readFile(args[2]));
+            int climbs = 2 * CANDIDATES;
+            if (args.length > 3) {
+                try {
+                    climbs = Integer.parseInt(args[3]);
+                } catch (NumberFormatException excp) {
+                    throw error("bad number of climbs: %s", args[3]);
+                }
+            }
+            ForkJoinPool pool = ForkJoinPool.commonPool();
+            long[] keys = attack.rank(ciphertext, CANDIDATES, pool);
+            Solution best = attack.solve(ciphertext, keys, climbs, pool, 0);
+            System.out.println(best.settingsLine());
+            StringBuilder plain = new StringBuilder();
+            for (int index : best.plaintext()) {
+                plain.appendCodePoint(alphabet.toCodePoint(index));
+            }
+            System.out.println(plain);
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Number of keys kept by the index-of-coincidence ranking. */
+    static final int CANDIDATES = 100;
+
+    /** Largest number of plugboard pairs tried, as on the service
+     *  machines. */
+    static final int MAX_PAIRS = 10;
+
+    /** Number of trials decrypted at a time while ranking. */
+    static final int BATCH = 1 << 10;
+
+    /** Largest number of keys ranked by one worker without
+     *  splitting. */
+    static final long GRAIN = 1 << 14;
+
+    /** Number of random plugboard changes made to the best solution
+     *  found so far when a climb restarts from it. */
+    static final int KICKS = 3;
+
+    /** A solution to an attack: a key, a plugboard and their score. */
+    final class Solution {
+
+        /** A solution with key KEY, plugboard table PLUGBOARD, quadgram
+         *  score SCORE and decryption PLAINTEXT. */
+        Solution(long key, int[] plugboard, double score,
+                 int[] plaintext) {
+            _key = key;
+            _plugboard = plugboard;
+            _score = score;
+            _plaintext = plaintext;
+        }
+
+        /** Return my key. */
+        long key() {
+            return _key;
+        }
+
+        /** Return my plugboard, as a forward table. */
+        int[] plugboard() {
+            return _plugboard;
+        }
+
+        /** Return my quadgram score. */
+        double score() {
+            return _score;
+        }
+
+        /** Return the decryption of the ciphertext under me, as alphabet
+         *  indices. */
+        int[] plaintext() {
+            return _plaintext;
+        }
+
+        /** Return my settings line, in the format read by Main. */
+        String settingsLine() {
+            int[] settings = new int[_keyspace.numRotors()];
+            _keyspace.start(_key, settings);
+            return _keyspace.settingsLine(_keyspace.orderOf(_key),
+                                          settings, _plugboard);
+        }
+
+        /** My key. */
+        private final long _key;
+
+        /** My plugboard. */
+        private final int[] _plugboard;
+
+        /** My score. */
+        private final double _score;
+
+        /** Decryption of the ciphertext under me. */
+        private final int[] _plaintext;
+    }
+
+    /** An attack on messages of machines configured like CONFIG, scoring
+     *  candidate plaintexts with PLAINTEXT and plugging no more than
+     *  MAXPAIRS pairs. */
+    HillClimb(Machine config, Scorer plaintext, int maxPairs) {
+        _keyspace = new Keyspace(config);
+        _size = config.alphabet().size();
+        _scorer = plaintext;
+        _maxPairs = maxPairs;
+    }
+
+    /** Return the keys I search. */
+    Keyspace keyspace() {
+        return _keyspace;
+    }
+
+    /** Return the COUNT keys under which CIPHERTEXT, decrypted without
+     *  a plugboard, has the highest index of coincidence, best first,
+     *  ranking the keys on the workers of POOL. */
+    long[] rank(int[] ciphertext, int count, ForkJoinPool pool) {
+        Ranking best = new Ranking(count);
+        KeyspaceTask.Range range = (from, to) -> {
+            Ranking ranking = rank(ciphertext, from, to, count);
+            synchronized (best) {
+                best.addAll(ranking);
+            }
+        };
+        pool.invoke(new KeyspaceTask(range, 0, _keyspace.size(), GRAIN));
+        return best.keys();
+    }
+
+    /** Climb from each of KEYS with no plugboard, and then from the best
+     *  solution so far until CLIMBS climbs have been made in all, on the
+     *  workers of POOL.  Random disturbances derive from SEED.  Return
+     *  the best solution found for CIPHERTEXT. */
+    Solution solve(int[] ciphertext, long[] keys, int climbs,
+                   ForkJoinPool pool, long seed) {
+        if (keys.length == 0) {
+            throw error("no keys to climb from");
+        }
+        synchronized (this) {
+            _best = null;
+        }
+        KeyspaceTask.Range range = (from, to) -> {
+            Climber climber = new Climber(ciphertext);
+            for (long c = from; c < to; c += 1) {
+                climber.climb(keys, (int) c, new Random(seed + c));
+            }
+        };
+        pool.invoke(new KeyspaceTask(range, 0, Math.max(climbs, 1), 1));
+        return best();
+    }
+
+    /** Return the best COUNT of keys FROM .. TO-1 for CIPHERTEXT, as for
+     *  rank(). */
+    private Ranking rank(int[] ciphertext, long from, long to, int count) {
+        int numRotors = _keyspace.numRotors();
+        KeyTrials trials =
+            KeyTrials.create(_keyspace.alphabet(), _keyspace.rotors(),
+                             numRotors, _keyspace.numPawls());
+        Scorer scorer = Scorer.indexOfCoincidence(_size);
+        int[] orders = new int[numRotors * BATCH];
+        int[] positions = new int[(numRotors - 1) * BATCH];
+        int[] settings = new int[numRotors];
+        double[] scores = new double[BATCH];
+        Ranking ranking = new Ranking(count);
+        int order = _keyspace.orderOf(from);
+        _keyspace.start(from, settings);
+        for (long first = from; first < to; first += BATCH) {
+            int n = (int) Math.min(BATCH, to - first);
+            for (int t = 0; t < n; t += 1) {
+                for (int s = 0; s < numRotors; s += 1) {
+                    orders[s * n + t] = _keyspace.rotorIndex(order, s);
+                }
+                for (int s = 1; s < numRotors; s += 1) {
+                    positions[(s - 1) * n + t] = settings[s];
+                }
+                if (!_keyspace.next(settings)) {
+                    order += 1;
+                }
+            }
+            trials.run(ciphertext, n, orders, positions, null, scorer,
+                       scores);
+            for (int t = 0; t < n; t += 1) {
+                ranking.add(first + t, scores[t]);
+            }
+        }
+        return ranking;
+    }
+
+    /** Record SOLUTION if it is the best so far. */
+    private synchronized void offer(Solution solution) {
+        if (_best == null || solution.score() > _best.score()) {
+            _best = solution;
+        }
+    }
+
+    /** Return the best solution so far, or null if there is none. */
+    private synchronized Solution best() {
+        return _best;
+    }
+
+    /** The state of one thread climbing. */
+    private class Climber {
+
+        /** A climber decrypting CIPHERTEXT. */
+        Climber(int[] ciphertext) {
+            int numRotors = _keyspace.numRotors();
+            _ciphertext = ciphertext;
+            _trials = new KeyTrials(_keyspace.alphabet(), _keyspace.rotors(),
+                                    numRotors, _keyspace.numPawls());
+            _orders = new int[numRotors];
+            _positions = new int[numRotors - 1];
+            _settings = new int[numRotors];
+            _plugboard = new int[_size];
+        }
+
+        /** Make climb C: from KEYS[C] with no plugboard if there is such
+         *  a key, and otherwise from the best solution so far disturbed
+         *  with RANDOM.  Offer the result as a solution. */
+        void climb(long[] keys, int c, Random random) {
+            Solution start = c < keys.length ? null : best();
+            long key = start == null ? keys[c % keys.length] : start.key();
+            for (int a = 0; a < _size; a += 1) {
+                _plugboard[a] = start == null ? a : start.plugboard()[a];
+            }
+            for (int k = 0; start != null && k < KICKS; k += 1) {
+                int a = random.nextInt(_size), b = random.nextInt(_size);
+                if (a != b && (pairs() < _maxPairs || _plugboard[a] != a
+                               || _plugboard[b] != b)) {
+                    plug(a, b);
+                }
+            }
+            setKey(key);
+            double score = score();
+            for (boolean improved = true; improved; ) {
+                improved = false;
+                for (int a = 0; a < _size; a += 1) {
+                    for (int b = a + 1; b < _size; b += 1) {
+                        int pa = _plugboard[a], pb = _plugboard[b];
+                        if (pa == b) {
+                            _plugboard[a] = a;
+                            _plugboard[b] = b;
+                        } else if (pa != a || pb != b
+                                   || pairs() < _maxPairs) {
+                            plug(a, b);
+                        } else {
+                            continue;
+                        }
+                        double changed = score();
+                        if (changed > score) {
+                            score = changed;
+                            improved = true;
+                        } else {
+                            restore(a, pa, b, pb);
+                        }
+                    }
+                }
+            }
+            score();
+            offer(new Solution(key, _plugboard.clone(), score,
+                               Arrays.copyOf(_trials.plaintext(),
+                                             _ciphertext.length)));
+        }
+
+        /** Set the rotor order and start position being climbed to those
+         *  of KEY. */
+        private void setKey(long key) {
+            int order = _keyspace.orderOf(key);
+            _keyspace.start(key, _settings);
+            for (int s = 0; s < _orders.length; s += 1) {
+                _orders[s] = _keyspace.rotorIndex(order, s);
+            }
+            System.arraycopy(_settings, 1, _positions, 0, _positions.length);
+        }
+
+        /** Return the score of the decryption under the current key and
+         *  plugboard. */
+        private double score() {
+            _trials.run(_ciphertext, 1, _orders, _positions, _plugboard,
+                        _scorer, _score);
+            return _score[0];
+        }
+
+        /** Plug A to B, unplugging their former partners. */
+        private void plug(int a, int b) {
+            _plugboard[_plugboard[a]] = _plugboard[a];
+            _plugboard[_plugboard[b]] = _plugboard[b];
+            _plugboard[a] = b;
+            _plugboard[b] = a;
+        }
+
+        /** Undo plug(A, B) or the unplugging of A and B, where A was
+         *  plugged to PA and B to PB before. */
+        private void restore(int a, int pa, int b, int pb) {
+            _plugboard[_plugboard[a]] = _plugboard[a];
+            _plugboard[_plugboard[b]] = _plugboard[b];
+            _plugboard[a] = pa;
+            _plugboard[pa] = a;
+            _plugboard[b] = pb;
+            _plugboard[pb] = b;
+        }
+
+        /** Return the number of pairs plugged. */
+        private int pairs() {
+            int pairs = 0;
+            for (int a = 0; a < _size; a += 1) {
+                pairs += _plugboard[a] > a ? 1 : 0;
+            }
+            return pairs;
+        }
+
+        /** The message being attacked. */
+        private final int[] _ciphertext;
+
+        /** Decrypts and scores the message. */
+        private final KeyTrials _trials;
+
+        /** Rotor order being climbed, as rotor indices by slot. */
+        private final int[] _orders;
+
+        /** Start position being climbed, for slots 1 and up. */
+        private final int[] _positions;
+
+        /** Start position being climbed, by slot. */
+        private final int[] _settings;
+
+        /** Plugboard being climbed, as a forward table. */
+        private final int[] _plugboard;
+
+        /** Score of the last decryption. */
+        private final double[] _score = new double[1];
+    }
+
+    /** The best keys seen so far, by score. */
+    private static class Ranking {
+
+        /** A ranking keeping the best COUNT keys. */
+        Ranking(int count) {
+            _keys = new long[count];
+            _scores = new double[count];
+        }
+
+        /** Add KEY with score SCORE, if it is among the best. */
+        void add(long key, double score) {
+            if (_count < _keys.length) {
+                _keys[_count] = key;
+                _scores[_count] = score;
+                _count += 1;
+            } else if (score > _scores[worst()]) {
+                int worst = worst();
+                _keys[worst] = key;
+                _scores[worst] = score;
+            } else {
+                return;
+            }
+            _worst = -1;
+        }
+
+        /** Add every key of OTHER. */
+        void addAll(Ranking other) {
+            for (int k = 0; k < other._count; k += 1) {
+                add(other._keys[k], other._scores[k]);
+            }
+        }
+
+        /** Return my keys, best first. */
+        long[] keys() {
+            Integer[] order = new Integer[_count];
+            for (int k = 0; k < _count; k += 1) {
+                order[k] = k;
+            }
+            Arrays.sort(order, (a, b) -> Double.compare(_scores[b],
+                                                        _scores[a]));
+            long[] result = new long[_count];
+            for (int k = 0; k < _count; k += 1) {
+                result[k] = _keys[order[k]];
+            }
+            return result;
+        }
+
+        /** Return the index of my worst key, of which there are
+         *  _keys.length. */
+        private int worst() {
+            if (_worst < 0) {
+                _worst = 0;
+                for (int k = 1; k < _count; k += 1) {
+                    if (_scores[k] < _scores[_worst]) {
+                        _worst = k;
+                    }
+                }
+            }
+            return _worst;
+        }
+
+        /** The keys kept. */
+        private final long[] _keys;
+
+        /** Their scores. */
+        private final double[] _scores;
+
+        /** Number of keys kept. */
+        private int _count;
+
+        /** Index of the worst key kept, or -1 if not yet known. */
+        private int _worst = -1;
+    }
+
+    /** The keys searched. */
+    private final Keyspace _keyspace;
+
+    /** Size of the alphabet. */
+    private final int _size;
+
+    /** Scores candidate plaintexts. */
+    private final Scorer _scorer;
+
+    /** Largest number of plugboard pairs tried. */
+    private final int _maxPairs;
+
+    /** Best solution found so far. */
+    private Solution _best;
+}
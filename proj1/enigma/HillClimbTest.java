@@ -0,0 +1,81 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the HillClimb and Quadgrams
+ *  classes.
+ *  @author Preston Weber
+ */
+public class HillClimbTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** A plaintext long enough to attack. */
+    private static final String PLAIN =
+        "THEWEATHERFORTODAYISCLEARWITHLIGHTWINDSFROMTHEWESTNOCONVOYS"
+        + "SIGHTEDINSQUAREFOURSEVENREPORTATDAWNTOTHEHARBOURMASTERWHO"
+        + "WILLFORWARDTHEWEATHERREPORTTOALLBOATSATSEA";
+
+    /** Return a three-slot machine with two pawls holding reflector B and
+     *  rotors I, III and IV. */
+    private Machine smallMachine() {
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        rotors.add(new Reflector("B", new Permutation(NAVALA.get("B"),
+                                                      UPPER)));
+        rotors.add(new MovingRotor("I", new Permutation(NAVALA.get("I"),
+                                                        UPPER), "Q"));
+        rotors.add(new MovingRotor("III",
+                                   new Permutation(NAVALA.get("III"),
+                                                   UPPER), "V"));
+        rotors.add(new MovingRotor("IV", new Permutation(NAVALA.get("IV"),
+                                                         UPPER), "J"));
+        return new Machine(UPPER, 3, 2, rotors);
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testQuadgramsRoundTrip() throws IOException {
+        Quadgrams counted = Quadgrams.count(UPPER, PLAIN);
+        File file = File.createTempFile("quadgrams", ".bin");
+        file.deleteOnExit();
+        counted.save(file.getPath());
+        Quadgrams loaded = Quadgrams.load(UPPER, file.getPath());
+        int[] text = UPPER.indices(PLAIN);
+        assertEquals(counted.score(text, text.length),
+                     loaded.score(text, text.length), 0.0);
+        int[] other = UPPER.indices("QZXJQZXJQZXJ");
+        assertTrue(counted.score(text, 12) > counted.score(other, 12));
+    }
+
+    @Test
+    public void testRecoversSettings() {
+        Machine machine = smallMachine();
+        machine.insertRotors(new String[] {"B", "III", "I"});
+        machine.setRotors("KD");
+        machine.setPlugboard(new Permutation("(AM) (EZ)", UPPER));
+        int[] ciphertext = UPPER.indices(machine.convert(PLAIN));
+
+        HillClimb attack = new HillClimb(smallMachine(),
+                                         Quadgrams.count(UPPER, PLAIN), 10);
+        ForkJoinPool pool = new ForkJoinPool(2);
+        long[] keys = attack.rank(ciphertext, 20, pool);
+        HillClimb.Solution best = attack.solve(ciphertext, keys, 40, pool, 1);
+        assertEquals("* B III I KD (AM) (EZ)", best.settingsLine());
+        assertArrayEquals(UPPER.indices(PLAIN), best.plaintext());
+    }
+}
@@ -0,0 +1,183 @@
+package enigma;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import static enigma.EnigmaException.*;
+
+/** Decrypts one ciphertext under many candidate machine settings at once,
+ *  scoring each candidate without building any strings or Machines.
+ *  Candidates are given as flat primitive arrays in slot-major order:
+ *  the value for slot S of trial T is at index S * N + T, where N is the
+ *  number of trials.  Each trial runs on the compiled tables of its rotor
+ *  order (shared with any other trial using the same order) and a few
+ *  reused scratch arrays.  A KeyTrials is not thread-safe; use one per
+ *  thread.
+ *  @author Preston Weber
+ */
+class KeyTrials {
+
+    /** True iff trials must run one at a time even where the Vector API
+     *  is available. */
+    static final boolean SCALAR = Boolean.getBoolean("enigma.scalar");
+
+    /** Trials for a machine with alphabet ALPHABET, NUMROTORS rotor slots
+     *  and PAWLS pawls, whose rotors are chosen from ROTORS.  Rotor orders
+     *  in trials are given as indices into ROTORS. */
+    KeyTrials(Alphabet alphabet, List<Rotor> rotors, int numRotors,
+              int pawls) {
+        _rotors = rotors.toArray(new Rotor[0]);
+        _numRotors = numRotors;
+        _pawls = pawls;
+        _slots = new Rotor[numRotors];
+        _settings = new int[numRotors];
+        _inner = new int[alphabet.size()];
+        _identity = new int[alphabet.size()];
+        for (int i = 0; i < _identity.length; i += 1) {
+            _identity[i] = i;
+        }
+    }
+
+    /** Return the number of rotor slots of my machine. */
+    int numRotors() {
+        return _numRotors;
+    }
+
+    /** Return trials for a machine with alphabet ALPHABET, NUMROTORS
+     *  rotor slots and PAWLS pawls, whose rotors are chosen from ROTORS.
+     *  The trials run several lanes at once on the Vector API where
+     *  VectorTrials, which is compiled separately from the sources in
+     *  vector/, is on the class path and the runtime has the
+     *  jdk.incubator.vector module (and -Denigma.scalar is not set), and
+     *  one at a time otherwise. */
+    static KeyTrials create(Alphabet alphabet, List<Rotor> rotors,
+                            int numRotors, int pawls) {
+        if (!SCALAR) {
+            try {
+                return (KeyTrials) Class.forName("enigma.VectorTrials")
+                    .getDeclaredConstructor(Alphabet.class, List.class,
+                                            int.class, int.class)
+                    .newInstance(alphabet, rotors, numRotors, pawls);
+            } catch (ReflectiveOperationException | LinkageError excp) {
+                /* The Vector API is not present; fall back to scalar
+                 * trials. */
+            }
+        }
+        return new KeyTrials(alphabet, rotors, numRotors, pawls);
+    }
+
+    /** Decrypt CIPHERTEXT, given as alphabet indices, under each of N
+     *  trials and store the SCORER score of trial T's decryption in
+     *  SCORES[T].  ORDERS holds numRotors() rotor indices per trial and
+     *  POSITIONS holds numRotors() - 1 initial settings per trial (the
+     *  reflector's setting is always 0), both in slot-major order.
+     *  PLUGBOARD is the forward table of the plugboard used by every
+     *  trial, or null for none. */
+    void run(int[] ciphertext, int n, int[] orders, int[] positions,
+             int[] plugboard, Scorer scorer, double[] scores) {
+        for (int t = 0; t < n; t += 1) {
+            runOne(ciphertext, n, t, orders, positions, plugboard, scorer,
+                   scores);
+        }
+    }
+
+    /** Run trial T alone, with the arguments of run(). */
+    void runOne(int[] ciphertext, int n, int t, int[] orders,
+                int[] positions, int[] plugboard, Scorer scorer,
+                double[] scores) {
+        if (_plaintext == null || _plaintext.length < ciphertext.length) {
+            _plaintext = new int[ciphertext.length];
+        }
+        if (plugboard == null) {
+            plugboard = _identity;
+        }
+        CompiledRotors compiled = compile(orders, n, t);
+        _settings[0] = 0;
+        for (int s = 1; s < _numRotors; s += 1) {
+            _settings[s] = positions[(s - 1) * n + t];
+        }
+        decrypt(compiled, ciphertext, plugboard);
+        scores[t] = scorer.score(_plaintext, ciphertext.length);
+    }
+
+    /** Return the decryption of the last trial run, as alphabet indices.
+     *  The array may be longer than the ciphertext, and is reused by the
+     *  next call to run. */
+    int[] plaintext() {
+        return _plaintext;
+    }
+
+    /** Decrypt CIPHERTEXT into _plaintext with COMPILED, starting from
+     *  _settings and using the plugboard table PLUGBOARD. */
+    private void decrypt(CompiledRotors compiled, int[] ciphertext,
+                         int[] plugboard) {
+        int fast = _numRotors - 1;
+        compiled.inner(_settings, _inner);
+        for (int i = 0; i < ciphertext.length; i += 1) {
+            if (compiled.step(_settings)) {
+                compiled.inner(_settings, _inner);
+            }
+            _plaintext[i] = compiled.convert(ciphertext[i], _settings[fast],
+                                             _inner, plugboard);
+        }
+    }
+
+    /** Return the compiled form of the rotor order of trial T of N,
+     *  given in slot-major ORDERS. */
+    CompiledRotors compile(int[] orders, int n, int t) {
+        boolean sameOrder = _current != null;
+        for (int s = 0; s < _numRotors; s += 1) {
+            Rotor rotor = _rotors[orders[s * n + t]];
+            sameOrder &= rotor == _slots[s];
+            _slots[s] = rotor;
+        }
+        if (sameOrder) {
+            return _current;
+        }
+        List<Rotor> key = Arrays.asList(_slots.clone());
+        _current = _compiled.get(key);
+        if (_current == null) {
+            if (!_slots[0].reflecting()) {
+                throw error("Improper position of Reflector.");
+            }
+            _current = CompiledRotors.compile(_slots, _pawls);
+            if (_current == null) {
+                throw error("rotors %s cannot be compiled", key);
+            }
+            _compiled.put(key, _current);
+        }
+        return _current;
+    }
+
+    /** The available rotors. */
+    private final Rotor[] _rotors;
+
+    /** Number of rotor slots. */
+    private final int _numRotors;
+
+    /** Number of pawls. */
+    private final int _pawls;
+
+    /** Compiled forms of the rotor orders seen so far. */
+    private final HashMap<List<Rotor>, CompiledRotors> _compiled =
+        new HashMap<>();
+
+    /** Compiled form of _slots. */
+    private CompiledRotors _current;
+
+    /** Rotors of the current trial, by slot. */
+    private final Rotor[] _slots;
+
+    /** Settings of the current trial, by slot. */
+    private final int[] _settings;
+
+    /** Composite of the non-fast rotors for _settings. */
+    private final int[] _inner;
+
+    /** The identity table, used when there is no plugboard. */
+    private final int[] _identity;
+
+    /** Decryption of the current trial. */
+    private int[] _plaintext;
+}
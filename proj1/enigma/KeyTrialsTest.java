@@ -0,0 +1,173 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the KeyTrials class.
+ *  @author Preston Weber
+ */
+public class KeyTrialsTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** The rotors available to the trials: reflector B (0), Beta (1),
+     *  and moving rotors I (2), III (3) and IV (4). */
+    private ArrayList<Rotor> rotors() {
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        rotors.add(new Reflector("B", new Permutation(NAVALA.get("B"),
+                                                      UPPER)));
+        rotors.add(new FixedRotor("Beta",
+                                  new Permutation(NAVALA.get("Beta"),
+                                                  UPPER)));
+        rotors.add(new MovingRotor("I", new Permutation(NAVALA.get("I"),
+                                                        UPPER), "Q"));
+        rotors.add(new MovingRotor("III",
+                                   new Permutation(NAVALA.get("III"),
+                                                   UPPER), "V"));
+        rotors.add(new MovingRotor("IV", new Permutation(NAVALA.get("IV"),
+                                                         UPPER), "J"));
+        return rotors;
+    }
+
+    /** Return the alphabet indices of the characters of TEXT. */
+    private int[] indices(String text) {
+        int[] result = new int[text.length()];
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] = UPPER.toInt(text.charAt(i));
+        }
+        return result;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testMatchesMachine() {
+        ArrayList<Rotor> rotors = rotors();
+        String cipher = "QVPQSOKOILPUBKJZPISFXDWBHCNSCXNUOAATZXSRCFYDGU";
+        int n = 3;
+        int[] orders = {
+            0, 0, 0,   1, 1, 1,   3, 4, 2,   4, 2, 3,   2, 3, 4,
+        };
+        int[] positions = {
+            0, 0, 25,   23, 11, 3,   11, 4, 0,   4, 12, 16,
+        };
+        String[] names = {"B", "Beta", "I", "III", "IV"};
+        String[] settings = {"AXLE", "ALEM", "ZDAQ"};
+        Permutation plugboard = new Permutation("(HQ) (EX) (IP) (TR) (BY)",
+                                                UPPER);
+
+        KeyTrials trials = new KeyTrials(UPPER, rotors, 5, 3);
+        double[] scores = new double[n];
+        Scorer scorer = Scorer.indexOfCoincidence(UPPER.size());
+        trials.run(indices(cipher), n, orders, positions,
+                   plugboard.forwardTable(), scorer, scores);
+
+        for (int t = 0; t < n; t += 1) {
+            Machine machine = new Machine(UPPER, 5, 3, rotors);
+            String[] order = new String[5];
+            for (int s = 0; s < 5; s += 1) {
+                order[s] = names[orders[s * n + t]];
+            }
+            machine.insertRotors(order);
+            machine.setRotors(settings[t]);
+            machine.setPlugboard(plugboard);
+            int[] plain = indices(machine.convert(cipher));
+            assertEquals(scorer.score(plain, plain.length), scores[t],
+                         1e-12);
+        }
+
+        trials.run(indices(cipher), 1, new int[] {0, 1, 3, 4, 2},
+                   new int[] {0, 23, 11, 4}, plugboard.forwardTable(),
+                   scorer, scores);
+        assertArrayEquals(indices("FROMHISSHOULDERHIAWATHATOOKTHECAMERA"
+                                  + "OFROSEWOOD"),
+                          Arrays.copyOf(trials.plaintext(),
+                                        cipher.length()));
+    }
+
+    @Test
+    public void testMixedOrders() {
+        ArrayList<Rotor> rotors = rotors();
+        Random random = new Random(13);
+        int n = 211, len = 300;
+        int[] cipher = new int[len];
+        for (int i = 0; i < len; i += 1) {
+            cipher[i] = random.nextInt(26);
+        }
+        int[] orders = new int[5 * n], positions = new int[4 * n];
+        int[][] choices = {{3, 4, 2}, {2, 3, 4}, {4, 2, 3}};
+        for (int t = 0; t < n; t += 1) {
+            int[] choice = choices[t / 40 % choices.length];
+            orders[n + t] = 1;
+            for (int s = 2; s < 5; s += 1) {
+                orders[s * n + t] = choice[s - 2];
+            }
+            for (int s = 0; s < 4; s += 1) {
+                positions[s * n + t] = random.nextInt(26);
+            }
+        }
+        int[] plugboard = new Permutation("(AZ) (QM) (EX)", UPPER)
+            .forwardTable();
+        Scorer scorer = Scorer.indexOfCoincidence(UPPER.size());
+        double[] actual = new double[n], expected = new double[1];
+        KeyTrials trials = new KeyTrials(UPPER, rotors, 5, 3);
+        trials.run(cipher, n, orders, positions, plugboard, scorer, actual);
+        KeyTrials single = new KeyTrials(UPPER, rotors, 5, 3);
+        for (int t = 0; t < n; t += 1) {
+            int[] order = new int[5], position = new int[4];
+            for (int s = 0; s < 5; s += 1) {
+                order[s] = orders[s * n + t];
+            }
+            for (int s = 0; s < 4; s += 1) {
+                position[s] = positions[s * n + t];
+            }
+            single.run(cipher, 1, order, position, plugboard, scorer,
+                       expected);
+            assertEquals(expected[0], actual[t], 0.0);
+        }
+    }
+
+    @Test
+    public void testLanes() {
+        ArrayList<Rotor> rotors = rotors();
+        Random random = new Random(13);
+        int n = 211, len = 300;
+        int[] cipher = new int[len];
+        for (int i = 0; i < len; i += 1) {
+            cipher[i] = random.nextInt(26);
+        }
+        int[] orders = new int[5 * n], positions = new int[4 * n];
+        int[][] choices = {{3, 4, 2}, {2, 3, 4}, {4, 2, 3}};
+        for (int t = 0; t < n; t += 1) {
+            int[] choice = choices[t / 40 % choices.length];
+            orders[n + t] = 1;
+            for (int s = 2; s < 5; s += 1) {
+                orders[s * n + t] = choice[s - 2];
+            }
+            for (int s = 0; s < 4; s += 1) {
+                positions[s * n + t] = random.nextInt(26);
+            }
+        }
+        int[] plugboard = new Permutation("(AZ) (QM) (EX)", UPPER)
+            .forwardTable();
+        Scorer scorer = Scorer.indexOfCoincidence(UPPER.size());
+        double[] expected = new double[n], actual = new double[n];
+        new KeyTrials(UPPER, rotors, 5, 3).run(cipher, n, orders, positions,
+                                               plugboard, scorer, expected);
+        KeyTrials trials = KeyTrials.create(UPPER, rotors, 5, 3);
+        trials.run(cipher, n, orders, positions, plugboard, scorer, actual);
+        assertArrayEquals(expected, actual, 0.0);
+    }
+}
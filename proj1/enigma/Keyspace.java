@@ -0,0 +1,201 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static enigma.EnigmaException.*;
+
+/** The keys searched when attacking messages of a machine configuration:
+ *  every rotor order together with every start position.  A rotor order
+ *  puts a reflector in slot 0, non-moving rotors in the slots without
+ *  pawls and moving rotors in the slots with pawls, with no rotor used
+ *  twice.  Keys are numbered from 0: key K has rotor order
+ *  K / positions() and start position K % positions(), whose digits are
+ *  the settings of slots 1 and up, the last slot varying fastest.
+ *  @author Preston Weber
+ */
+class Keyspace {
+
+    /** The keys of machines configured like CONFIG, whose rotors need not
+     *  have been inserted. */
+    Keyspace(Machine config) {
+        _alphabet = config.alphabet();
+        _numRotors = config.numRotors();
+        _pawls = config.numPawls();
+        _rotors = new ArrayList<>(config.allRotors());
+        ArrayList<int[]> orders = new ArrayList<>();
+        addOrders(new int[_numRotors], 0, orders);
+        _orders = orders.toArray(new int[0][]);
+        long positions = 1;
+        try {
+            for (int s = 1; s < _numRotors; s += 1) {
+                positions = Math.multiplyExact(positions, _alphabet.size());
+            }
+            _size = Math.multiplyExact(positions, _orders.length);
+        } catch (ArithmeticException excp) {
+            throw error("too many rotor positions to search");
+        }
+        _positions = positions;
+    }
+
+    /** Return the alphabet of my machines. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return the number of rotor slots of my machines. */
+    int numRotors() {
+        return _numRotors;
+    }
+
+    /** Return the number of pawls of my machines. */
+    int numPawls() {
+        return _pawls;
+    }
+
+    /** Return the available rotors, in the order in which rotor indices
+     *  refer to them. */
+    List<Rotor> rotors() {
+        return _rotors;
+    }
+
+    /** Return the number of rotor orders. */
+    int numOrders() {
+        return _orders.length;
+    }
+
+    /** Return the index in rotors() of the rotor in SLOT of rotor order
+     *  ORDER. */
+    int rotorIndex(int order, int slot) {
+        return _orders[order][slot];
+    }
+
+    /** Return the rotors of rotor order ORDER, by slot. */
+    Rotor[] order(int order) {
+        Rotor[] result = new Rotor[_numRotors];
+        for (int s = 0; s < _numRotors; s += 1) {
+            result[s] = _rotors.get(_orders[order][s]);
+        }
+        return result;
+    }
+
+    /** Return the compiled form of rotor order ORDER. */
+    CompiledRotors compile(int order) {
+        CompiledRotors compiled = CompiledRotors.compile(order(order), _pawls);
+        if (compiled == null) {
+            throw error("rotors %s cannot be searched",
+                        Arrays.toString(order(order)));
+        }
+        return compiled;
+    }
+
+    /** Return the number of start positions of each rotor order. */
+    long positions() {
+        return _positions;
+    }
+
+    /** Return the number of keys. */
+    long size() {
+        return _size;
+    }
+
+    /** Return the rotor order of KEY. */
+    int orderOf(long key) {
+        return (int) (key / _positions);
+    }
+
+    /** Store the start position of KEY in SETTINGS, which has one element
+     *  per slot.  The reflector's setting is 0. */
+    void start(long key, int[] settings) {
+        long position = key % _positions;
+        for (int s = _numRotors - 1; s > 0; s -= 1) {
+            settings[s] = (int) (position % _alphabet.size());
+            position /= _alphabet.size();
+        }
+        settings[0] = 0;
+    }
+
+    /** Advance SETTINGS to the next start position, returning false if it
+     *  wraps around to the first one. */
+    boolean next(int[] settings) {
+        for (int s = _numRotors - 1; s > 0; s -= 1) {
+            settings[s] += 1;
+            if (settings[s] < _alphabet.size()) {
+                return true;
+            }
+            settings[s] = 0;
+        }
+        return false;
+    }
+
+    /** Return the settings line, in the format read by Main, for rotor
+     *  order ORDER at start position SETTINGS, with the plugboard that
+     *  plugs each character C to PLUGBOARD[C] (characters plugged to
+     *  themselves, or to -1, are left out). */
+    String settingsLine(int order, int[] settings, int[] plugboard) {
+        StringBuilder line = new StringBuilder("*");
+        for (int s = 0; s < _numRotors; s += 1) {
+            line.append(' ').append(_rotors.get(_orders[order][s]).name());
+        }
+        line.append(' ');
+        for (int s = 1; s < _numRotors; s += 1) {
+            line.append(_alphabet.symbol(settings[s]));
+        }
+        for (int a = 0; a < plugboard.length; a += 1) {
+            if (plugboard[a] > a) {
+                line.append(" (").append(_alphabet.symbol(a))
+                    .append(_alphabet.symbol(plugboard[a])).append(')');
+            }
+        }
+        return line.toString();
+    }
+
+    /** Add to ORDERS every way of filling slots SLOT and above of ORDER
+     *  with indices of my rotors. */
+    private void addOrders(int[] order, int slot, List<int[]> orders) {
+        if (slot == _numRotors) {
+            orders.add(order.clone());
+            return;
+        }
+        for (int r = 0; r < _rotors.size(); r += 1) {
+            Rotor rotor = _rotors.get(r);
+            boolean fits;
+            if (slot == 0) {
+                fits = rotor.reflecting();
+            } else if (slot < _numRotors - _pawls) {
+                fits = !rotor.reflecting() && !rotor.rotates();
+            } else {
+                fits = rotor.rotates();
+            }
+            for (int s = 0; fits && s < slot; s += 1) {
+                fits = order[s] != r;
+            }
+            if (fits) {
+                order[slot] = r;
+                addOrders(order, slot + 1, orders);
+            }
+        }
+    }
+
+    /** Alphabet of my machines. */
+    private final Alphabet _alphabet;
+
+    /** Number of rotor slots. */
+    private final int _numRotors;
+
+    /** Number of pawls. */
+    private final int _pawls;
+
+    /** The available rotors. */
+    private final List<Rotor> _rotors;
+
+    /** Every rotor order, as indices into _rotors by slot. */
+    private final int[][] _orders;
+
+    /** Number of start positions of each rotor order. */
+    private final long _positions;
+
+    /** Number of keys. */
+    private final long _size;
+}
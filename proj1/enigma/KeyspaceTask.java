@@ -0,0 +1,54 @@
+package enigma;
+
+import java.util.concurrent.RecursiveAction;
+
+/** A fork/join task that searches a range of a keyspace, splitting it in
+ *  halves until the pieces are small.  Idle workers of the pool steal
+ *  the halves not yet started, so the load stays balanced however
+ *  unevenly the work is distributed over the keys.
+ *  @author Preston Weber
+ */
+class KeyspaceTask extends RecursiveAction {
+
+    /** Serialization version.  Tasks are never serialized, but
+     *  RecursiveAction is Serializable. */
+    private static final long serialVersionUID = 1L;
+
+    /** A search of a range of keys. */
+    interface Range {
+        /** Search keys FROM .. TO-1. */
+        void search(long from, long to);
+    }
+
+    /** A task searching keys FROM .. TO-1 with SEARCH, giving it no more
+     *  than GRAIN keys at a time. */
+    KeyspaceTask(Range search, long from, long to, long grain) {
+        _search = search;
+        _from = from;
+        _to = to;
+        _grain = grain;
+    }
+
+    @Override
+    protected void compute() {
+        if (_to - _from <= _grain) {
+            _search.search(_from, _to);
+            return;
+        }
+        long middle = _from + (_to - _from) / 2;
+        invokeAll(new KeyspaceTask(_search, _from, middle, _grain),
+                  new KeyspaceTask(_search, middle, _to, _grain));
+    }
+
+    /** Searches the ranges of keys. */
+    private final Range _search;
+
+    /** First key I search. */
+    private final long _from;
+
+    /** Key after the last one I search. */
+    private final long _to;
+
+    /** Largest number of keys searched without splitting. */
+    private final long _grain;
+}
@@ -0,0 +1,217 @@
+package enigma;
+
+/** The state of the compiled rotors of a machine with many slots, kept
+ *  so that the cost of a keystroke depends on the rotors that move
+ *  rather than on the number of slots.  A slot moves only if it or the
+ *  slot to its right is at a notch (or it is the fast slot), so I keep
+ *  the list of moving slots at a notch, and a keystroke advances the
+ *  fast slot and examines only the neighbours of that list.  The
+ *  conversion passes through every slot but the fast one, forward to
+ *  the reflector and back; for each slot K I cache the fused permutation
+ *  of the passes through slots K down to 0 (its core), and when slots
+ *  move only the cores from the leftmost slot moved on are recomputed.
+ *  Slots to the left of it, which seldom move, stay fused.
+ *
+ *  The settings are kept by the machine, which must call invalidate
+ *  whenever it changes them other than through step.
+ *  @author Preston Weber
+ */
+final class LargeRotors {
+
+    /** The state of the rotors COMPILED. */
+    LargeRotors(CompiledRotors compiled) {
+        _compiled = compiled;
+        _fast = compiled.numSlots() - 1;
+        _size = compiled.forwardTable(0).length;
+        _cores = new int[_fast][_size];
+        _notched = new int[_fast + 1];
+        _place = new int[_fast + 1];
+        _moved = new int[_fast + 1];
+        _stamp = new long[_fast + 1];
+        invalidate();
+    }
+
+    /** Return a copy of me for a machine with the same settings, which
+     *  changes independently of me. */
+    LargeRotors copy() {
+        LargeRotors copy = new LargeRotors(_compiled);
+        if (!_invalid) {
+            for (int k = 0; k < _stale; k += 1) {
+                System.arraycopy(_cores[k], 0, copy._cores[k], 0, _size);
+            }
+            System.arraycopy(_notched, 0, copy._notched, 0, _numNotched);
+            System.arraycopy(_place, 0, copy._place, 0, _place.length);
+            copy._numNotched = _numNotched;
+            copy._stale = _stale;
+            copy._invalid = false;
+        }
+        return copy;
+    }
+
+    /** Forget everything derived from the settings, which have been
+     *  changed. */
+    void invalidate() {
+        _invalid = true;
+        _stale = 0;
+    }
+
+    /** Advance SETTINGS, the settings of my slots, for one keystroke,
+     *  as CompiledRotors.step does. */
+    void step(int[] settings) {
+        if (_invalid) {
+            findNotches(settings);
+        }
+        _keystroke += 1;
+        int numMoved = 0;
+        for (int i = 0; i < _numNotched; i += 1) {
+            int slot = _notched[i];
+            if (slot > _compiled.firstMoving()
+                && _compiled.moves(slot - 1)) {
+                numMoved = mark(slot - 1, numMoved);
+            }
+            if (slot < _fast && _compiled.moves(slot)
+                && _compiled.doubleSteps(slot)) {
+                numMoved = mark(slot, numMoved);
+            }
+        }
+        if (_compiled.moves(_fast)) {
+            numMoved = mark(_fast, numMoved);
+        }
+        for (int i = 0; i < numMoved; i += 1) {
+            int slot = _moved[i];
+            boolean was = _compiled.atNotch(slot, settings[slot]);
+            settings[slot] = settings[slot] + 1 == _size
+                ? 0 : settings[slot] + 1;
+            boolean is = _compiled.atNotch(slot, settings[slot]);
+            if (was && !is) {
+                unnotch(slot);
+            } else if (is && !was) {
+                notch(slot);
+            }
+            if (slot < _fast) {
+                _stale = Math.min(_stale, slot);
+            }
+        }
+    }
+
+    /** Return the conversion of C at SETTINGS, the settings of my slots,
+     *  through the plugboard with forward table PLUGBOARD. */
+    int convert(int c, int[] settings, int[] plugboard) {
+        if (_invalid) {
+            findNotches(settings);
+        }
+        for (int k = _stale; k < _fast; k += 1) {
+            fuse(k, settings[k]);
+        }
+        _stale = _fast;
+        return _compiled.convert(c, settings[_fast], _cores[_fast - 1],
+                                 plugboard);
+    }
+
+    /** Recompute the core of slot K, at setting SETTING, from that of
+     *  slot K - 1. */
+    private void fuse(int k, int setting) {
+        int[] forward = _compiled.forwardTable(k);
+        int[] core = _cores[k];
+        if (k == 0) {
+            for (int x = 0; x < _size; x += 1) {
+                core[x] = shift(forward, x, setting);
+            }
+            return;
+        }
+        int[] inverse = _compiled.inverseTable(k);
+        int[] inner = _cores[k - 1];
+        for (int x = 0; x < _size; x += 1) {
+            core[x] = shift(inverse, inner[shift(forward, x, setting)],
+                            setting);
+        }
+    }
+
+    /** Return the result of passing X through a slot at setting SETTING
+     *  whose table (forward or inverse) at setting 0 is TABLE. */
+    private int shift(int[] table, int x, int setting) {
+        int v = x + setting;
+        if (v >= _size) {
+            v -= _size;
+        }
+        v = table[v] - setting;
+        return v < 0 ? v + _size : v;
+    }
+
+    /** Add SLOT to the NUMMOVED slots moving at this keystroke unless
+     *  it is there already, returning the new number of them. */
+    private int mark(int slot, int numMoved) {
+        if (_stamp[slot] == _keystroke) {
+            return numMoved;
+        }
+        _stamp[slot] = _keystroke;
+        _moved[numMoved] = slot;
+        return numMoved + 1;
+    }
+
+    /** Rebuild the list of moving slots at a notch at SETTINGS. */
+    private void findNotches(int[] settings) {
+        _numNotched = 0;
+        for (int slot = _compiled.firstMoving(); slot <= _fast; slot += 1) {
+            if (_compiled.atNotch(slot, settings[slot])) {
+                notch(slot);
+            }
+        }
+        _stale = 0;
+        _invalid = false;
+    }
+
+    /** Add SLOT to the slots at a notch. */
+    private void notch(int slot) {
+        _place[slot] = _numNotched;
+        _notched[_numNotched] = slot;
+        _numNotched += 1;
+    }
+
+    /** Remove SLOT from the slots at a notch. */
+    private void unnotch(int slot) {
+        _numNotched -= 1;
+        int last = _notched[_numNotched];
+        _notched[_place[slot]] = last;
+        _place[last] = _place[slot];
+    }
+
+    /** The rotors. */
+    private final CompiledRotors _compiled;
+
+    /** Index of the fast slot. */
+    private final int _fast;
+
+    /** Size of the alphabet. */
+    private final int _size;
+
+    /** _cores[K] is the permutation of a pass through slots K down to
+     *  0 and back, valid for K < _stale. */
+    private final int[][] _cores;
+
+    /** Leftmost slot whose core must be recomputed. */
+    private int _stale;
+
+    /** True iff the settings have changed since _notched was built. */
+    private boolean _invalid;
+
+    /** The first _numNotched elements are the moving slots at a notch,
+     *  in no particular order. */
+    private final int[] _notched;
+
+    /** Number of moving slots at a notch. */
+    private int _numNotched;
+
+    /** Index in _notched of each slot at a notch. */
+    private final int[] _place;
+
+    /** The slots moving at the current keystroke. */
+    private final int[] _moved;
+
+    /** _stamp[S] == _keystroke iff slot S is among those in _moved. */
+    private final long[] _stamp;
+
+    /** Number of keystrokes stepped, used to tell marks apart.  A long,
+     *  so that it never wraps around to a stamp still in _stamp. */
+    private long _keystroke;
+}
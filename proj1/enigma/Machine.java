@@ -1,7 +1,15 @@
 package enigma;
 
+import java.nio.BufferOverflowException;
+import java.nio.CharBuffer;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.Iterator;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 import static enigma.EnigmaException.*;
 
 /** Class that represents a complete enigma machine.
@@ -19,6 +27,45 @@ class Machine {
         _pawls = pawls;
         _numFixedRotors = numRotors - pawls;
         _allRotors = allRotors;
+        _rotorsByName = new HashMap<>();
+        for (Rotor rotor : allRotors) {
+            _rotorsByName.putIfAbsent(rotor.name(), rotor);
+        }
+    }
+
+    /** Return a new machine with my configuration, rotors, rotor
+     *  settings and plugboard, whose settings change independently of
+     *  mine.  The rotors themselves are shared. */
+    Machine copy() {
+        Machine copy = new Machine(_alphabet, _numRotors, _pawls, _allRotors,
+                                   _rotorsByName);
+        if (_rotors != null) {
+            copy._rotors = _rotors;
+            copy._settings = _settings.clone();
+        }
+        copy._plugboard = _plugboard;
+        copy._plugboardForward = _plugboardForward;
+        copy._compiled = _compiled;
+        copy._compiledRotors = _compiledRotors;
+        copy._schedule = _schedule;
+        copy._entry = _entry;
+        copy._idle = _idle;
+        copy._deferred = _deferred;
+        copy._large = _large == null ? null : _large.copy();
+        return copy;
+    }
+
+    /** A new machine with alphabet ALPHA, NUMROTORS rotor slots, PAWLS
+     *  pawls and the rotors ALLROTORS, indexed by name in ROTORSBYNAME. */
+    private Machine(Alphabet alpha, int numRotors, int pawls,
+                    Collection<Rotor> allRotors,
+                    HashMap<String, Rotor> rotorsByName) {
+        _alphabet = alpha;
+        _numRotors = numRotors;
+        _pawls = pawls;
+        _numFixedRotors = numRotors - pawls;
+        _allRotors = allRotors;
+        _rotorsByName = rotorsByName;
     }
 
     /** Return the number of rotor slots I have. */
@@ -26,6 +73,22 @@ class Machine {
         return _numRotors;
     }
 
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return all the rotors available to me. */
+    Collection<Rotor> allRotors() {
+        return _allRotors;
+    }
+
+    /** Return true iff one of the rotors available to me is named
+     *  NAME. */
+    boolean hasRotor(String name) {
+        return _rotorsByName.containsKey(name);
+    }
+
     /** Return the number pawls (and thus rotating rotors) I have. */
     int numPawls() {
         return _pawls;
@@ -33,103 +96,559 @@ class Machine {
 
     /** Set my rotor slots to the rotors named ROTORS from my set of
      *  available rotors (ROTORS[0] names the reflector).
-     *  Initially, all rotors are set at their 0 setting. */
+     *  Initially, all rotors are set at their 0 setting.  The settings
+     *  are kept by me rather than by the rotors, so machines built from
+     *  the same collection of rotors never share settings. */
     void insertRotors(String[] rotors) {
         _rotors = new Rotor[numRotors()];
+        _settings = new int[numRotors()];
+        _inner = null;
+        forgetSchedule();
 
         for (int i = 0; i < rotors.length; ++i) {
-            Iterator iterator = _allRotors.iterator();
-            while (iterator.hasNext()) {
-                Rotor rotor = (Rotor) iterator.next();
-                if (rotor.name().equals(rotors[i])) {
-                    _rotors[i] = rotor;
-                    break;
-                }
-            }
+            _rotors[i] = _rotorsByName.get(rotors[i]);
         }
         if (!_rotors[0].reflecting()) {
             throw error("Improper position of Reflector.");
         }
+        _compiled = null;
+        if (!INTERPRET) {
+            List<Rotor> key = Arrays.asList(_rotors);
+            _compiled = _compiledRotors.get(key);
+            if (_compiled == null) {
+                _compiled = CompiledRotors.compile(_rotors, _pawls);
+                if (_compiled != null) {
+                    _compiledRotors.put(key, _compiled);
+                }
+            }
+        }
+        _large = null;
+        if (_compiled != null && _numRotors >= LARGE_ROTORS) {
+            _large = new LargeRotors(_compiled);
+        }
+    }
+
+    /** Return the compiled form of the rotors in my slots, or null if
+     *  they are interpreted. */
+    CompiledRotors compiledRotors() {
+        return _compiled;
     }
 
     /** Set my rotors according to SETTING, which must be a string of
      *  numRotors()-1 characters in my alphabet. The first letter refers
      *  to the leftmost rotor setting (not counting the reflector).  */
     void setRotors(String setting) {
-        for (int i = 0; i < setting.length(); i++) {
-            _rotors[i + 1].set(setting.charAt(i));
+        int[] codePoints = setting.codePoints().toArray();
+        if (codePoints.length != _rotors.length - 1) {
+            throw error("Wrong number of rotor settings: %s", setting);
+        }
+        for (int i = 0; i < codePoints.length; i++) {
+            int posn = _alphabet.indexOf(codePoints[i]);
+            if (posn < 0) {
+                throw error("setting '%s' is not in the alphabet",
+                            new String(Character.toChars(codePoints[i])));
+            }
+            _settings[i + 1] = posn;
+        }
+        _inner = null;
+        forgetSchedule();
+    }
+
+    /** Set my rotors to the positions they reach after OFFSET characters
+     *  have been converted, starting from SETTING (as for setRotors). */
+    void setRotors(String setting, long offset) {
+        setRotors(setting);
+        advanceBy(offset);
+    }
+
+    /** Return the current settings of my rotors in the format accepted
+     *  by setRotors. */
+    String rotorSettings() {
+        StringBuilder setting = new StringBuilder();
+        for (int i = 1; i < _rotors.length; i++) {
+            setting.appendCodePoint(_alphabet.toCodePoint(_settings[i]));
+        }
+        return setting.toString();
+    }
+
+    /** Advance my rotors as if N >= 0 characters had been converted.
+     *  When my stepping is scheduled, the position N keystrokes on is
+     *  found in the schedule directly.  Otherwise the moving slots are
+     *  advanced a level at a time (see advanceSlots), so the cost grows
+     *  with the number of moving slots and the size of the alphabet, but
+     *  not with N or with the period. */
+    void advanceBy(long n) {
+        if (n < 0) {
+            throw error("cannot advance by a negative count");
+        }
+        if (scheduled()) {
+            long period = _schedule.period();
+            long position =
+                (_schedule.position(_entry, _idle) + n % period) % period;
+            _entry = _schedule.entryAt(position);
+            _idle = (int) (_schedule.position(_entry, 0) - position);
+            _schedule.settingsAt(_entry, _idle, _settings);
+            _inner = null;
+            _meter = null;
+            return;
+        }
+        advanceSlots(_numFixedRotors, n, false, new HashMap<>());
+        _inner = null;
+        forgetSchedule();
+    }
+
+    /** Return the number of keystrokes after which the settings of my
+     *  rotors recur, once any double-step position that cannot recur has
+     *  been stepped out of (which takes at most numPawls() keystrokes).
+     *  This is the length of text that can be enciphered from the current
+     *  settings before the key stream repeats.  Unless my stepping is
+     *  scheduled, the period is found a moving slot at a time, from the
+     *  fast one leftwards: the period of the slots from J on is the
+     *  smallest multiple of the period of the slots from J+1 on that
+     *  brings slot J back to its setting. */
+    long period() {
+        if (scheduled()) {
+            return _schedule.period();
+        }
+        Machine copy = copy();
+        copy.forgetSchedule();
+        for (int i = 0; i < _pawls; i += 1) {
+            copy.step();
+        }
+        int fast = _rotors.length - 1;
+        long period = _alphabet.size();
+        HashMap<List<Integer>, long[]> memo = new HashMap<>();
+        for (int j = fast - 1; j >= _numFixedRotors; j -= 1) {
+            int start = copy._settings[j];
+            long multiple = period;
+            copy.advanceSlots(j, period, false, memo);
+            for (int r = 1; copy._settings[j] != start; r += 1) {
+                if (r == _alphabet.size()) {
+                    throw error("rotor settings do not recur");
+                }
+                try {
+                    multiple = Math.addExact(multiple, period);
+                } catch (ArithmeticException excp) {
+                    throw error("period is too large to count");
+                }
+                copy.advanceSlots(j, period, false, memo);
+            }
+            period = multiple;
+        }
+        return period;
+    }
+
+    /** Advance my moving slots J and after by up to N keystrokes, stopping
+     *  early, if STOP, before a keystroke made with slot J at a notch.
+     *  Returns the number of keystrokes advanced.  The slots from J on
+     *  move as they would whatever the slots to their left do, and slot
+     *  J moves only at keystrokes made with slot J+1 at a notch, or with
+     *  slot J itself at a notch and its left neighbour able to rotate.
+     *  The stretches between are covered by advancing the slots from J+1
+     *  on to their next stop, recorded in MEMO by level and settings, so
+     *  that each is computed once; a run of those stretches that returns
+     *  to settings already seen is cut short by its length. */
+    private long advanceSlots(int j, long n, boolean stop,
+                              HashMap<List<Integer>, long[]> memo) {
+        int fast = _rotors.length - 1;
+        if (j == fast) {
+            int toNotch = _rotors[fast].advancesToNotch(_settings[fast]);
+            long jump = stop && toNotch >= 0 ? Math.min(n, toNotch) : n;
+            _settings[fast] = mod((int) (_settings[fast]
+                                         + jump % _alphabet.size()));
+            return jump;
+        }
+        boolean pushed = _rotors[j - 1].rotates();
+        HashMap<List<Integer>, Long> seen = null;
+        long done = 0, skipped = 0;
+        for (int moves = 0; done < n; moves += 1) {
+            boolean atNotch = _rotors[j].atNotch(_settings[j]);
+            if (stop && atNotch) {
+                break;
+            }
+            if ((atNotch && pushed)
+                || _rotors[j + 1].atNotch(_settings[j + 1])) {
+                stepSlots(j);
+                done += 1;
+                continue;
+            }
+            if (moves > _alphabet.size() && skipped == 0) {
+                if (seen == null) {
+                    seen = new HashMap<>();
+                }
+                Long last = seen.put(key(j), done);
+                if (last != null) {
+                    long cycle = done - last;
+                    skipped = (n - done) / cycle * cycle;
+                    n -= skipped;
+                    seen = null;
+                }
+            }
+            done += advanceToNotch(j + 1, n - done, memo);
         }
+        return done + skipped;
+    }
+
+    /** Advance my moving slots J and after by up to N keystrokes, as for
+     *  advanceSlots(J, N, true, MEMO), using and filling MEMO.  Returns
+     *  the number of keystrokes advanced. */
+    private long advanceToNotch(int j, long n,
+                                HashMap<List<Integer>, long[]> memo) {
+        List<Integer> key = key(j);
+        long[] known = memo.get(key);
+        if (known != null && known[0] <= n) {
+            for (int i = j; i < _settings.length; i += 1) {
+                _settings[i] = (int) known[i - j + 1];
+            }
+            return known[0];
+        }
+        long done = advanceSlots(j, n, true, memo);
+        if (_rotors[j].atNotch(_settings[j])) {
+            known = new long[_settings.length - j + 1];
+            known[0] = done;
+            for (int i = j; i < _settings.length; i += 1) {
+                known[i - j + 1] = _settings[i];
+            }
+            memo.put(key, known);
+        }
+        return done;
+    }
+
+    /** Step my moving slots J and after for one keystroke, as for
+     *  step(). */
+    private void stepSlots(int j) {
+        int fast = _rotors.length - 1;
+        for (; j <= fast; j++) {
+            if ((j == fast || _rotors[j + 1].atNotch(_settings[j + 1])
+                 || (_rotors[j].atNotch(_settings[j])
+                     && _rotors[j - 1].rotates()))
+                && _rotors[j].rotates()) {
+                _settings[j] = mod(_settings[j] + 1);
+            }
+        }
+    }
+
+    /** Return a key identifying the level J and the settings of my slots
+     *  J and after. */
+    private List<Integer> key(int j) {
+        Integer[] key = new Integer[_settings.length - j + 1];
+        key[0] = j;
+        for (int i = j; i < _settings.length; i += 1) {
+            key[i - j + 1] = _settings[i];
+        }
+        return Arrays.asList(key);
     }
 
     /** Set the plugboard to PLUGBOARD. */
     void setPlugboard(Permutation plugboard) {
         _plugboard = plugboard;
+        _plugboardForward = plugboard.forwardTable();
     }
 
     /** Returns the result of converting the input character C (as an
      *  index in the range 0..alphabet size - 1), after first advancing
      *  the machine. */
     int convert(int c) {
-        boolean[] canAdvance = new boolean[_pawls];
-        canAdvance[_pawls - 1] = true;
-        int movingRotors = 0;
+        if (!Metrics.ENABLED) {
+            return keystroke(c);
+        }
+        if (_meter == null) {
+            _meter = new Metrics.Meter(_settings);
+        }
+        int result = keystroke(c);
+        _meter.keystroke(_settings);
+        return result;
+    }
 
-        for (int i = _pawls - 1; i <= _rotors.length - 2; i++) {
-            if (_rotors[i + 1].atNotch() && _rotors[i].rotates()) {
-                canAdvance[movingRotors] = true;
-                canAdvance[movingRotors + 1] = true;
+    /** Returns the result of converting C as for convert(C), without
+     *  measuring it. */
+    private int keystroke(int c) {
+        if (_compiled == null) {
+            return interpret(c);
+        }
+        if (_large != null) {
+            _large.step(_settings);
+            return _large.convert(c, _settings, _plugboardForward);
+        }
+        if (scheduledStep()) {
+            _inner = null;
+        }
+        if (_inner == null) {
+            _inner = _compiled.inner(_settings);
+        }
+        return _compiled.convert(c, _settings[_settings.length - 1],
+                                 _inner, _plugboardForward);
+    }
+
+    /** Advance my compiled rotors for one keystroke, following my
+     *  stepping schedule if I have one.  Returns true iff some slot
+     *  other than the fast one may have moved. */
+    private boolean scheduledStep() {
+        if (_schedule == null) {
+            if (_deferred > 0) {
+                _deferred -= 1;
+                return _compiled.step(_settings);
+            }
+            if (!locate()) {
+                return _compiled.step(_settings);
             }
-            movingRotors++;
         }
+        if (_idle > 0) {
+            _idle -= 1;
+            int fast = _settings.length - 1;
+            _settings[fast] += 1;
+            if (_settings[fast] == _alphabet.size()) {
+                _settings[fast] = 0;
+            }
+            return false;
+        }
+        _schedule.carry(_entry, _settings);
+        _entry = _schedule.next(_entry);
+        _idle = _schedule.idle(_entry);
+        return true;
+    }
+
+    /** Return true iff my stepping follows a schedule, locating my
+     *  settings in one if that has not been tried since they were
+     *  last set. */
+    private boolean scheduled() {
+        return _schedule != null
+            || (_compiled != null && _large == null && _deferred == 0
+                && locate());
+    }
 
-        int count = 0;
-        for (int j = _numFixedRotors; j <= _rotors.length - 1; j++) {
-            if (canAdvance[count]) {
-                _rotors[j].advance();
+    /** Find my current settings in the stepping schedule of my rotors
+     *  (building it if this is the first machine to need it), returning
+     *  true if they were found.  If they were not, my rotors are stepped
+     *  by their notches until it is worth trying again: after the next
+     *  carry if the settings are in a double-step position off the
+     *  cycle, and never if the cycle cannot be scheduled. */
+    private boolean locate() {
+        if (_compiled.unscheduled()) {
+            _deferred = Integer.MAX_VALUE;
+            return false;
+        }
+        int[] probe = _settings.clone();
+        int idle;
+        for (idle = 0; !_compiled.carryPending(probe); idle += 1) {
+            if (idle == _alphabet.size()) {
+                _deferred = Integer.MAX_VALUE;
+                return false;
+            }
+            _compiled.step(probe);
+        }
+        List<SteppingSchedule> schedules = _compiled.schedules();
+        for (int tries = 0; tries < 2; tries += 1) {
+            for (SteppingSchedule schedule : schedules) {
+                int e = schedule.indexOf(probe);
+                if (e >= 0 && idle <= schedule.idle(e)) {
+                    _schedule = schedule;
+                    _entry = e;
+                    _idle = idle;
+                    return true;
+                } else if (e >= 0) {
+                    _deferred = idle + 1;
+                    return false;
+                }
+            }
+            if (tries == 0) {
+                SteppingSchedule schedule =
+                    SteppingSchedule.build(_compiled, probe);
+                if (schedule == null) {
+                    _compiled.markUnscheduled();
+                    _deferred = Integer.MAX_VALUE;
+                    return false;
+                }
+                schedules.add(schedule);
             }
-            count++;
         }
+        _deferred = idle + 1;
+        return false;
+    }
+
+    /** Stop following a stepping schedule, and forget what I know of my
+     *  large rotors and my meter, because my settings have been changed
+     *  other than by stepping. */
+    private void forgetSchedule() {
+        _schedule = null;
+        _deferred = 0;
+        _meter = null;
+        if (_large != null) {
+            _large.invalidate();
+        }
+    }
+
+    /** Returns the result of converting C as for convert(C), by passing
+     *  it through each of my rotors in turn.  This handles rotors that
+     *  cannot be compiled.  */
+    private int interpret(int c) {
+        step();
 
         int convert = _plugboard.permute(c);
         for (int a = _rotors.length - 1; a >= 0; a--) {
-            convert = _rotors[a].convertForward(convert);
+            convert = _rotors[a].convertForward(convert, _settings[a]);
         }
         for (int b = 1; b < _rotors.length; b++) {
-            convert = _rotors[b].convertBackward(convert);
+            convert = _rotors[b].convertBackward(convert, _settings[b]);
         }
-        convert = _plugboard.permute(convert);
-        return convert;
+        return _plugboard.permute(convert);
+    }
+
+    /** Advance my rotors for one keystroke.  The fast rotor always
+     *  advances; any other moving rotor advances when the rotor to its
+     *  right is at a notch, or when it is itself at a notch and the
+     *  rotor to its left can move (double stepping). */
+    private void step() {
+        if (_compiled != null) {
+            if (_compiled.step(_settings)) {
+                _inner = null;
+            }
+            return;
+        }
+        int fast = _rotors.length - 1;
+        for (int j = _numFixedRotors; j <= fast; j++) {
+            if ((j == fast || _rotors[j + 1].atNotch(_settings[j + 1])
+                 || (_rotors[j].atNotch(_settings[j])
+                     && _rotors[j - 1].rotates()))
+                && _rotors[j].rotates()) {
+                _settings[j] = mod(_settings[j] + 1);
+            }
+        }
+    }
+
+    /** Return true iff the next keystroke will advance some rotor other
+     *  than the fast one. */
+    private boolean carryPending() {
+        if (_compiled != null) {
+            return _compiled.carryPending(_settings);
+        }
+        int fast = _rotors.length - 1;
+        for (int j = _numFixedRotors; j < fast; j++) {
+            if (_rotors[j + 1].atNotch(_settings[j + 1])
+                || (_rotors[j].atNotch(_settings[j])
+                    && _rotors[j - 1].rotates())) {
+                return true;
+            }
+        }
+        return false;
     }
 
     /** Returns the encoding/decoding of MSG, updating the state of
-     *  the rotors accordingly. */
+     *  the rotors accordingly.  MSG is read by code point, so it may
+     *  hold supplementary characters of my alphabet. */
     String convert(String msg) {
-        char[] msgConverted = new char[msg.length()];
-        for (int i = 0; i < msg.length(); i++) {
-            msgConverted[i] = msg.charAt(i);
+        int[] codePoints = msg.codePoints().toArray();
+        for (int i = 0; i < codePoints.length; i++) {
+            int index = _alphabet.indexOf(codePoints[i]);
+            if (index < 0) {
+                throw error("character '%s' is not in the alphabet",
+                            new String(Character.toChars(codePoints[i])));
+            }
+            codePoints[i] = _alphabet.toCodePoint(convert(index));
         }
+        return new String(codePoints, 0, codePoints.length);
+    }
 
-        int[] index = new int[msgConverted.length];
-        for (int a = 0; a < msgConverted.length; a++) {
-            index[a] = _alphabet.toInt(msgConverted[a]);
+    /** Convert the LEN alphabet indices starting at INDICES[OFFSET] in
+     *  place, updating the state of the rotors accordingly. */
+    void convert(int[] indices, int offset, int len) {
+        for (int i = offset; i < offset + len; i++) {
+            indices[i] = convert(indices[i]);
         }
+    }
 
-        for (int b = 0; b < index.length; b++) {
-            index[b] = convert(index[b]);
+    /** Convert the LEN characters starting at SRC[SRCOFFSET] into DST,
+     *  starting at DST[DSTOFFSET], updating the state of the rotors
+     *  accordingly.  SRC and DST may be the same array, in which case
+     *  the conversion is done in place. */
+    void convert(char[] src, int srcOffset, char[] dst, int dstOffset,
+                 int len) {
+        for (int i = 0; i < len; i++) {
+            dst[dstOffset + i] = convertChar(src[srcOffset + i]);
         }
+    }
 
-        for (int c = 0; c < index.length; c++) {
-            msgConverted[c] = _alphabet.toChar(index[c]);
+    /** Convert the LEN bytes starting at SRC[SRCOFFSET] into DST,
+     *  starting at DST[DSTOFFSET], updating the state of the rotors
+     *  accordingly.  The unsigned value of each byte is its index in my
+     *  alphabet, which must have 256 characters.  SRC and DST may be the
+     *  same array, in which case the conversion is done in place. */
+    void convert(byte[] src, int srcOffset, byte[] dst, int dstOffset,
+                 int len) {
+        for (int i = 0; i < len; i++) {
+            dst[dstOffset + i] =
+                (byte) convert(src[srcOffset + i] & BYTE_MASK);
         }
+    }
 
-        String converted = "";
-        for (int d = 0; d < msgConverted.length; d++) {
-            converted += Character.toString(msgConverted[d]);
+    /** Convert all remaining characters of SRC into DST, advancing the
+     *  positions of both buffers and updating the state of the rotors.
+     *  DST must have at least SRC.remaining() characters remaining.  If
+     *  a character is not in my alphabet, both positions are left at
+     *  that character, with the characters before it converted. */
+    void convert(CharBuffer src, CharBuffer dst) {
+        if (dst.remaining() < src.remaining()) {
+            throw new BufferOverflowException();
+        }
+        if (src.hasArray() && dst.hasArray()) {
+            char[] from = src.array(), to = dst.array();
+            int srcStart = src.arrayOffset() + src.position();
+            int dstStart = dst.arrayOffset() + dst.position();
+            int len = src.remaining(), done = 0;
+            try {
+                for (; done < len; done += 1) {
+                    to[dstStart + done] = convertChar(from[srcStart + done]);
+                }
+            } finally {
+                src.position(src.position() + done);
+                dst.position(dst.position() + done);
+            }
+            return;
         }
+        while (src.hasRemaining()) {
+            dst.put(convertChar(src.get(src.position())));
+            src.position(src.position() + 1);
+        }
+    }
+
+    /** Convert the LEN characters starting at SRC[SRCOFFSET] into DST as
+     *  for convert(SRC, SRCOFFSET, DST, DSTOFFSET, LEN), but split into
+     *  chunks that are converted concurrently in POOL.  Each chunk is
+     *  converted by a copy of me jumped ahead to the chunk's offset, and
+     *  the result is identical to that of the sequential conversion. */
+    void convertParallel(char[] src, int srcOffset, char[] dst,
+                         int dstOffset, int len, ForkJoinPool pool) {
+        if (len < 2 * ConvertTask.MIN_CHUNK
+            || pool.getParallelism() < 2) {
+            convert(src, srcOffset, dst, dstOffset, len);
+            return;
+        }
+        pool.invoke(new ConvertTask(this, src, srcOffset, dst, dstOffset,
+                                    0, len, CHUNKS_PER_WORKER
+                                    * pool.getParallelism()));
+        advanceBy(len);
+    }
 
-        return converted;
+    /** Returns the conversion of the character CH, which must be in my
+     *  alphabet, after first advancing the machine.  The char-based
+     *  conversions go through here, so they handle only characters of
+     *  the Basic Multilingual Plane: a surrogate is reported as not in
+     *  the alphabet. */
+    private char convertChar(char ch) {
+        int index = _alphabet.toInt(ch);
+        if (index < 0) {
+            throw error("character '%c' is not in the alphabet", ch);
+        }
+        return _alphabet.toChar(convert(index));
     }
 
+    /** Mask giving the unsigned value of a byte. */
+    private static final int BYTE_MASK = 0xff;
+
+    /** Number of chunks per worker in convertParallel, so that work
+     *  stealing can even out the load. */
+    private static final int CHUNKS_PER_WORKER = 4;
+
     /** Common alphabet of my rotors. */
     private final Alphabet _alphabet;
 
@@ -142,12 +661,82 @@ class Machine {
     /** Collection of all the avaliable rotors. */
     private final Collection<Rotor> _allRotors;
 
-    /** Rotor slots. */
+    /** Rotor slots.  The rotors may be shared with other machines and are
+     *  never changed by me. */
     private Rotor[] _rotors;
 
+    /** Setting of the rotor in each slot. */
+    private int[] _settings;
+
     /** The plugboard. */
     private Permutation _plugboard;
 
+    /** The forward table of _plugboard, applied on both passes. */
+    private int[] _plugboardForward;
+
+    /** True iff rotors are never compiled, and all conversions use the
+     *  general interpreter.  Set with -Denigma.interpret=true. */
+    private static final boolean INTERPRET =
+        Boolean.getBoolean("enigma.interpret");
+
+    /** Largest number of rotor orders whose compiled forms are kept. */
+    static final int COMPILED_CACHE_SIZE = 64;
+
+    /** Compiled forms of the most recently used COMPILED_CACHE_SIZE rotor
+     *  slot contents, shared with my copies, so that repeating a rotor
+     *  order reuses its tables and stepping schedules.  Each key is the
+     *  _rotors array of the machine that compiled it, which is never
+     *  changed afterwards. */
+    private Map<List<Rotor>, CompiledRotors> _compiledRotors =
+        Collections.synchronizedMap(
+            new LinkedHashMap<List<Rotor>, CompiledRotors>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(
+                    Map.Entry<List<Rotor>, CompiledRotors> eldest) {
+                    return size() > COMPILED_CACHE_SIZE;
+                }
+            });
+
+    /** Compiled form of my current rotors, or null if they must be
+     *  interpreted. */
+    private CompiledRotors _compiled;
+
+    /** The composite permutation of all rotors other than the fast one,
+     *  in their current settings, when _compiled is not null; null if
+     *  it must be recomputed. */
+    private int[] _inner;
+
+    /** The stepping schedule my settings are on, or null if they have
+     *  not been located in one. */
+    private SteppingSchedule _schedule;
+
+    /** When _schedule is not null, the entry of _schedule at which my
+     *  settings are. */
+    private int _entry;
+
+    /** When _schedule is not null, the number of keystrokes left before
+     *  the carry of entry _entry. */
+    private int _idle;
+
+    /** When _schedule is null, the number of keystrokes to step by the
+     *  notches before trying to locate my settings in a schedule. */
+    private int _deferred;
+
+    /** Number of rotor slots from which a machine's compiled rotors are
+     *  stepped and converted by a LargeRotors. */
+    static final int LARGE_ROTORS = 8;
+
+    /** The state of my compiled rotors if I have at least LARGE_ROTORS
+     *  slots; otherwise null. */
+    private LargeRotors _large;
+
+    /** Measures my stepping when Metrics are enabled; otherwise, and
+     *  until my first keystroke since my settings were changed, null. */
+    private Metrics.Meter _meter;
+
+    /** The available rotors by name, shared with my copies. */
+    private final HashMap<String, Rotor> _rotorsByName;
+
     /** The number of fixed rotors. */
     private int _numFixedRotors;
 
@@ -0,0 +1,265 @@
+package enigma;
+
+import java.nio.CharBuffer;
+import java.util.Objects;
+import java.util.concurrent.Flow;
+
+import static enigma.EnigmaException.*;
+
+/** A reactive-streams stage converting a stream of characters in the
+ *  format of Main's input, for embedding in non-blocking pipelines.
+ *  The stream is received as a sequence of CharBuffers (a chunk of
+ *  characters may be sent as CharBuffer.wrap(CHARS)), which may split
+ *  lines anywhere.  Settings lines ("* ...") set up my machine as Main
+ *  does and produce nothing; message lines are converted, with their
+ *  blanks removed, and each ends in '\n'.  The output is not grouped.
+ *
+ *  Each chunk received is converted in place and sent on as the same
+ *  buffer, with its limit moved to the end of the converted text, so I
+ *  take ownership of the chunks I receive (read-only chunks are copied
+ *  first).  A chunk producing no output (one holding only a settings
+ *  line, say) is not sent on; another is requested in its place, so
+ *  that the chunks requested from upstream are always those requested
+ *  by my subscriber.  An error in the input cancels the upstream
+ *  subscription and is sent to my subscriber as an EnigmaException.
+ *
+ *  I accept one subscriber and one upstream subscription.
+ *  @author Preston Weber
+ */
+public final class MachineProcessor
+    implements Flow.Processor<CharBuffer, CharBuffer> {
+
+    /** A processor converting with the machine configured by the
+     *  configuration file named CONFIG. */
+    public MachineProcessor(String config) {
+        this(Main.configure(config));
+    }
+
+    /** A processor converting with a copy of CONFIG, a machine whose
+     *  rotors need not have been inserted. */
+    MachineProcessor(Machine config) {
+        _machine = config.copy();
+    }
+
+    @Override
+    public synchronized void subscribe(
+        Flow.Subscriber<? super CharBuffer> subscriber) {
+        Objects.requireNonNull(subscriber);
+        if (_downstream != null) {
+            subscriber.onSubscribe(NO_SUBSCRIPTION);
+            subscriber.onError(
+                new IllegalStateException("already subscribed"));
+            return;
+        }
+        _downstream = subscriber;
+        connect();
+    }
+
+    @Override
+    public synchronized void onSubscribe(Flow.Subscription subscription) {
+        if (_upstream != null) {
+            subscription.cancel();
+            return;
+        }
+        _upstream = subscription;
+        connect();
+    }
+
+    @Override
+    public void onNext(CharBuffer chunk) {
+        if (_done) {
+            return;
+        }
+        CharBuffer converted;
+        try {
+            converted = convert(chunk);
+        } catch (EnigmaException excp) {
+            _upstream.cancel();
+            fail(excp);
+            return;
+        }
+        if (converted.hasRemaining()) {
+            _downstream.onNext(converted);
+        } else {
+            _upstream.request(1);
+        }
+    }
+
+    @Override
+    public synchronized void onError(Throwable failure) {
+        fail(failure);
+    }
+
+    @Override
+    public synchronized void onComplete() {
+        if (_done) {
+            return;
+        }
+        try {
+            if (!_configured && _settings == null) {
+                throw error("No Configuration Present.");
+            }
+            if (_settings != null) {
+                Main.setUp(_machine, _settings.toString());
+                _settings = null;
+            }
+        } catch (EnigmaException excp) {
+            fail(excp);
+            return;
+        }
+        _done = true;
+        _completed = true;
+        if (_downstream != null && _connected) {
+            _downstream.onComplete();
+        }
+    }
+
+    /** Convert the remaining characters of CHUNK in place as described
+     *  above, returning the buffer holding the result between its
+     *  position and limit. */
+    private CharBuffer convert(CharBuffer chunk) {
+        CharBuffer buf = chunk;
+        if (chunk.isReadOnly()) {
+            buf = CharBuffer.allocate(chunk.remaining()).put(chunk).flip();
+        }
+        int end = buf.limit();
+        int out = buf.position(), run = out;
+        for (int i = buf.position(); i < end; i += 1) {
+            char c = buf.get(i);
+            if (_skipNewline) {
+                _skipNewline = false;
+                if (c == '\n') {
+                    continue;
+                }
+            }
+            if (_lineStart) {
+                _lineStart = false;
+                if (c == '*') {
+                    _settings = new StringBuilder();
+                } else if (!_configured) {
+                    throw error("No Configuration Present.");
+                }
+            }
+            if (Main.isLineTerminator(c)) {
+                _skipNewline = c == '\r';
+                _lineStart = true;
+                if (_settings != null) {
+                    Main.setUp(_machine, _settings.toString());
+                    _settings = null;
+                    _configured = true;
+                } else {
+                    convertRun(buf, run, out);
+                    buf.put(out, '\n');
+                    out += 1;
+                    run = out;
+                }
+            } else if (_settings != null) {
+                _settings.append(c);
+            } else if (c != ' ') {
+                buf.put(out, c);
+                out += 1;
+            }
+        }
+        convertRun(buf, run, out);
+        return buf.limit(out);
+    }
+
+    /** Convert the message characters BUF[FROM .. TO-1] in place. */
+    private void convertRun(CharBuffer buf, int from, int to) {
+        if (from < to) {
+            CharBuffer run = buf.duplicate().limit(to).position(from);
+            _machine.convert(run, run.duplicate());
+        }
+    }
+
+    /** Give my subscriber its subscription once both it and my upstream
+     *  subscription are present, and then any end of the stream that
+     *  came before it.  Called while holding my lock. */
+    private void connect() {
+        if (_upstream == null || _downstream == null) {
+            return;
+        }
+        _downstream.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+                if (n <= 0) {
+                    cancel();
+                    fail(new IllegalArgumentException(
+                        "non-positive request: " + n));
+                } else if (!_done) {
+                    _upstream.request(n);
+                }
+            }
+
+            @Override
+            public void cancel() {
+                _done = true;
+                _upstream.cancel();
+            }
+        });
+        _connected = true;
+        if (_failure != null) {
+            _downstream.onError(_failure);
+        } else if (_completed) {
+            _downstream.onComplete();
+        }
+    }
+
+    /** End the stream with FAILURE, sending it to my subscriber once it
+     *  is connected. */
+    private synchronized void fail(Throwable failure) {
+        if (_failure != null || _completed) {
+            return;
+        }
+        _done = true;
+        _failure = failure;
+        if (_downstream != null && _connected) {
+            _downstream.onError(failure);
+        }
+    }
+
+    /** The subscription given to subscribers I reject. */
+    private static final Flow.Subscription NO_SUBSCRIPTION =
+        new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+            }
+
+            @Override
+            public void cancel() {
+            }
+        };
+
+    /** My machine. */
+    private final Machine _machine;
+
+    /** My upstream subscription, or null. */
+    private volatile Flow.Subscription _upstream;
+
+    /** My subscriber, or null. */
+    private volatile Flow.Subscriber<? super CharBuffer> _downstream;
+
+    /** True iff my subscriber has been given its subscription. */
+    private volatile boolean _connected;
+
+    /** True iff no more chunks are to be converted. */
+    private volatile boolean _done;
+
+    /** True iff the stream has ended normally. */
+    private boolean _completed;
+
+    /** The error ending the stream, or null. */
+    private Throwable _failure;
+
+    /** The settings line being read, or null if not reading one. */
+    private StringBuilder _settings;
+
+    /** True iff a settings line has been read. */
+    private boolean _configured;
+
+    /** True iff the next character starts a line. */
+    private boolean _lineStart = true;
+
+    /** True iff a '\n' next is the end of a "\r\n" line terminator. */
+    private boolean _skipNewline;
+}
@@ -0,0 +1,152 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the MachineProcessor class.
+ *  @author Preston Weber
+ */
+public class MachineProcessorTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return the name of a new temporary configuration file holding the
+     *  naval rotors B, Beta, I, III and IV. */
+    private String navalConfig() throws Exception {
+        File config = File.createTempFile("enigma", ".conf");
+        config.deleteOnExit();
+        String text = UPPER_STRING + "\n5 3\n"
+            + "I MQ " + NAVALA.get("I") + "\n"
+            + "III MV " + NAVALA.get("III") + "\n"
+            + "IV MJ " + NAVALA.get("IV") + "\n"
+            + "Beta N " + NAVALA.get("Beta") + "\n"
+            + "B R " + NAVALA.get("B") + "\n";
+        Files.write(config.toPath(), text.getBytes(StandardCharsets.UTF_8));
+        return config.getPath();
+    }
+
+    /** A subscriber requesting one chunk at a time and collecting the
+     *  chunks' text. */
+    private static class Collector implements Flow.Subscriber<CharBuffer> {
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            _subscription = subscription;
+            _outstanding = 1;
+            subscription.request(1);
+        }
+
+        @Override
+        public void onNext(CharBuffer chunk) {
+            _outstanding -= 1;
+            if (_outstanding < 0) {
+                _result.completeExceptionally(
+                    new AssertionError("chunk sent without demand"));
+            }
+            _text.append(chunk);
+            _outstanding += 1;
+            _subscription.request(1);
+        }
+
+        @Override
+        public void onError(Throwable failure) {
+            _result.completeExceptionally(failure);
+        }
+
+        @Override
+        public void onComplete() {
+            _result.complete(_text.toString());
+        }
+
+        /** The collected text, once the stream ends. */
+        private final CompletableFuture<String> _result =
+            new CompletableFuture<>();
+
+        /** Text received so far. */
+        private final StringBuilder _text = new StringBuilder();
+
+        /** My subscription. */
+        private Flow.Subscription _subscription;
+
+        /** Number of chunks requested and not yet received. */
+        private int _outstanding;
+    }
+
+    /** Return the text produced by a processor configured by CONFIG
+     *  from the stream of CHUNKS, alternately writable and read-only. */
+    private String process(String config, String... chunks)
+        throws Exception {
+        MachineProcessor processor = new MachineProcessor(config);
+        Collector collector = new Collector();
+        processor.subscribe(collector);
+        try (SubmissionPublisher<CharBuffer> publisher =
+                 new SubmissionPublisher<>()) {
+            publisher.subscribe(processor);
+            for (int i = 0; i < chunks.length; i += 1) {
+                publisher.submit(i % 2 == 0
+                                 ? CharBuffer.wrap(chunks[i].toCharArray())
+                                 : CharBuffer.wrap(chunks[i]));
+            }
+        }
+        return collector._result.get();
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testConversion() throws Exception {
+        String config = navalConfig();
+        assertEquals("QVPQSOKOILPUBKJ\nZPISFXDW\n\nFROMHISSHO\n",
+                     process(config, "* B Beta III IV I AXLE (HQ) (EX)",
+                             " (IP) (TR) (BY)\r", "\nFROM HIS SHO",
+                             "ULDER\nHIAW", "ATHA\n\n",
+                             "* B Beta III IV I AXLE (HQ) (EX) (IP) ",
+                             "(TR) (BY)\n", "QVPQS OKOIL\n"));
+        char[] chars = "* B Beta III IV I AXLE\nHELLO\n".toCharArray();
+        CharBuffer chunk = CharBuffer.wrap(chars);
+        MachineProcessor processor = new MachineProcessor(config);
+        Collector collector = new Collector();
+        processor.subscribe(collector);
+        try (SubmissionPublisher<CharBuffer> publisher =
+                 new SubmissionPublisher<>()) {
+            publisher.subscribe(processor);
+            publisher.submit(chunk);
+        }
+        assertEquals(6, collector._result.get().length());
+        assertEquals(collector._result.get(),
+                     new String(chars, 0, 6));
+    }
+
+    @Test
+    public void testErrors() throws Exception {
+        String config = navalConfig();
+        try {
+            process(config, "HELLO\n");
+            fail("message before settings");
+        } catch (ExecutionException excp) {
+            assertTrue(excp.getCause() instanceof EnigmaException);
+        }
+        try {
+            process(config, "* B Beta III IV I AXLE\n", "HELLO 1\n");
+            fail("character not in alphabet");
+        } catch (ExecutionException excp) {
+            assertTrue(excp.getCause() instanceof EnigmaException);
+        }
+    }
+}
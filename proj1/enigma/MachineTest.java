@@ -0,0 +1,683 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Machine class.
+ *  @author Preston Weber
+ */
+public class MachineTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** True iff rotors are never compiled (-Denigma.interpret=true). */
+    private static final boolean INTERPRET =
+        Boolean.getBoolean("enigma.interpret");
+
+    /** Return a machine holding the naval rotors, set up as
+     *  "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)". */
+    private Machine navalMachine() {
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        rotors.add(new Reflector("B", new Permutation(NAVALA.get("B"),
+                                                      UPPER)));
+        rotors.add(new FixedRotor("Beta",
+                                  new Permutation(NAVALA.get("Beta"),
+                                                  UPPER)));
+        rotors.add(new MovingRotor("I", new Permutation(NAVALA.get("I"),
+                                                        UPPER), "Q"));
+        rotors.add(new MovingRotor("III",
+                                   new Permutation(NAVALA.get("III"),
+                                                   UPPER), "V"));
+        rotors.add(new MovingRotor("IV", new Permutation(NAVALA.get("IV"),
+                                                         UPPER), "J"));
+        Machine machine = new Machine(UPPER, 5, 3, rotors);
+        machine.insertRotors(new String[] {"B", "Beta", "III", "IV", "I"});
+        machine.setRotors("AXLE");
+        machine.setPlugboard(new Permutation("(HQ) (EX) (IP) (TR) (BY)",
+                                             UPPER));
+        return machine;
+    }
+
+    /** Return the naval rotors B, Beta, I, III and IV, of a subclass
+     *  that cannot be compiled if INTERPRETED. */
+    private ArrayList<Rotor> navalRotors(boolean interpreted) {
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        rotors.add(new Reflector("B", new Permutation(NAVALA.get("B"),
+                                                      UPPER)));
+        rotors.add(new FixedRotor("Beta", new Permutation(
+            NAVALA.get("Beta"), UPPER)));
+        String[] names = {"I", "III", "IV"}, notches = {"Q", "V", "J"};
+        for (int i = 0; i < names.length; i += 1) {
+            Permutation perm = new Permutation(NAVALA.get(names[i]), UPPER);
+            rotors.add(interpreted
+                       ? new MovingRotor(names[i], perm, notches[i]) { }
+                       : new MovingRotor(names[i], perm, notches[i]));
+        }
+        return rotors;
+    }
+
+    /** Return a machine holding ROTORS, the naval rotors, set up as
+     *  "* B Beta III IV I SETTING (HQ) (EX) (IP) (TR) (BY)". */
+    private Machine navalMachine(ArrayList<Rotor> rotors, String setting) {
+        Machine machine = new Machine(UPPER, 5, 3, rotors);
+        machine.insertRotors(new String[] {"B", "Beta", "III", "IV", "I"});
+        machine.setRotors(setting);
+        machine.setPlugboard(new Permutation("(HQ) (EX) (IP) (TR) (BY)",
+                                             UPPER));
+        return machine;
+    }
+
+    /** Return a random message of LEN upper-case letters. */
+    private String randomMessage(int len) {
+        Random random = new Random(len);
+        char[] message = new char[len];
+        for (int i = 0; i < len; i += 1) {
+            message[i] = UPPER_STRING.charAt(random.nextInt(26));
+        }
+        return new String(message);
+    }
+
+    /** Return a machine with the reflector B and the naval rotors NAMES
+     *  in that order, the last NOTCHES.length of them moving with the
+     *  corresponding NOTCHES, set to SETTING. */
+    private Machine steppingMachine(String[] names, String[] notches,
+                                    String setting) {
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        rotors.add(new Reflector("B", new Permutation(NAVALA.get("B"),
+                                                      UPPER)));
+        int fixed = names.length - notches.length;
+        for (int i = 0; i < names.length; i += 1) {
+            Permutation perm = new Permutation(NAVALA.get(names[i]), UPPER);
+            rotors.add(i < fixed ? new FixedRotor(names[i], perm)
+                       : new MovingRotor(names[i], perm,
+                                         notches[i - fixed]));
+        }
+        String[] slots = new String[names.length + 1];
+        slots[0] = "B";
+        System.arraycopy(names, 0, slots, 1, names.length);
+        Machine machine = new Machine(UPPER, slots.length, notches.length,
+                                      rotors);
+        machine.insertRotors(slots);
+        machine.setRotors(setting);
+        machine.setPlugboard(new Permutation("", UPPER));
+        return machine;
+    }
+
+    /** Return a machine over the alphabet ABCDEF with a reflector and
+     *  one moving rotor for each of NOTCHES, wired at random from SEED,
+     *  set to SETTING, whose rotors are of a subclass that cannot be
+     *  compiled, so that it is interpreted and never scheduled. */
+    private Machine smallMachine(long seed, String setting,
+                                 String... notches) {
+        Alphabet alphabet = new Alphabet("ABCDEF");
+        Random random = new Random(seed);
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        rotors.add(new Reflector("R", new Permutation("(AB) (CD) (EF)",
+                                                      alphabet)));
+        String[] names = new String[notches.length + 1];
+        names[0] = "R";
+        for (int i = 0; i < notches.length; i += 1) {
+            int[] forward = new int[6];
+            for (int j = 0; j < 6; j += 1) {
+                int k = random.nextInt(j + 1);
+                forward[j] = forward[k];
+                forward[k] = j;
+            }
+            names[i + 1] = "M" + i;
+            rotors.add(new MovingRotor(names[i + 1],
+                                       new Permutation(forward, alphabet),
+                                       notches[i]) { });
+        }
+        Machine machine = new Machine(alphabet, names.length,
+                                      notches.length, rotors);
+        machine.insertRotors(names);
+        machine.setRotors(setting);
+        machine.setPlugboard(new Permutation("", alphabet));
+        return machine;
+    }
+
+    /** Check that MACHINE passes through the rotor settings EXPECTED on
+     *  successive keystrokes. */
+    private void checkSteps(Machine machine, String... expected) {
+        for (String settings : expected) {
+            machine.convert(0);
+            assertEquals(settings, machine.rotorSettings());
+        }
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testConvert() {
+        Machine machine = navalMachine();
+        assertEquals("QVPQSOKOILPUBKJZPISFXDW",
+                     machine.convert("FROMHISSHOULDERHIAWATHA"));
+        assertEquals("BHCNSCXNUOAATZXSRCFYDGU",
+                     machine.convert("TOOKTHECAMERAOFROSEWOOD"));
+    }
+
+    @Test
+    public void testAdvanceBy() {
+        for (int n = 0; n < 20000; n += 137) {
+            Machine stepped = navalMachine(), jumped = navalMachine();
+            for (int i = 0; i < n; i += 1) {
+                stepped.convert(0);
+            }
+            jumped.advanceBy(n);
+            assertEquals("after " + n + " keystrokes",
+                         stepped.rotorSettings(), jumped.rotorSettings());
+        }
+    }
+
+    @Test
+    public void testConvertParallel() {
+        String message = randomMessage(200000);
+        Machine sequential = navalMachine(), parallel = navalMachine();
+        char[] converted = message.toCharArray();
+        parallel.convertParallel(converted, 0, converted, 0,
+                                 converted.length, new ForkJoinPool(4));
+        assertEquals(sequential.convert(message), new String(converted));
+        assertEquals(sequential.rotorSettings(), parallel.rotorSettings());
+    }
+
+    @Test
+    public void testPeriod() {
+        Machine machine = navalMachine();
+        assertEquals(26 * 25 * 26, machine.period());
+        String settings = machine.rotorSettings();
+        machine.advanceBy(3 * machine.period() + 5);
+        machine.advanceBy(machine.period() - 5);
+        assertEquals(settings, machine.rotorSettings());
+    }
+
+    @Test
+    public void testScheduledStepping() {
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        rotors.add(new Reflector("B", new Permutation(NAVALA.get("B"),
+                                                      UPPER)));
+        rotors.add(new MovingRotor("VI", new Permutation(NAVALA.get("VI"),
+                                                         UPPER), "ZM"));
+        rotors.add(new MovingRotor("III",
+                                   new Permutation(NAVALA.get("III"),
+                                                   UPPER), "V"));
+        rotors.add(new MovingRotor("I", new Permutation(NAVALA.get("I"),
+                                                        UPPER), "Q"));
+        Rotor[] slots = rotors.toArray(new Rotor[0]);
+        CompiledRotors compiled = CompiledRotors.compile(slots, 3);
+        for (String start : new String[] {"AAA", "AVZ", "MZQ", "QDP"}) {
+            Machine machine = new Machine(UPPER, 4, 3, rotors);
+            machine.insertRotors(new String[] {"B", "VI", "III", "I"});
+            machine.setRotors(start);
+            machine.setPlugboard(new Permutation("", UPPER));
+            int[] settings = new int[4];
+            for (int i = 0; i < 3; i += 1) {
+                settings[i + 1] = UPPER.toInt(start.charAt(i));
+            }
+            for (int k = 0; k < 20000; k += 1) {
+                compiled.step(settings);
+                machine.convert(0);
+                String expected = "" + UPPER.toChar(settings[1])
+                    + UPPER.toChar(settings[2]) + UPPER.toChar(settings[3]);
+                assertEquals(start + " after " + k, expected,
+                             machine.rotorSettings());
+            }
+        }
+    }
+
+    @Test
+    public void testLargeMachine() {
+        Random random = new Random(500);
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        rotors.add(new Reflector("B", new Permutation(NAVALA.get("B"),
+                                                      UPPER)));
+        String[] names = new String[60];
+        names[0] = "B";
+        for (int i = 1; i < names.length; i += 1) {
+            int[] forward = new int[26];
+            for (int j = 0; j < 26; j += 1) {
+                int k = random.nextInt(j + 1);
+                forward[j] = forward[k];
+                forward[k] = j;
+            }
+            Permutation perm = new Permutation(forward, UPPER);
+            names[i] = "R" + i;
+            if (i < 20) {
+                rotors.add(new FixedRotor(names[i], perm));
+            } else {
+                rotors.add(new MovingRotor(names[i], perm,
+                                           i % 3 == 0 ? "AN" : "Q"));
+            }
+        }
+        Machine machine = new Machine(UPPER, 60, 40, rotors);
+        machine.insertRotors(names);
+        char[] setting = new char[59];
+        for (int i = 0; i < setting.length; i += 1) {
+            setting[i] = UPPER_STRING.charAt(random.nextInt(26));
+        }
+        machine.setRotors(new String(setting));
+        machine.setPlugboard(new Permutation("(AB) (CD)", UPPER));
+        Machine jumped = machine.copy();
+
+        CompiledRotors compiled =
+            CompiledRotors.compile(rotors.toArray(new Rotor[0]), 40);
+        int[] settings = new int[60];
+        for (int i = 1; i < 60; i += 1) {
+            settings[i] = UPPER.toInt(setting[i - 1]);
+        }
+        int[] plugboard =
+            new Permutation("(AB) (CD)", UPPER).forwardTable();
+        for (int k = 0; k < 20000; k += 1) {
+            int c = random.nextInt(26);
+            compiled.step(settings);
+            assertEquals("keystroke " + k,
+                         compiled.convert(c, settings[59],
+                                          compiled.inner(settings),
+                                          plugboard),
+                         machine.convert(c));
+        }
+        jumped.advanceBy(20000);
+        assertEquals(machine.rotorSettings(), jumped.rotorSettings());
+        assertEquals(machine.convert("HIAWATHA"),
+                     jumped.convert("HIAWATHA"));
+    }
+
+    @Test
+    public void testSupplementaryRoundTrip() {
+        String chars = "A\uD83D\uDE00B\uD801\uDC00";
+        Alphabet wide = new Alphabet(chars);
+        String message = chars + chars + "\uD801\uDC00\uD801\uDC00A";
+        String[] converted = new String[2];
+        for (int k = 0; k < 2; k += 1) {
+            ArrayList<Rotor> rotors = new ArrayList<>();
+            rotors.add(new Reflector("R", new Permutation(
+                "(A\uD83D\uDE00) (B\uD801\uDC00)", wide)));
+            rotors.add(new MovingRotor("M", new Permutation(
+                "(A\uD83D\uDE00B\uD801\uDC00)", wide), "\uD83D\uDE00"));
+            rotors.add(new MovingRotor("F", new Permutation(
+                "(AB) (\uD83D\uDE00\uD801\uDC00)", wide), "B"));
+            Machine machine = new Machine(wide, 3, 2, rotors);
+            machine.insertRotors(new String[] {"R", "M", "F"});
+            machine.setRotors("\uD801\uDC00\uD83D\uDE00");
+            machine.setPlugboard(new Permutation("(AB)", wide));
+            assertEquals("\uD801\uDC00\uD83D\uDE00",
+                         machine.rotorSettings());
+            converted[k] = machine.convert(k == 0 ? message : converted[0]);
+        }
+        assertEquals(message.codePointCount(0, message.length()),
+                     converted[0].codePointCount(0, converted[0].length()));
+        assertEquals(message, converted[1]);
+    }
+
+    @Test
+    public void testDoubleStep() {
+        Machine machine = steppingMachine(new String[] {"I", "II", "III"},
+                                          new String[] {"Q", "E", "V"},
+                                          "ADU");
+        checkSteps(machine, "ADV", "AEW", "BFX", "BFY");
+    }
+
+    @Test
+    public void testFixedLeftNeighbour() {
+        Machine machine =
+            steppingMachine(new String[] {"Beta", "I", "II", "III"},
+                            new String[] {"Q", "E", "V"}, "AQDU");
+        checkSteps(machine, "AQDV", "AQEW", "ARFX", "ARFY");
+        machine = steppingMachine(new String[] {"Beta", "Gamma", "I", "II"},
+                                  new String[] {"E", "V"}, "AAEU");
+        checkSteps(machine, "AAEV", "AAFW", "AAFX");
+    }
+
+    @Test
+    public void testMultipleNotches() {
+        Machine machine = steppingMachine(new String[] {"I", "VI", "VII"},
+                                          new String[] {"Q", "ZM", "ZM"},
+                                          "AAL");
+        checkSteps(machine, "AAM", "ABN", "ABO");
+        machine.setRotors("ALY");
+        checkSteps(machine, "ALZ", "AMA", "BNB", "BNC");
+        machine.setRotors("AYM");
+        checkSteps(machine, "AZN", "BAO", "BAP");
+    }
+
+    @Test
+    public void testBulkConvertArrays() {
+        String message = randomMessage(1000);
+        String expected = navalMachine().convert(message);
+
+        char[] src = ("xx" + message + "yy").toCharArray();
+        char[] dst = new char[message.length() + 7];
+        navalMachine().convert(src, 2, dst, 5, message.length());
+        assertEquals(expected, new String(dst, 5, message.length()));
+        assertEquals(0, dst[4]);
+        assertEquals(0, dst[5 + message.length()]);
+
+        navalMachine().convert(src, 2, src, 2, message.length());
+        assertEquals("xx" + expected + "yy", new String(src));
+
+        int[] indices = new int[message.length() + 3];
+        for (int i = 0; i < message.length(); i += 1) {
+            indices[i + 3] = UPPER.toInt(message.charAt(i));
+        }
+        navalMachine().convert(indices, 3, message.length());
+        for (int i = 0; i < message.length(); i += 1) {
+            assertEquals(expected.charAt(i), UPPER.toChar(indices[i + 3]));
+        }
+    }
+
+    /** Return a direct buffer holding TEXT. */
+    private CharBuffer direct(String text) {
+        CharBuffer buffer =
+            ByteBuffer.allocateDirect(2 * text.length()).asCharBuffer();
+        buffer.put(text).flip();
+        return buffer;
+    }
+
+    @Test
+    public void testBulkConvertBuffers() {
+        String message = randomMessage(1000);
+        String expected = navalMachine().convert(message);
+        int len = message.length();
+
+        CharBuffer heap = CharBuffer.wrap(("xx" + message).toCharArray());
+        heap.position(2);
+        heap = heap.slice();
+        CharBuffer out = CharBuffer.allocate(len + 4);
+        out.position(4);
+        navalMachine().convert(heap, out);
+        assertFalse(heap.hasRemaining());
+        assertEquals(len + 4, out.position());
+        assertEquals(expected, new String(out.array(), 4, len));
+
+        CharBuffer[][] pairs = {
+            {direct(message), CharBuffer.allocate(len)},
+            {CharBuffer.wrap(message), ByteBuffer.allocateDirect(2 * len)
+                .asCharBuffer()},
+            {direct(message), ByteBuffer.allocateDirect(2 * len)
+                .asCharBuffer()},
+        };
+        for (CharBuffer[] pair : pairs) {
+            navalMachine().convert(pair[0], pair[1]);
+            assertFalse(pair[0].hasRemaining());
+            pair[1].flip();
+            assertEquals(expected, pair[1].toString());
+        }
+
+        for (CharBuffer buffer : new CharBuffer[] {
+                CharBuffer.wrap(message.toCharArray()), direct(message) }) {
+            navalMachine().convert(buffer, buffer.duplicate());
+            buffer.flip();
+            assertEquals(expected, buffer.toString());
+        }
+    }
+
+    @Test
+    public void testBulkConvertFailure() {
+        String message = randomMessage(300);
+        Machine reference = navalMachine();
+        String expected = reference.convert(message.substring(0, 100));
+        String bad = message.substring(0, 100) + "1" + message.substring(101);
+        for (CharBuffer src : new CharBuffer[] {
+                CharBuffer.wrap(bad.toCharArray()), direct(bad) }) {
+            for (CharBuffer dst : new CharBuffer[] {
+                    CharBuffer.allocate(300),
+                    ByteBuffer.allocateDirect(600).asCharBuffer() }) {
+                Machine machine = navalMachine();
+                src.rewind();
+                try {
+                    machine.convert(src, dst);
+                    fail("character not in alphabet");
+                } catch (EnigmaException excp) {
+                    assertEquals(100, src.position());
+                    assertEquals(100, dst.position());
+                }
+                assertEquals(reference.rotorSettings(),
+                             machine.rotorSettings());
+                dst.flip();
+                assertEquals(expected, dst.toString());
+            }
+        }
+    }
+
+    @Test
+    public void testAdvanceByInterpreted() {
+        String[] notches = {"A", "BE", "C", "DF"};
+        for (String setting : new String[] {"AAAA", "ABCD", "FEFA", "CBDF"}) {
+            for (int n = 0; n < 400; n += 1) {
+                Machine stepped = smallMachine(1, setting, notches);
+                Machine jumped = smallMachine(1, setting, notches);
+                for (int i = 0; i < n; i += 1) {
+                    stepped.convert(0);
+                }
+                jumped.advanceBy(n);
+                assertEquals(setting + " after " + n + " keystrokes",
+                             stepped.rotorSettings(),
+                             jumped.rotorSettings());
+            }
+        }
+    }
+
+    @Test
+    public void testAdvanceByBeyondPeriod() {
+        String[] notches = {"A", "BE", "C", "DF"};
+        Machine stepped = smallMachine(2, "CBDF", notches);
+        long period = stepped.period();
+        for (int i = 0; i < notches.length; i += 1) {
+            stepped.convert(0);
+        }
+        String start = stepped.rotorSettings();
+        long recurrence = 0;
+        do {
+            stepped.convert(0);
+            recurrence += 1;
+        } while (!stepped.rotorSettings().equals(start));
+        assertEquals(recurrence, period);
+
+        long n = 1_000_000_000_000_003L;
+        Machine jumped = smallMachine(2, "CBDF", notches);
+        jumped.advanceBy(n);
+        stepped = smallMachine(2, "CBDF", notches);
+        long reduced = notches.length + (n - notches.length) % period;
+        for (long i = 0; i < reduced; i += 1) {
+            stepped.convert(0);
+        }
+        assertEquals(stepped.rotorSettings(), jumped.rotorSettings());
+    }
+
+    @Test
+    public void testAdvanceByWide() {
+        String[] notches = new String[40];
+        for (int i = 0; i < notches.length; i += 1) {
+            notches[i] = i % 4 == 0 ? "AD" : "C";
+        }
+        String setting = "ABCDEFEDCBAFABCDEFEDCBAFFEDCBACCDDEEFFAB";
+        Machine whole = smallMachine(3, setting, notches);
+        Machine parts = smallMachine(3, setting, notches);
+        whole.advanceBy(Long.MAX_VALUE);
+        parts.advanceBy(Long.MAX_VALUE - 1_000_000);
+        parts.advanceBy(999_999);
+        parts.convert(0);
+        assertEquals(whole.rotorSettings(), parts.rotorSettings());
+        try {
+            whole.period();
+            fail("period of 40 moving rotors counted");
+        } catch (EnigmaException excp) {
+            /* Expected: the period does not fit in a long. */
+        }
+    }
+
+    @Test
+    public void testSharedRotors() {
+        for (boolean interpreted : new boolean[] {false, true}) {
+            ArrayList<Rotor> rotors = navalRotors(interpreted);
+            Machine first = navalMachine(rotors, "AXLE");
+            Machine second = navalMachine(rotors, "AXLE");
+            first.setRotors("AXLE");
+            second.setRotors("BQDZ");
+            Machine third = second.copy();
+            String message = randomMessage(2000);
+            StringBuilder one = new StringBuilder();
+            StringBuilder two = new StringBuilder();
+            StringBuilder three = new StringBuilder();
+            for (int i = 0; i < message.length(); i += 100) {
+                String part = message.substring(i, i + 100);
+                one.append(first.convert(part));
+                two.append(second.convert(part));
+                three.append(third.convert(part));
+            }
+            assertEquals(navalMachine().convert(message), one.toString());
+            assertEquals(two.toString(), three.toString());
+            Machine alone = navalMachine();
+            alone.setRotors("BQDZ");
+            assertEquals(alone.convert(message), two.toString());
+        }
+    }
+
+    @Test
+    public void testInnerInvalidated() {
+        Machine compiled = navalMachine(navalRotors(false), "AXLE");
+        Machine reference = navalMachine(navalRotors(true), "AXLE");
+        String message = randomMessage(3000);
+        assertEquals(reference.convert("A"), compiled.convert("A"));
+
+        compiled.setRotors("QRST");
+        reference.setRotors("QRST");
+        assertEquals(reference.convert("AB"), compiled.convert("AB"));
+
+        compiled.setRotors("QRSU", 0);
+        reference.setRotors("QRSU");
+        assertEquals(reference.convert("C"), compiled.convert("C"));
+
+        compiled.advanceBy(700);
+        for (int i = 0; i < 700; i += 1) {
+            reference.convert(0);
+        }
+        assertEquals(reference.rotorSettings(), compiled.rotorSettings());
+        assertEquals(reference.convert("D"), compiled.convert("D"));
+
+        compiled.setRotors("AAUI");
+        reference.setRotors("AAUI");
+        for (int i = 0; i < message.length(); i += 1) {
+            String c = message.substring(i, i + 1);
+            assertEquals("keystroke " + i + " from "
+                         + reference.rotorSettings(),
+                         reference.convert(c), compiled.convert(c));
+        }
+    }
+
+    @Test
+    public void testScheduleOfLargeAlphabet() {
+        int size = 70000;
+        int[] codePoints = new int[size];
+        int[] identity = new int[size], pairs = new int[size];
+        for (int c = 0; c < size; c += 1) {
+            codePoints[c] = 0x20000 + c;
+            identity[c] = c;
+            pairs[c] = c ^ 1;
+        }
+        Alphabet alphabet = new Alphabet(new String(codePoints, 0, size));
+        Rotor[] slots = {
+            new Reflector("B", new Permutation(pairs, alphabet)),
+            new FixedRotor("F", new Permutation(identity, alphabet)),
+            new MovingRotor("M", new Permutation(identity, alphabet),
+                            alphabet.symbol(0)),
+        };
+        SteppingSchedule schedule = SteppingSchedule.build(
+            CompiledRotors.compile(slots, 2), new int[] {0, 65543, 0});
+        assertEquals(1, schedule.numEntries());
+        assertEquals(size, schedule.period());
+        assertEquals(0, schedule.indexOf(new int[] {0, 65543, 0}));
+        assertEquals(-1, schedule.indexOf(new int[] {0, 7, 0}));
+    }
+
+    @Test
+    public void testCompiledMatchesInterpreted() {
+        Random random = new Random(11);
+        String[] orders = {"B Beta III IV I", "B Beta I III IV",
+                           "B Beta IV I III"};
+        for (String order : orders) {
+            String[] slots = order.split(" ");
+            Machine compiled = new Machine(UPPER, 5, 3, navalRotors(false));
+            Machine interpreted =
+                new Machine(UPPER, 5, 3, navalRotors(true));
+            compiled.insertRotors(slots);
+            interpreted.insertRotors(slots);
+            assertTrue(compiled.compiledRotors() != null || INTERPRET);
+            assertTrue(interpreted.compiledRotors() == null);
+            for (int k = 0; k < 5; k += 1) {
+                String setting = randomMessage(4 + k).substring(k);
+                Permutation plugboard = new Permutation(
+                    "(" + UPPER_STRING.charAt(random.nextInt(13))
+                    + UPPER_STRING.charAt(13 + random.nextInt(13)) + ")",
+                    UPPER);
+                for (Machine machine : new Machine[] {compiled,
+                                                      interpreted}) {
+                    machine.setRotors(setting);
+                    machine.setPlugboard(plugboard);
+                }
+                String message = randomMessage(5000);
+                assertEquals(order + " " + setting,
+                             interpreted.convert(message),
+                             compiled.convert(message));
+            }
+        }
+    }
+
+    @Test
+    public void testCompiledCache() {
+        if (INTERPRET) {
+            return;
+        }
+        Machine machine = new Machine(UPPER, 5, 3, navalRotors(false));
+        machine.insertRotors(new String[] {"B", "Beta", "III", "IV", "I"});
+        CompiledRotors first = machine.compiledRotors();
+        machine.insertRotors(new String[] {"B", "Beta", "I", "III", "IV"});
+        assertTrue(first != machine.compiledRotors());
+        machine.insertRotors(new String[] {"B", "Beta", "III", "IV", "I"});
+        assertTrue(first == machine.compiledRotors());
+        Machine copy = machine.copy();
+        copy.insertRotors(new String[] {"B", "Beta", "III", "IV", "I"});
+        assertTrue(first == copy.compiledRotors());
+
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        rotors.add(new Reflector("B", new Permutation(NAVALA.get("B"),
+                                                      UPPER)));
+        String[] names = {"I", "II", "III", "IV", "V", "VI", "VII", "VIII"};
+        for (String name : names) {
+            rotors.add(new MovingRotor(name, new Permutation(NAVALA.get(name),
+                                                             UPPER), "A"));
+        }
+        Machine wide = new Machine(UPPER, 4, 3, rotors);
+        wide.insertRotors(new String[] {"B", "I", "II", "III"});
+        first = wide.compiledRotors();
+        int orders = 0;
+        for (int i = 0; i < names.length; i += 1) {
+            for (int j = 0; j < names.length; j += 1) {
+                for (int k = 0; k < names.length; k += 1) {
+                    if (i != j && j != k && i != k
+                        && orders < Machine.COMPILED_CACHE_SIZE) {
+                        wide.insertRotors(new String[] {
+                            "B", names[k], names[j], names[i]});
+                        orders += 1;
+                    }
+                }
+            }
+        }
+        wide.insertRotors(new String[] {"B", "I", "II", "III"});
+        assertTrue("least recently used order kept",
+                   first != wide.compiledRotors());
+    }
+}
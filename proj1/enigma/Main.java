@@ -1,12 +1,27 @@
 package enigma;
 
 import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.PrintStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Scanner;
+import java.util.concurrent.ForkJoinPool;
 
 import static enigma.EnigmaException.error;
 
@@ -36,27 +51,64 @@ public final class Main {
 
     /** Check ARGS and open the necessary files (see comment on main). */
     Main(String[] args) {
+        this(args, SECTION_WORKERS);
+    }
+
+    /** Check ARGS and open the necessary files (see comment on main),
+     *  converting sections on SECTIONWORKERS threads, or as they are read
+     *  if it is 0. */
+    Main(String[] args, int sectionWorkers) {
+        _sectionWorkers = sectionWorkers;
         if (args.length < 1 || args.length > 3) {
             throw error("Only 1, 2, or 3 command-line arguments allowed");
         }
 
-        _config = getInput(args[0]);
+        _compiledConfig = CompiledConfig.fresh(args[0]);
+        if (_compiledConfig == null) {
+            _config = getInput(args[0]);
+        }
 
         if (args.length > 1) {
-            _input = getInput(args[1]);
+            _input = getInputChannel(args[1]);
         } else {
-            _input = new Scanner(System.in);
+            _input = new FileInputStream(FileDescriptor.in).getChannel();
         }
 
         if (args.length > 2) {
-            _output = getOutput(args[2]);
+            _output = getOutputChannel(args[2]);
         } else {
-            _output = System.out;
+            _output = new FileOutputStream(FileDescriptor.out).getChannel();
         }
     }
 
+    /** A Main that only reads the configuration in CONFIG. */
+    private Main(Scanner config) {
+        _config = config;
+        _sectionWorkers = 0;
+    }
+
+    /** Return an Enigma machine configured from the configuration file
+     *  named NAME, with no rotors inserted yet.  Its compiled form (see
+     *  CompiledConfig) is used instead if it is up to date. */
+    static Machine configure(String name) {
+        String compiled = CompiledConfig.fresh(name);
+        if (compiled != null) {
+            Metrics.ReadConfig event = Metrics.beginReadConfig();
+            Machine config = CompiledConfig.load(compiled);
+            Metrics.endReadConfig(event, config, true);
+            return config;
+        }
+        return parseConfig(name);
+    }
+
+    /** Return an Enigma machine configured from the text of the
+     *  configuration file named NAME, with no rotors inserted yet. */
+    static Machine parseConfig(String name) {
+        return new Main(getInput(name)).readConfig();
+    }
+
     /** Return a Scanner reading from the file named NAME. */
-    private Scanner getInput(String name) {
+    private static Scanner getInput(String name) {
         try {
             return new Scanner(new File(name));
         } catch (IOException excp) {
@@ -64,10 +116,33 @@ public final class Main {
         }
     }
 
-    /** Return a PrintStream writing to the file named NAME. */
-    private PrintStream getOutput(String name) {
+    /** Return the contents of the file named NAME, decoded with the
+     *  default charset. */
+    static String readFile(String name) {
+        try {
+            return new String(Files.readAllBytes(Paths.get(name)),
+                              Charset.defaultCharset());
+        } catch (IOException excp) {
+            throw error("could not read %s", name);
+        }
+    }
+
+    /** Return a channel reading from the file named NAME. */
+    private ReadableByteChannel getInputChannel(String name) {
+        try {
+            return FileChannel.open(Paths.get(name));
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
+        }
+    }
+
+    /** Return a channel writing to the file named NAME. */
+    private WritableByteChannel getOutputChannel(String name) {
         try {
-            return new PrintStream(new File(name));
+            return FileChannel.open(Paths.get(name),
+                                    StandardOpenOption.CREATE,
+                                    StandardOpenOption.TRUNCATE_EXISTING,
+                                    StandardOpenOption.WRITE);
         } catch (IOException excp) {
             throw error("could not open %s", name);
         }
@@ -75,63 +150,210 @@ public final class Main {
 
     /** Configure an Enigma machine from the contents of configuration
      *  file _config and apply it to the messages in _input, sending the
-     *  results to _output. */
-    private void process() {
-        Machine m = readConfig();
+     *  results to _output.  Input is decoded and converted a buffer at a
+     *  time, so memory use does not depend on the length of the input
+     *  or of its lines. */
+    void process() {
+        _machine = readConfig();
+        Charset charset = Charset.defaultCharset();
+        Reader input = Channels.newReader(_input, charset.newDecoder(), -1);
+        Writer output = Channels.newWriter(_output, charset.newEncoder(), -1);
+        if (_sectionWorkers > 0) {
+            _sections = new SectionPipeline(_sectionWorkers, output);
+        } else {
+            _writer = new GroupedWriter(output);
+        }
 
-        String settings = _input.nextLine();
-        if (!(settings.substring(0, 1).equals("*"))) {
-            throw error("No Configuration Present.");
+        int bufferSize = PARALLEL ? PARALLEL_BUFFER_SIZE : BUFFER_SIZE;
+        char[] buffer = new char[bufferSize];
+        char[] message = new char[bufferSize];
+        StringBuilder settings = null;
+        boolean configured = false, lineStart = true, skipNewline = false;
+        try {
+            for (int n = input.read(buffer); n >= 0;
+                 n = input.read(buffer)) {
+                int count = 0;
+                for (int i = 0; i < n; i += 1) {
+                    char c = buffer[i];
+                    if (skipNewline) {
+                        skipNewline = false;
+                        if (c == '\n') {
+                            continue;
+                        }
+                    }
+                    if (lineStart) {
+                        lineStart = false;
+                        if (c == '*') {
+                            settings = new StringBuilder();
+                        } else if (!configured) {
+                            throw error("No Configuration Present.");
+                        }
+                    }
+                    if (isLineTerminator(c)) {
+                        skipNewline = c == '\r';
+                        lineStart = true;
+                        if (settings != null) {
+                            startSection(settings.toString());
+                            settings = null;
+                            configured = true;
+                        } else {
+                            messageChars(message, count);
+                            endMessageLine();
+                            count = 0;
+                        }
+                    } else if (settings != null) {
+                        settings.append(c);
+                    } else if (c != ' ') {
+                        message[count] = c;
+                        count += 1;
+                    }
+                }
+                messageChars(message, count);
+            }
+            if (!configured && settings == null) {
+                throw error("No Configuration Present.");
+            }
+            if (!lineStart) {
+                if (settings != null) {
+                    startSection(settings.toString());
+                } else {
+                    endMessageLine();
+                }
+            }
+        } catch (IOException excp) {
+            throw error("could not read input: %s", excp.getMessage());
+        } finally {
+            if (_sections == null) {
+                _writer.flush();
+            } else {
+                submitChunk();
+                _sections.finish();
+            }
         }
+    }
 
-        boolean aRotor;
-        String[] rotors = new String[_numRotors + 1];
-        String[] config = settings.split(" ");
-        for (int a = 0; a < rotors.length; a++) {
-            rotors[a] = config[a];
+    /** Begin a new section of messages, which are to be converted with
+     *  the machine set up according to the settings line SETTINGS. */
+    private void startSection(String settings) {
+        if (_sections == null) {
+            setUp(_machine, settings);
+        } else {
+            submitChunk();
+            Machine m = _machine.copy();
+            setUp(m, settings);
+            _sectionMachine = m;
+            _chunk = new StringBuilder();
+            _chunkColumn = _lineChars = 0;
         }
+    }
 
-        for (int i = 1; i < rotors.length; i++) {
-            aRotor = false;
-            for (int j = 0; j < _rotors.size(); j++) {
-                if (rotors[i].equals(_rotors.get(j).name())) {
-                    aRotor = true;
-                }
+    /** Add the first COUNT characters of MESSAGE to the current message
+     *  line.  The characters may be converted in place. */
+    private void messageChars(char[] message, int count) {
+        if (_sections == null) {
+            if (PARALLEL) {
+                _machine.convertParallel(message, 0, message, 0, count,
+                                         ForkJoinPool.commonPool());
+                _writer.write(message, 0, count);
+            } else {
+                convert(_machine, message, 0, count, _writer);
             }
-            if (!aRotor) {
-                throw error("Unknown or Duplicated Rotor Name");
+        } else if (count > 0) {
+            _chunk.append(message, 0, count);
+            _chunkChars += count;
+            _lineChars += count;
+            if (_chunk.length() >= SECTION_CHUNK) {
+                submitChunk();
             }
         }
+    }
 
-        setUp(m, settings);
+    /** End the current message line. */
+    private void endMessageLine() {
+        if (_sections == null) {
+            _writer.endLine();
+        } else {
+            _chunk.append(SECTION_LINE_END);
+            _lineChars = 0;
+            if (_chunk.length() >= SECTION_CHUNK) {
+                submitChunk();
+            }
+        }
+    }
 
-        while (_input.hasNextLine()) {
-            String nextL = _input.nextLine();
-            if (nextL.startsWith("*")) {
-                for (int i = 1; i < rotors.length; i++) {
-                    aRotor = false;
-                    for (int j = 0; j < _rotors.size(); j++) {
-                        if (rotors[i].equals(_rotors.get(j).name())) {
-                            aRotor = true;
-                        }
-                    }
-                    if (!aRotor) {
-                        throw error("Unknown or Duplicated Rotor Name");
-                    }
+    /** Hand what has been read of the current section since the last
+     *  chunk, if anything, to the section workers, with a copy of the
+     *  section's machine, which is then advanced past it. */
+    private void submitChunk() {
+        if (_chunk == null || _chunk.length() == 0) {
+            return;
+        }
+        char[] chars = new char[_chunk.length()];
+        _chunk.getChars(0, chars.length, chars, 0);
+        Machine m = _sectionMachine.copy();
+        long column = _chunkColumn;
+        _sections.submit(out -> convertChunk(m, chars, column, out));
+        _sectionMachine.advanceBy(_chunkChars);
+        _chunk.setLength(0);
+        _chunkChars = 0;
+        _chunkColumn = _lineChars;
+    }
+
+    /** Convert CHARS, a chunk of message lines each ending in
+     *  SECTION_LINE_END except perhaps the last, with M, writing them
+     *  formatted to OUT.  The first line continues one of which COLUMN
+     *  characters were in earlier chunks. */
+    private static void convertChunk(Machine m, char[] chars, long column,
+                                     Writer out) {
+        GroupedWriter writer = new GroupedWriter(out, chars.length);
+        writer.resumeLine(column);
+        try {
+            int start = 0;
+            for (int i = 0; i < chars.length; i += 1) {
+                if (chars[i] == SECTION_LINE_END) {
+                    convert(m, chars, start, i - start, writer);
+                    writer.endLine();
+                    start = i + 1;
                 }
-                settings = nextL;
-                setUp(m, settings);
-                continue;
             }
-            nextL = nextL.replaceAll(" ", "");
-            nextL = m.convert(nextL);
-            printMessageLine(nextL);
+            convert(m, chars, start, chars.length - start, writer);
+        } finally {
+            writer.flush();
+        }
+    }
+
+    /** Convert the LEN characters of CHARS starting at START in place
+     *  with M, and write them to WRITER.  If one of them is not in M's
+     *  alphabet, those before it are still written. */
+    private static void convert(Machine m, char[] chars, int start, int len,
+                                GroupedWriter writer) {
+        CharBuffer buffer = CharBuffer.wrap(chars, start, len);
+        try {
+            m.convert(buffer, buffer.duplicate());
+        } finally {
+            writer.write(chars, start, buffer.position() - start);
         }
     }
 
+    /** Return true iff C ends a line, as for Scanner.nextLine. */
+    static boolean isLineTerminator(char c) {
+        return c == '\n' || c == '\r' || c == '\u2028' || c == '\u2029'
+            || c == '\u0085';
+    }
+
     /** Return an Enigma machine configured from the contents of configuration
      *  file _config. */
     private Machine readConfig() {
+        Metrics.ReadConfig event = Metrics.beginReadConfig();
+        Machine config = _compiledConfig != null
+            ? CompiledConfig.load(_compiledConfig) : parseConfigText();
+        Metrics.endReadConfig(event, config, _compiledConfig != null);
+        return config;
+    }
+
+    /** Return an Enigma machine configured from the text of the
+     *  configuration file _config. */
+    private Machine parseConfigText() {
         try {
             _alphabet = new Alphabet(_config.nextLine());
             _numRotors = _config.nextInt();
@@ -212,14 +434,19 @@ public final class Main {
 
     /** Set M according to the specification given on SETTINGS,
      *  which must have the format specified in the assignment. */
-    private void setUp(Machine M, String settings) {
+    static void setUp(Machine M, String settings) {
+        Metrics.Reconfigure event = Metrics.beginReconfigure();
         String[] inputParams = settings.split(" ");
 
         int numRotors = M.numRotors();
+        if (inputParams.length < numRotors + 2) {
+            throw error("Settings line too short.");
+        }
         String[] rotors = new String[numRotors];
         for (int i = 0; i < numRotors; ++i) {
             rotors[i] = inputParams[i + 1];
         }
+        checkRotors(M, rotors);
 
         M.insertRotors(rotors);
 
@@ -232,35 +459,19 @@ public final class Main {
         }
         plugboard = plugboard.trim();
 
-        M.setPlugboard(new Permutation(plugboard, _alphabet));
+        M.setPlugboard(new Permutation(plugboard, M.alphabet()));
+        Metrics.endReconfigure(event, settings);
     }
 
-    /** Print MSG in groups of five (except that the last group may
-     *  have fewer letters). */
-    private void printMessageLine(String msg) {
-        String split = "";
-        int full = msg.length() / 5;
-        int partial = msg.length() % 5;
-
-        for (int i = 0; i < full; i++) {
-            for (int j = 0; j < 5; j++) {
-                if (msg.length() == 1) {
-                    split += Character.toString(msg.charAt(0));
-                    break;
-                }
-                split += Character.toString(msg.charAt(0));
-                msg = msg.substring(1);
-                if (j == 4) {
-                    split += " ";
-                }
-            }
-        }
-        if (partial > 0) {
-            for (int k = 0; k < partial; k++) {
-                split += Character.toString(msg.charAt(k));
+    /** Checks that every name in ROTORS names one of the available
+     *  rotors, and that no name is repeated. */
+    static void checkRotors(Machine M, String[] rotors) {
+        HashSet<String> seen = new HashSet<>();
+        for (String name : rotors) {
+            if (!M.hasRotor(name) || !seen.add(name)) {
+                throw error("Unknown or Duplicated Rotor Name");
             }
         }
-        _output.println(split);
     }
 
     /** Checks for proper ASCII approved letters placed at notch
@@ -279,8 +490,8 @@ public final class Main {
         }
         boolean mCorrect = false;
 
-        for (int x = 0; x < notch.length(); x++) {
-            if (!_alphabet.contains(notch.charAt(x))) {
+        for (int cp : notch.codePoints().toArray()) {
+            if (!_alphabet.containsCodePoint(cp)) {
                 throw error("Notch not in alphabet.");
             }
         }
@@ -297,14 +508,77 @@ public final class Main {
     /** Alphabet used in this machine. */
     private Alphabet _alphabet;
 
+    /** Size of the character buffers used to process input. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** True iff long messages are converted in parallel chunks.  Set
+     *  with -Denigma.parallel=true. */
+    private static final boolean PARALLEL =
+        Boolean.getBoolean("enigma.parallel");
+
+    /** Size of the character buffers used to process input when
+     *  PARALLEL is set, large enough to give every worker a chunk. */
+    private static final int PARALLEL_BUFFER_SIZE = 1 << 22;
+
+    /** Number of threads converting sections concurrently, or 0 to
+     *  convert each section as it is read.  Set with
+     *  -Denigma.sections=N. */
+    private static final int SECTION_WORKERS =
+        Integer.getInteger("enigma.sections", 0);
+
+    /** Marks the end of a message line in a chunk of a section.  Line
+     *  terminators never occur within message lines. */
+    private static final char SECTION_LINE_END = '\n';
+
+    /** Number of characters of a section read before they are handed to
+     *  the section workers as a chunk, which bounds the memory used by
+     *  each outstanding chunk. */
+    static final int SECTION_CHUNK = 1 << 16;
+
+    /** Number of threads converting sections, or 0. */
+    private final int _sectionWorkers;
+
+    /** The machine configured from _config. */
+    private Machine _machine;
+
+    /** Formatter for converted messages when sections are converted as
+     *  they are read. */
+    private GroupedWriter _writer;
+
+    /** Workers converting sections, or null if sections are converted
+     *  as they are read. */
+    private SectionPipeline _sections;
+
+    /** Machine set up for the section being read by _sections, at the
+     *  position where _chunk begins. */
+    private Machine _sectionMachine;
+
+    /** Message lines of the section being read by _sections that have
+     *  not yet been handed to the workers. */
+    private StringBuilder _chunk;
+
+    /** Number of message characters in _chunk. */
+    private long _chunkChars;
+
+    /** Number of message characters on the line that _chunk begins
+     *  that were in earlier chunks. */
+    private long _chunkColumn;
+
+    /** Number of message characters read on the current line. */
+    private long _lineChars;
+
     /** Source of input messages. */
-    private Scanner _input;
+    private ReadableByteChannel _input;
 
     /** Source of machine configuration. */
     private Scanner _config;
 
+    /** Name of the up-to-date compiled form of the configuration file,
+     *  read instead of _config, or null. */
+    private String _compiledConfig;
+
     /** File for encoded/decoded messages. */
-    private PrintStream _output;
+    private WritableByteChannel _output;
 
     /** Number of rotors. */
     private int _numRotors;
@@ -0,0 +1,183 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Main class.
+ *  @author Preston Weber
+ */
+public class MainTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Line separator of the output. */
+    private static final String NL = System.lineSeparator();
+
+    /** Settings line used in the tests. */
+    private static final String SETTINGS =
+        "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)";
+
+    /** Return a new temporary file, deleted on exit. */
+    private File tempFile() throws Exception {
+        File file = File.createTempFile("enigma", ".txt");
+        file.deleteOnExit();
+        return file;
+    }
+
+    /** Return the name of a new temporary configuration file holding the
+     *  naval rotors B, Beta, I, III and IV. */
+    private String navalConfig() throws Exception {
+        File config = tempFile();
+        String text = UPPER_STRING + "\n5 3\n"
+            + "I MQ " + NAVALA.get("I") + "\n"
+            + "III MV " + NAVALA.get("III") + "\n"
+            + "IV MJ " + NAVALA.get("IV") + "\n"
+            + "Beta N " + NAVALA.get("Beta") + "\n"
+            + "B R " + NAVALA.get("B") + "\n";
+        Files.write(config.toPath(), text.getBytes(StandardCharsets.UTF_8));
+        return config.getPath();
+    }
+
+    /** Return the output of Main given the input bytes INPUT. */
+    private String run(byte[] input) throws Exception {
+        File in = tempFile(), out = tempFile();
+        Files.write(in.toPath(), input);
+        new Main(new String[] {navalConfig(), in.getPath(), out.getPath()})
+            .process();
+        return new String(Files.readAllBytes(out.toPath()),
+                          StandardCharsets.US_ASCII);
+    }
+
+    /** Return the output of Main given the input INPUT, converting
+     *  sections on WORKERS threads (or as they are read if 0), followed
+     *  by the error reported, if any. */
+    private String runSections(String input, int workers) throws Exception {
+        File in = tempFile(), out = tempFile();
+        Files.write(in.toPath(), input.getBytes(StandardCharsets.US_ASCII));
+        String error = "";
+        try {
+            new Main(new String[] {navalConfig(), in.getPath(),
+                                   out.getPath()}, workers).process();
+        } catch (EnigmaException excp) {
+            error = "Error: " + excp.getMessage();
+        }
+        return new String(Files.readAllBytes(out.toPath()),
+                          StandardCharsets.US_ASCII) + error;
+    }
+
+    /** Return a message line of LEN random letters, in groups of
+     *  seven, from SEED. */
+    private String randomLine(int len, long seed) {
+        Random random = new Random(seed);
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < len; i += 1) {
+            if (i > 0 && i % 7 == 0) {
+                line.append(' ');
+            }
+            line.append(UPPER_STRING.charAt(random.nextInt(26)));
+        }
+        return line.toString();
+    }
+
+    /** Return an input of several sections, one holding a line longer
+     *  than a chunk, with BAD inserted in the middle of that line. */
+    private String sectionsInput(String bad) {
+        String longLine = randomLine(3 * Main.SECTION_CHUNK, 1);
+        int middle = longLine.length() / 2;
+        return SETTINGS + "\nFROM HIS SHOULDER\nHIAWATHA\n"
+            + "* B Beta I III IV QQQQ (AB)\n" + randomLine(1000, 2) + "\n"
+            + longLine.substring(0, middle) + bad
+            + longLine.substring(middle) + "\n\n" + randomLine(3, 3)
+            + "\n" + SETTINGS + "\n" + randomLine(70000, 4) + "\nABC";
+    }
+
+    /** Return the output of Main given the input INPUT. */
+    private String run(String input) throws Exception {
+        return run(input.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testLineTerminators() throws Exception {
+        String expected = "QVPQS OKOIL PUBKJ" + NL + "ZPISF XDW" + NL
+            + NL + "IMO" + NL;
+        assertEquals(expected,
+                     run(SETTINGS + "\nFROM HIS SHOULDER\nHIAWATHA\n\nABC\n"));
+        assertEquals(expected,
+                     run(SETTINGS + "\r\nFROM HIS SHOULDER\r\nHIAWATHA\r\n"
+                         + "\r\nABC\r\n"));
+        assertEquals(expected,
+                     run(SETTINGS + "\rFROM HIS SHOULDER\rHIAWATHA\r\rABC\r"));
+        assertEquals(expected,
+                     run(SETTINGS + "\r\nFROM HIS SHOULDER\rHIAWATHA\n\r\n"
+                         + "ABC\n"));
+    }
+
+    @Test
+    public void testMissingFinalNewline() throws Exception {
+        String input = SETTINGS + "\nFROM HIS SHOULDER\nABC";
+        assertEquals(run(input + "\n"), run(input));
+        assertEquals("", run(SETTINGS));
+        assertEquals("BTB" + NL + "BTB" + NL,
+                     run(SETTINGS + "\nABC\n" + SETTINGS + "\nABC"));
+    }
+
+    @Test
+    public void testMalformedInput() throws Exception {
+        byte[] input = (SETTINGS + "\nAB?C\n")
+            .getBytes(StandardCharsets.US_ASCII);
+        input[input.length - 3] = (byte) 0xff;
+        try {
+            run(input);
+            fail("malformed input accepted");
+        } catch (EnigmaException excp) {
+            assertEquals("could not read input: Input length = 1",
+                         excp.getMessage());
+        }
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testNoSettings() throws Exception {
+        run("HELLO\n");
+    }
+
+    @Test
+    public void testSections() throws Exception {
+        String input = sectionsInput("");
+        String expected = runSections(input, 0);
+        assertFalse(expected.contains("Error"));
+        assertEquals(expected, runSections(input, 1));
+        assertEquals(expected, runSections(input, 3));
+    }
+
+    @Test
+    public void testSectionErrors() throws Exception {
+        String input = sectionsInput("1");
+        String expected = runSections(input, 0);
+        assertTrue(expected.endsWith("Error: character '1' is not in the"
+                                     + " alphabet"));
+        assertTrue(expected.length() > Main.SECTION_CHUNK);
+        assertEquals(expected, runSections(input, 3));
+
+        input = SETTINGS + "\nABC\n* B Beta I III IV QQQ\nABC\n" + SETTINGS
+            + "\nABC\n";
+        expected = runSections(input, 0);
+        assertEquals("BTB" + NL + "Error: Wrong number of rotor settings:"
+                     + " QQQ", expected);
+        assertEquals(expected, runSections(input, 2));
+    }
+}
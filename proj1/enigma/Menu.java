@@ -0,0 +1,139 @@
+package enigma;
+
+import java.util.Arrays;
+
+/** The menu of a crib: the graph whose vertices are the characters of an
+ *  alphabet, with an edge between the plaintext and ciphertext
+ *  characters at each position of the crib, labelled with that
+ *  position.  The menu is divided into connected components, each
+ *  represented by one of its characters; components with more edges
+ *  (and so more loops to contradict a wrong guess) come first.
+ *  @author Preston Weber
+ */
+class Menu {
+
+    /** The menu of CRIB, given as alphabet indices, placed at position
+     *  OFFSET of CIPHERTEXT, over an alphabet of SIZE characters. */
+    Menu(int[] ciphertext, int[] crib, int offset, int size) {
+        _offset = offset;
+        _length = crib.length;
+        int[] degree = new int[size];
+        for (int i = 0; i < crib.length; i += 1) {
+            degree[crib[i]] += 1;
+            degree[ciphertext[offset + i]] += 1;
+        }
+        _start = new int[size + 1];
+        for (int c = 0; c < size; c += 1) {
+            _start[c + 1] = _start[c] + degree[c];
+        }
+        _to = new int[_start[size]];
+        _at = new int[_start[size]];
+        int[] next = Arrays.copyOf(_start, size);
+        for (int i = 0; i < crib.length; i += 1) {
+            int p = crib[i], c = ciphertext[offset + i];
+            _to[next[p]] = c;
+            _at[next[p]] = i;
+            next[p] += 1;
+            _to[next[c]] = p;
+            _at[next[c]] = i;
+            next[c] += 1;
+        }
+        _roots = components(size);
+    }
+
+    /** Return the position in the ciphertext of the first character of
+     *  the crib. */
+    int offset() {
+        return _offset;
+    }
+
+    /** Return the number of characters in the crib. */
+    int length() {
+        return _length;
+    }
+
+    /** Return the number of connected components of the menu. */
+    int numComponents() {
+        return _roots.length;
+    }
+
+    /** Return the representative character of component K. */
+    int root(int k) {
+        return _roots[k];
+    }
+
+    /** Return the index of the first edge leaving character C.  The
+     *  edges leaving C are numbered first(C) .. first(C + 1) - 1. */
+    int first(int c) {
+        return _start[c];
+    }
+
+    /** Return the character at the other end of edge E. */
+    int to(int e) {
+        return _to[e];
+    }
+
+    /** Return the crib position labelling edge E. */
+    int at(int e) {
+        return _at[e];
+    }
+
+    /** Return the representatives of the connected components of the
+     *  characters with edges, SIZE being the size of the alphabet, most
+     *  edges first. */
+    private int[] components(int size) {
+        int[] component = new int[size];
+        Arrays.fill(component, -1);
+        int[] roots = new int[size], edges = new int[size];
+        int[] queue = new int[size];
+        int count = 0;
+        for (int c = 0; c < size; c += 1) {
+            if (component[c] >= 0 || _start[c] == _start[c + 1]) {
+                continue;
+            }
+            roots[count] = c;
+            component[c] = count;
+            int head = 0, tail = 0;
+            queue[tail++] = c;
+            while (head < tail) {
+                int u = queue[head++];
+                edges[count] += _start[u + 1] - _start[u];
+                for (int e = _start[u]; e < _start[u + 1]; e += 1) {
+                    if (component[_to[e]] < 0) {
+                        component[_to[e]] = count;
+                        queue[tail++] = _to[e];
+                    }
+                }
+            }
+            count += 1;
+        }
+        Integer[] order = new Integer[count];
+        for (int k = 0; k < count; k += 1) {
+            order[k] = k;
+        }
+        Arrays.sort(order, (a, b) -> edges[b] - edges[a]);
+        int[] result = new int[count];
+        for (int k = 0; k < count; k += 1) {
+            result[k] = roots[order[k]];
+        }
+        return result;
+    }
+
+    /** Position of the crib in the ciphertext. */
+    private final int _offset;
+
+    /** Length of the crib. */
+    private final int _length;
+
+    /** The edges leaving character C are _start[C] .. _start[C+1]-1. */
+    private final int[] _start;
+
+    /** Far end of each edge. */
+    private final int[] _to;
+
+    /** Crib position labelling each edge. */
+    private final int[] _at;
+
+    /** Representatives of the components, most edges first. */
+    private final int[] _roots;
+}
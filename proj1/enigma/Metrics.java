@@ -0,0 +1,425 @@
+package enigma;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Period;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/** Opt-in measurements of the engine, enabled with
+ *  -Denigma.metrics=true.  When they are disabled, ENABLED is a constant
+ *  false and the JIT compiler removes every measurement from the hot paths.
+ *
+ *  When enabled, each thread counts keystrokes, rotor steps by slot,
+ *  carries (keystrokes moving a slot other than the fast one) and
+ *  double steps (a slot other than the fast one moving on two
+ *  keystrokes running) in plain fields of its own, which are summed
+ *  only when reported.  The sums read the fields of running threads
+ *  without synchronization, so a report made while they count is
+ *  approximate: it may miss their latest counts, or see one count
+ *  updated and not another.  The counts of threads that have ended are
+ *  exact, since a thread's end happens before isAlive() returns false.
+ *
+ *  Reading a settings line and reading a configuration are recorded as
+ *  the JFR events enigma.Reconfigure and enigma.ReadConfig, the totals
+ *  as the periodic JFR event enigma.Throughput, and a summary line is
+ *  written to the standard error every -Denigma.metrics.interval
+ *  seconds (10 by default) and at exit.
+ *  @author Preston Weber
+ */
+final class Metrics {
+
+    /** True iff measurements are taken. */
+    static final boolean ENABLED = Boolean.getBoolean("enigma.metrics");
+
+    /** Seconds between summary lines. */
+    static final int INTERVAL =
+        Integer.getInteger("enigma.metrics.interval", 10);
+
+    /** Not instantiable. */
+    private Metrics() {
+    }
+
+    /** The stepping of one machine, as seen after each keystroke.  A
+     *  meter must be replaced whenever the machine's settings change
+     *  other than by stepping. */
+    static final class Meter {
+
+        /** A meter for a machine whose settings are now SETTINGS. */
+        Meter(int[] settings) {
+            _settings = settings.clone();
+            _moved = new boolean[settings.length];
+        }
+
+        /** Count a keystroke, after which the machine's settings are
+         *  SETTINGS. */
+        void keystroke(int[] settings) {
+            Counters counters = LOCAL.get();
+            long[] steps = counters.steps(settings.length);
+            int fast = settings.length - 1;
+            boolean carry = false, doubleStep = false;
+            for (int j = 0; j <= fast; j += 1) {
+                boolean moved = settings[j] != _settings[j];
+                if (moved) {
+                    steps[j] += 1;
+                    _settings[j] = settings[j];
+                    carry |= j < fast;
+                    doubleStep |= j < fast && _moved[j];
+                }
+                _moved[j] = moved;
+            }
+            counters._keystrokes += 1;
+            if (carry) {
+                counters._carries += 1;
+            }
+            if (doubleStep) {
+                counters._doubleSteps += 1;
+            }
+        }
+
+        /** The machine's settings after the last keystroke. */
+        private final int[] _settings;
+
+        /** True for each slot moved at the last keystroke. */
+        private final boolean[] _moved;
+    }
+
+    /** Return a begun event recording the reading of a configuration,
+     *  or null if measurements are disabled. */
+    static ReadConfig beginReadConfig() {
+        if (!ENABLED) {
+            return null;
+        }
+        ReadConfig event = new ReadConfig();
+        event.begin();
+        return event;
+    }
+
+    /** End EVENT, if not null, which has read CONFIG, from a compiled
+     *  configuration iff COMPILED. */
+    static void endReadConfig(ReadConfig event, Machine config,
+                              boolean compiled) {
+        if (event == null) {
+            return;
+        }
+        event.end();
+        event.compiled = compiled;
+        event.alphabetSize = config.alphabet().size();
+        event.rotors = config.allRotors().size();
+        event.commit();
+        Counters counters = LOCAL.get();
+        counters._configReads += 1;
+        counters._configNanos += event.elapsed();
+    }
+
+    /** Return a begun event recording the setting up of a machine from a
+     *  settings line, or null if measurements are disabled. */
+    static Reconfigure beginReconfigure() {
+        if (!ENABLED) {
+            return null;
+        }
+        Reconfigure event = new Reconfigure();
+        event.begin();
+        return event;
+    }
+
+    /** End EVENT, if not null, which has set up a machine from the
+     *  settings line SETTINGS. */
+    static void endReconfigure(Reconfigure event, String settings) {
+        if (event == null) {
+            return;
+        }
+        event.end();
+        event.settings = settings;
+        event.commit();
+        Counters counters = LOCAL.get();
+        counters._reconfigurations += 1;
+        counters._reconfigureNanos += event.elapsed();
+    }
+
+    /** Return the sum of the counters of all threads, approximate for
+     *  those still running. */
+    static synchronized Counters totals() {
+        Counters totals = new Counters(null);
+        totals.add(RETIRED);
+        for (Iterator<Counters> i = ALL.iterator(); i.hasNext(); ) {
+            Counters counters = i.next();
+            if (!counters._owner.isAlive()) {
+                RETIRED.add(counters);
+                i.remove();
+            }
+            totals.add(counters);
+        }
+        return totals;
+    }
+
+    /** Return a line summarizing the totals. */
+    static String summary() {
+        Counters totals = totals();
+        return String.format("enigma: %d chars (%.0f/s), steps by slot %s,"
+                             + " %d carries, %d double steps, %d settings"
+                             + " (%.1f us each), %d configurations read"
+                             + " (%.1f ms each)",
+                             totals._keystrokes,
+                             SUMMARY_RATE.perSecond(totals._keystrokes),
+                             Arrays.toString(totals._steps), totals._carries,
+                             totals._doubleSteps, totals._reconfigurations,
+                             mean(totals._reconfigureNanos,
+                                  totals._reconfigurations) / 1e3,
+                             totals._configReads,
+                             mean(totals._configNanos,
+                                  totals._configReads) / 1e6);
+    }
+
+    /** The counts of one thread, or their totals. */
+    static final class Counters {
+
+        /** Counters belonging to OWNER, or totals if it is null. */
+        Counters(Thread owner) {
+            _owner = owner;
+        }
+
+        /** Return my counts of steps by slot, with room for at least
+         *  SLOTS slots. */
+        long[] steps(int slots) {
+            if (_steps.length < slots) {
+                _steps = Arrays.copyOf(_steps, slots);
+            }
+            return _steps;
+        }
+
+        /** Add the counts of OTHER to mine. */
+        void add(Counters other) {
+            long[] steps = other._steps;
+            steps(steps.length);
+            for (int j = 0; j < steps.length; j += 1) {
+                _steps[j] += steps[j];
+            }
+            _keystrokes += other._keystrokes;
+            _carries += other._carries;
+            _doubleSteps += other._doubleSteps;
+            _reconfigurations += other._reconfigurations;
+            _reconfigureNanos += other._reconfigureNanos;
+            _configReads += other._configReads;
+            _configNanos += other._configNanos;
+        }
+
+        /** Return the number of keystrokes. */
+        long keystrokes() {
+            return _keystrokes;
+        }
+
+        /** Return the number of steps of slot J. */
+        long slotSteps(int j) {
+            return j < _steps.length ? _steps[j] : 0;
+        }
+
+        /** Return the number of carries. */
+        long carries() {
+            return _carries;
+        }
+
+        /** Return the number of double steps. */
+        long doubleSteps() {
+            return _doubleSteps;
+        }
+
+        /** Return the number of settings lines set up. */
+        long reconfigurations() {
+            return _reconfigurations;
+        }
+
+        /** Thread counting, or null for totals. */
+        private final Thread _owner;
+
+        /** Steps of each slot. */
+        private long[] _steps = new long[0];
+
+        /** Keystrokes converted. */
+        private long _keystrokes;
+
+        /** Keystrokes moving a slot other than the fast one. */
+        private long _carries;
+
+        /** Keystrokes moving a slot other than the fast one that also
+         *  moved at the keystroke before. */
+        private long _doubleSteps;
+
+        /** Settings lines set up, and the nanoseconds spent on them. */
+        private long _reconfigurations, _reconfigureNanos;
+
+        /** Configurations read, and the nanoseconds spent on them. */
+        private long _configReads, _configNanos;
+    }
+
+    /** A JFR event recording the reading of a configuration. */
+    @Name("enigma.ReadConfig")
+    @Label("Read Configuration")
+    @Category("Enigma")
+    @StackTrace(false)
+    static final class ReadConfig extends Event {
+        /** Whether the configuration was compiled. */
+        @Label("Compiled")
+        boolean compiled;
+
+        /** Size of its alphabet. */
+        @Label("Alphabet Size")
+        int alphabetSize;
+
+        /** Number of its rotors. */
+        @Label("Rotors")
+        int rotors;
+
+        /** Return the nanoseconds since my creation. */
+        private long elapsed() {
+            return System.nanoTime() - _start;
+        }
+
+        /** Time of my creation.  Transient, so not recorded. */
+        private final transient long _start = System.nanoTime();
+    }
+
+    /** A JFR event recording the setting up of a machine. */
+    @Name("enigma.Reconfigure")
+    @Label("Reconfigure")
+    @Category("Enigma")
+    @StackTrace(false)
+    static final class Reconfigure extends Event {
+        /** The settings line. */
+        @Label("Settings")
+        String settings;
+
+        /** Return the nanoseconds since my creation. */
+        private long elapsed() {
+            return System.nanoTime() - _start;
+        }
+
+        /** Time of my creation.  Transient, so not recorded. */
+        private final transient long _start = System.nanoTime();
+    }
+
+    /** A periodic JFR event recording the totals. */
+    @Name("enigma.Throughput")
+    @Label("Throughput")
+    @Category("Enigma")
+    @Description("Characters converted and rotor steps, for all threads")
+    @Period("1 s")
+    @StackTrace(false)
+    static final class Throughput extends Event {
+        /** Characters converted. */
+        @Label("Characters")
+        long characters;
+
+        /** Characters converted per second since the last event. */
+        @Label("Characters per Second")
+        double charactersPerSecond;
+
+        /** Steps of each slot. */
+        @Label("Steps by Slot")
+        String stepsBySlot;
+
+        /** Carries. */
+        @Label("Carries")
+        long carries;
+
+        /** Double steps. */
+        @Label("Double Steps")
+        long doubleSteps;
+
+        /** Mean time to set up a machine from a settings line. */
+        @Label("Mean Reconfiguration Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long meanReconfiguration;
+    }
+
+    /** The rate of growth of a total between readings. */
+    private static final class Rate {
+        /** Return the rate per second at which TOTAL has grown since my
+         *  last reading. */
+        synchronized double perSecond(long total) {
+            long now = System.nanoTime();
+            double rate = (total - _total) * 1e9 / Math.max(1, now - _time);
+            _total = total;
+            _time = now;
+            return rate;
+        }
+
+        /** Total at the last reading. */
+        private long _total;
+
+        /** Time of the last reading. */
+        private long _time = System.nanoTime();
+    }
+
+    /** Record a Throughput event. */
+    private static void recordThroughput() {
+        Counters totals = totals();
+        Throughput event = new Throughput();
+        event.characters = totals._keystrokes;
+        event.charactersPerSecond = JFR_RATE.perSecond(totals._keystrokes);
+        event.stepsBySlot = Arrays.toString(totals._steps);
+        event.carries = totals._carries;
+        event.doubleSteps = totals._doubleSteps;
+        event.meanReconfiguration = (long) mean(totals._reconfigureNanos,
+                                                totals._reconfigurations);
+        event.commit();
+    }
+
+    /** Write a summary line every INTERVAL seconds. */
+    private static void report() {
+        while (true) {
+            try {
+                Thread.sleep(INTERVAL * 1000L);
+            } catch (InterruptedException excp) {
+                return;
+            }
+            System.err.println(summary());
+        }
+    }
+
+    /** Return TOTAL / COUNT, or 0 if COUNT is 0. */
+    private static double mean(long total, long count) {
+        return count == 0 ? 0 : (double) total / count;
+    }
+
+    /** Counters of all live threads that have counted. */
+    private static final ConcurrentLinkedQueue<Counters> ALL =
+        new ConcurrentLinkedQueue<>();
+
+    /** Each thread's counters. */
+    private static final ThreadLocal<Counters> LOCAL =
+        ThreadLocal.withInitial(() -> {
+            Counters counters = new Counters(Thread.currentThread());
+            ALL.add(counters);
+            return counters;
+        });
+
+    /** Sum of the counters of threads that have ended. */
+    private static final Counters RETIRED = new Counters(null);
+
+    /** Rate of conversion between summary lines. */
+    private static final Rate SUMMARY_RATE = new Rate();
+
+    /** Rate of conversion between Throughput events. */
+    private static final Rate JFR_RATE = new Rate();
+
+    static {
+        if (ENABLED) {
+            FlightRecorder.addPeriodicEvent(Throughput.class,
+                                            Metrics::recordThroughput);
+            Thread reporter = new Thread(Metrics::report, "enigma-metrics");
+            reporter.setDaemon(true);
+            reporter.start();
+            Runtime.getRuntime().addShutdownHook(new Thread(
+                () -> System.err.println(summary())));
+        }
+    }
+}
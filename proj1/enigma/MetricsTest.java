@@ -0,0 +1,153 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Metrics class.
+ *  @author Preston Weber
+ */
+public class MetricsTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Settings of a reflector and three moving slots through a double
+     *  step: ADU, ADV, AEW, BFX, BFY, the middle slot moving on two
+     *  keystrokes running. */
+    private static final int[][] DOUBLE_STEP = {
+        {0, 0, 3, 20}, {0, 0, 3, 21}, {0, 0, 4, 22}, {0, 1, 5, 23},
+        {0, 1, 5, 24},
+    };
+
+    /** Count the keystrokes of DOUBLE_STEP with a new meter. */
+    private static void doubleStep() {
+        Metrics.Meter meter = new Metrics.Meter(DOUBLE_STEP[0]);
+        for (int k = 1; k < DOUBLE_STEP.length; k += 1) {
+            meter.keystroke(DOUBLE_STEP[k]);
+        }
+    }
+
+    /** Return the counts of AFTER less those of BEFORE, as the
+     *  keystrokes, the steps of each of four slots, the carries and the
+     *  double steps. */
+    private static long[] difference(Metrics.Counters before,
+                                     Metrics.Counters after) {
+        return new long[] {
+            after.keystrokes() - before.keystrokes(),
+            after.slotSteps(0) - before.slotSteps(0),
+            after.slotSteps(1) - before.slotSteps(1),
+            after.slotSteps(2) - before.slotSteps(2),
+            after.slotSteps(3) - before.slotSteps(3),
+            after.carries() - before.carries(),
+            after.doubleSteps() - before.doubleSteps(),
+        };
+    }
+
+    /** The counts of DOUBLE_STEP, as returned by difference. */
+    private static final long[] DOUBLE_STEP_COUNTS = {4, 0, 1, 2, 4, 2, 1};
+
+    /** Print the keystrokes, steps of slots 1 and 2, carries and double
+     *  steps counted for one keystroke of a three-slot machine, at NG
+     *  after advanceBy jumps 343 keystrokes past its first keystroke
+     *  from AA.  Run by testAdvanceBy in a separate process with
+     *  -Denigma.metrics=true, since ENABLED is fixed when Metrics is
+     *  loaded. */
+    public static void main(String... args) {
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        rotors.add(new Reflector("B", new Permutation(NAVALA.get("B"),
+                                                      UPPER)));
+        rotors.add(new MovingRotor("III",
+                                   new Permutation(NAVALA.get("III"),
+                                                   UPPER), "V"));
+        rotors.add(new MovingRotor("I", new Permutation(NAVALA.get("I"),
+                                                        UPPER), "Q"));
+        Machine machine = new Machine(UPPER, 3, 2, rotors);
+        machine.insertRotors(new String[] {"B", "III", "I"});
+        machine.setRotors("AA");
+        machine.setPlugboard(new Permutation("", UPPER));
+        machine.convert(0);
+        machine.advanceBy(343);
+        Metrics.Counters before = Metrics.totals();
+        String setting = machine.rotorSettings();
+        machine.convert(0);
+        Metrics.Counters after = Metrics.totals();
+        System.out.printf("%s %d %d %d %d %d%n", setting,
+                          after.keystrokes() - before.keystrokes(),
+                          after.slotSteps(1) - before.slotSteps(1),
+                          after.slotSteps(2) - before.slotSteps(2),
+                          after.carries() - before.carries(),
+                          after.doubleSteps() - before.doubleSteps());
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testAdvanceBy() throws Exception {
+        Process process = new ProcessBuilder(
+            System.getProperty("java.home") + File.separator + "bin"
+            + File.separator + "java", "-Denigma.metrics=true",
+            "-cp", System.getProperty("java.class.path"),
+            MetricsTest.class.getName())
+            .redirectError(ProcessBuilder.Redirect.DISCARD).start();
+        try (BufferedReader out = new BufferedReader(
+                 new InputStreamReader(process.getInputStream()))) {
+            assertEquals("NG 1 0 1 0 0", out.readLine());
+        }
+        assertEquals(0, process.waitFor());
+    }
+
+    @Test
+    public void testMeter() {
+        Metrics.Counters before = Metrics.totals();
+        doubleStep();
+        assertArrayEquals(DOUBLE_STEP_COUNTS,
+                          difference(before, Metrics.totals()));
+    }
+
+    @Test
+    public void testCounters() {
+        Metrics.Counters counters = new Metrics.Counters(null);
+        assertEquals(0, counters.slotSteps(5));
+        counters.steps(3)[2] += 7;
+        counters.steps(2)[1] += 1;
+        Metrics.Counters sum = new Metrics.Counters(null);
+        sum.add(counters);
+        sum.add(counters);
+        assertEquals(0, sum.slotSteps(0));
+        assertEquals(2, sum.slotSteps(1));
+        assertEquals(14, sum.slotSteps(2));
+        assertEquals(0, sum.slotSteps(3));
+    }
+
+    @Test
+    public void testFinishedThread() throws Exception {
+        Metrics.Counters before = Metrics.totals();
+        Thread counting = new Thread(MetricsTest::doubleStep);
+        counting.start();
+        counting.join();
+        assertArrayEquals(DOUBLE_STEP_COUNTS,
+                          difference(before, Metrics.totals()));
+        assertArrayEquals(DOUBLE_STEP_COUNTS,
+                          difference(before, Metrics.totals()));
+
+        counting = new Thread(MetricsTest::doubleStep);
+        counting.start();
+        counting.join();
+        long[] twice = difference(before, Metrics.totals());
+        for (int i = 0; i < twice.length; i += 1) {
+            assertEquals(2 * DOUBLE_STEP_COUNTS[i], twice[i]);
+        }
+    }
+}
@@ -13,6 +13,13 @@ class MovingRotor extends Rotor {
     /** Private variable alphabet for the alphabet of rotor. */
     private Alphabet _alphabet;
 
+    /** _notchAt[K] is true iff there is a notch at setting K. */
+    private boolean[] _notchAt;
+
+    /** _toNotch[K] is the number of advances from setting K to the
+     *  nearest notch at or after K, or -1 if I have no notches. */
+    private int[] _toNotch;
+
     /** Private variable permutation indicating
      * the permutations of the rotor. */
     private Permutation _permutation;
@@ -26,6 +33,13 @@ class MovingRotor extends Rotor {
         super(name, perm);
         _notches = notches;
         _permutation = perm;
+        setAlphabet(perm.alphabet());
+    }
+
+    /** Return the characters at whose settings I have notches, as given
+     *  when I was made. */
+    String notches() {
+        return _notches;
     }
 
     @Override
@@ -34,24 +48,36 @@ class MovingRotor extends Rotor {
     }
 
     @Override
-    void advance() {
-        super.set(super.mod(super.setting() + 1));
+    boolean atNotch(int setting) {
+        return _notchAt[setting];
     }
 
     @Override
-    boolean atNotch() {
-        boolean atN = false;
-
-        for (int i = 0; i < _notches.length(); i++) {
-            if (_alphabet.toInt(_notches.charAt(i)) == super.setting()) {
-                atN = true;
-            }
-        }
-        return atN;
+    int advancesToNotch(int setting) {
+        return _toNotch[setting];
     }
 
     @Override
     void setAlphabet(Alphabet alphabet) {
         _alphabet = alphabet;
+        _notchAt = new boolean[alphabet.size()];
+        for (int cp : _notches.codePoints().toArray()) {
+            int notch = _alphabet.indexOf(cp);
+            if (notch >= 0) {
+                _notchAt[notch] = true;
+            }
+        }
+
+        int size = _notchAt.length;
+        _toNotch = new int[size];
+        int next = -1;
+        for (int k = 2 * size - 1; k >= 0; k--) {
+            if (_notchAt[k % size]) {
+                next = k;
+            }
+            if (k < size) {
+                _toNotch[k] = next < 0 ? -1 : next - k;
+            }
+        }
     }
 }
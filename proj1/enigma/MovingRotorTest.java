@@ -24,10 +24,10 @@ public class MovingRotorTest {
     private String alpha = UPPER_STRING;
 
     /** Check that rotor has an alphabet whose size is that of
-     *  FROMALPHA and TOALPHA and that maps each character of
-     *  FROMALPHA to the corresponding character of FROMALPHA, and
-     *  vice-versa. TESTID is used in error messages. */
-    private void checkRotor(String testId,
+     *  FROMALPHA and TOALPHA and that, at setting SETTING, maps each
+     *  character of FROMALPHA to the corresponding character of
+     *  FROMALPHA, and vice-versa. TESTID is used in error messages. */
+    private void checkRotor(String testId, int setting,
                             String fromAlpha, String toAlpha) {
         int N = fromAlpha.length();
         assertEquals(testId + " (wrong length)", N, rotor.size());
@@ -35,9 +35,9 @@ public class MovingRotorTest {
             char c = fromAlpha.charAt(i), e = toAlpha.charAt(i);
             int ci = alpha.indexOf(c), ei = alpha.indexOf(e);
             assertEquals(msg(testId, "wrong translation of %d (%c)", ci, c),
-                         ei, rotor.convertForward(ci));
+                         ei, rotor.convertForward(ci, setting));
             assertEquals(msg(testId, "wrong inverse of %d (%c)", ei, e),
-                         ci, rotor.convertBackward(ei));
+                         ci, rotor.convertBackward(ei, setting));
         }
     }
 
@@ -54,20 +54,19 @@ public class MovingRotorTest {
     @Test
     public void checkRotorAtA() {
         setRotor("I", NAVALA, "");
-        checkRotor("Rotor I (A)", UPPER_STRING, NAVALA_MAP.get("I"));
+        checkRotor("Rotor I (A)", 0, UPPER_STRING, NAVALA_MAP.get("I"));
     }
 
     @Test
     public void checkRotorAdvance() {
         setRotor("I", NAVALA, "");
-        rotor.advance();
-        checkRotor("Rotor I advanced", UPPER_STRING, NAVALB_MAP.get("I"));
+        checkRotor("Rotor I advanced", 1, UPPER_STRING,
+                   NAVALB_MAP.get("I"));
     }
 
     @Test
     public void checkRotorSet() {
         setRotor("I", NAVALA, "");
-        rotor.set(25);
-        checkRotor("Rotor I set", UPPER_STRING, NAVALZ_MAP.get("I"));
+        checkRotor("Rotor I set", 25, UPPER_STRING, NAVALZ_MAP.get("I"));
     }
 }
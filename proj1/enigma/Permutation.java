@@ -1,5 +1,7 @@
 package enigma;
 
+import java.util.Arrays;
+
 import static enigma.EnigmaException.*;
 
 /** Represents a permutation of a range of integers starting at 0 corresponding
@@ -16,6 +18,30 @@ class Permutation {
     Permutation(String cycles, Alphabet alphabet) {
         _alphabet = alphabet;
         _cycles = split(cycles);
+        compile();
+    }
+
+    /** Set this Permutation to the one mapping each index I of ALPHABET
+     *  to FORWARD[I].  FORWARD must hold every index of ALPHABET exactly
+     *  once. */
+    Permutation(int[] forward, Alphabet alphabet) {
+        if (forward.length != alphabet.size()) {
+            throw error("permutation of the wrong size");
+        }
+        boolean[] seen = new boolean[forward.length];
+        for (int v : forward) {
+            if (v < 0 || v >= forward.length || seen[v]) {
+                throw error("not a permutation");
+            }
+            seen[v] = true;
+        }
+        _alphabet = alphabet;
+        _forward = forward.clone();
+        _inverse = new int[forward.length];
+        for (int i = 0; i < forward.length; i += 1) {
+            _inverse[forward[i]] = i;
+        }
+        findDerangement();
     }
 
     /** Add the cycle c0->c1->...->cm->c0 to the permutation, where CYCLE is
@@ -25,6 +51,7 @@ class Permutation {
             return;
         }
 
+        cycles();
         int newLen = _cycles.length + 1;
         String[] addedCycle = new String[newLen];
 
@@ -34,6 +61,7 @@ class Permutation {
 
         addedCycle[_cycles.length] = cycle;
         _cycles = addedCycle;
+        compile();
     }
 
     /** Return the value of P modulo the size of this permutation. */
@@ -50,8 +78,26 @@ class Permutation {
         return _alphabet.size();
     }
 
-    /** Returns the cycles. */
+    /** Returns the cycles.  Those of a permutation built from a table
+     *  are found when first asked for. */
     String[] cycles() {
+        if (_cycles == null) {
+            int[] lengths = cycleLengths(_forward);
+            _cycles = new String[lengths.length];
+            boolean[] seen = new boolean[size()];
+            int k = 0;
+            for (int start = 0; start < seen.length; start += 1) {
+                if (!seen[start]) {
+                    StringBuilder cycle = new StringBuilder();
+                    for (int i = start; !seen[i]; i = _forward[i]) {
+                        seen[i] = true;
+                        cycle.appendCodePoint(_alphabet.toCodePoint(i));
+                    }
+                    _cycles[k] = cycle.toString();
+                    k += 1;
+                }
+            }
+        }
         return _cycles;
     }
 
@@ -63,93 +109,155 @@ class Permutation {
     /** Return the result of applying this permutation to P modulo the
      *  alphabet size. */
     int permute(int p) {
-        char pIn = _alphabet.toChar(p);
-        char pOut = permute(pIn);
-        return  _alphabet.toInt(pOut);
+        return _forward[wrap(p)];
     }
 
     /** Return the result of applying the inverse of this permutation
      *  to C modulo the alphabet size. */
     int invert(int c) {
-        char cIn = _alphabet.toChar(c);
-        char cOut = invert(cIn);
-        return _alphabet.toInt(cOut);
+        return _inverse[wrap(c)];
     }
 
     /** Return the result of applying this permutation to the index of P
      *  in ALPHABET, and converting the result to a character of ALPHABET. */
     char permute(char p) {
-        char result = p;
-
-        if (!derangement()) {
-            for (int a = 0; a < _cycles.length; a++) {
-                if (_cycles[a].length() == 1) {
-                    if (_cycles[a].charAt(0) == p) {
-                        return _cycles[a].charAt(0);
-                    }
-                }
-            }
-        }
-
-        for (int i = 0; i < _cycles.length; i++) {
-            for (int j = 0; j < _cycles[i].length(); j++) {
-                if (_cycles[i].charAt(j) == p) {
-                    if (j == _cycles[i].length() - 1) {
-                        result = _cycles[i].charAt(0);
-                    } else {
-                        result = _cycles[i].charAt(j + 1);
-                    }
-                }
-            }
+        int index = _alphabet.toInt(p);
+        if (index < 0) {
+            return p;
         }
-        return result;
+        return _alphabet.toChar(_forward[index]);
     }
 
     /** Return the result of applying the inverse of this permutation to C. */
     char invert(char c) {
-        char result = c;
+        int index = _alphabet.toInt(c);
+        if (index < 0) {
+            return c;
+        }
+        return _alphabet.toChar(_inverse[index]);
+    }
 
-        if (!derangement()) {
-            for (int a = 0; a < _cycles.length; a++) {
-                if (_cycles[a].length() == 1) {
-                    if (_cycles[a].charAt(0) == c) {
-                        return _cycles[a].charAt(0);
-                    }
-                }
-            }
+    /** Return the table mapping each index I to permute(I).  The array
+     *  is my own, and must not be modified; it is replaced whenever a
+     *  cycle is added. */
+    int[] forwardTable() {
+        return _forward;
+    }
+
+    /** Return the table mapping each index C to invert(C).  The array
+     *  is my own, and must not be modified; it is replaced whenever a
+     *  cycle is added. */
+    int[] inverseTable() {
+        return _inverse;
+    }
+
+    /** Return the permutation that applies me and then NEXT, which must
+     *  permute the same alphabet. */
+    Permutation compose(Permutation next) {
+        if (next.size() != size()) {
+            throw error("permutations of different sizes");
+        }
+        int[] composed = new int[size()];
+        for (int i = 0; i < composed.length; i += 1) {
+            composed[i] = next._forward[_forward[i]];
         }
+        return new Permutation(composed, _alphabet);
+    }
 
-        for (int i = 0; i < _cycles.length; i++) {
-            for (int j = 0; j < _cycles[i].length(); j++) {
-                if (_cycles[i].charAt(j) == c) {
-                    if (j == 0) {
-                        result = _cycles[i].charAt(_cycles[i].length() - 1);
-                    } else {
-                        result = _cycles[i].charAt(j - 1);
-                    }
+    /** Return the lengths of my cycles, counting each character mapped
+     *  to itself as a cycle of length 1, longest first. */
+    int[] cycleLengths() {
+        return cycleLengths(_forward);
+    }
+
+    /** Return the lengths of the cycles of the permutation mapping each
+     *  I to FORWARD[I], fixed points included, longest first. */
+    static int[] cycleLengths(int[] forward) {
+        int[] lengths = new int[forward.length];
+        boolean[] seen = new boolean[forward.length];
+        int count = 0;
+        for (int start = 0; start < forward.length; start += 1) {
+            if (!seen[start]) {
+                int length = 0;
+                for (int i = start; !seen[i]; i = forward[i]) {
+                    seen[i] = true;
+                    length += 1;
                 }
+                lengths[count] = length;
+                count += 1;
             }
         }
-        return result;
+        lengths = Arrays.copyOf(lengths, count);
+        Arrays.sort(lengths);
+        for (int i = 0, j = count - 1; i < j; i += 1, j -= 1) {
+            int tmp = lengths[i];
+            lengths[i] = lengths[j];
+            lengths[j] = tmp;
+        }
+        return lengths;
     }
 
     /** Return true iff this permutation is a derangement (i.e., a
      *  permutation for which no value maps to itself). */
     boolean derangement() {
-        for (int i = 0; i < _cycles.length; i++) {
-            if (_cycles[i].length() == 1) {
-                return false;
-            }
-        }
-        return true;
+        return _derangement;
     }
 
     /** Alphabet of this permutation. */
     private Alphabet _alphabet;
 
-    /** Cycles of this permutation. */
+    /** Cycles of this permutation, or null if they have not been found
+     *  from _forward yet. */
     private String[] _cycles;
 
+    /** Forward mapping of this permutation: index I maps to _forward[I]. */
+    private int[] _forward;
+
+    /** Inverse mapping of this permutation: _inverse[_forward[I]] == I. */
+    private int[] _inverse;
+
+    /** True iff no index maps to itself. */
+    private boolean _derangement;
+
+    /** Compile _cycles into the _forward and _inverse tables, so that
+     *  lookups never have to scan the cycle strings.  The cycles are
+     *  read by code point, so supplementary characters may appear in
+     *  them.  Characters that are not in my alphabet are ignored. */
+    private void compile() {
+        int size = size();
+        _forward = new int[size];
+        _inverse = new int[size];
+        for (int i = 0; i < size; i++) {
+            _forward[i] = i;
+            _inverse[i] = i;
+        }
+
+        for (String cycle : _cycles) {
+            int[] members = cycle.codePoints().toArray();
+            for (int j = 0; j < members.length; j++) {
+                int from = _alphabet.indexOf(members[j]);
+                int to = _alphabet.indexOf(members[(j + 1) % members.length]);
+                if (from >= 0 && to >= 0) {
+                    _forward[from] = to;
+                    _inverse[to] = from;
+                }
+            }
+        }
+        findDerangement();
+    }
+
+    /** Set _derangement according to _forward. */
+    private void findDerangement() {
+        int size = size();
+        _derangement = true;
+        for (int i = 0; i < size; i++) {
+            if (_forward[i] == i) {
+                _derangement = false;
+                break;
+            }
+        }
+    }
+
     /** Private method to split the String and turn it into a String[].
      * @param cycle input String
      * @return String []
@@ -123,4 +123,59 @@ public class PermutationTest {
 
         assertEquals(p.permute('C'), 'J');
     }
+
+    @Test
+    public void testDerangement() {
+        Permutation p = new Permutation(
+                "(PNH) (ABDFIKLZYXW) (JC)", new Alphabet());
+        assertFalse(p.derangement());
+
+        Permutation a = new Permutation("(AB) (C)", new Alphabet("ABCD"));
+        assertFalse(a.derangement());
+        a.addCycle("CD");
+        assertTrue(a.derangement());
+        assertEquals(3, a.permute(2));
+        assertEquals(2, a.invert(3));
+    }
+
+    @Test
+    public void testCompose() {
+        Alphabet abcd = new Alphabet("ABCD");
+        Permutation a = new Permutation("(AB) (CD)", abcd);
+        Permutation d = new Permutation("(AC) (BD)", abcd);
+        Permutation ad = a.compose(d);
+        assertEquals('D', ad.permute('A'));
+        assertEquals('C', ad.permute('B'));
+        assertEquals('A', ad.permute('D'));
+        assertArrayEquals(new int[] {2, 2}, ad.cycleLengths());
+
+        Permutation p = new Permutation(new int[] {1, 2, 0, 3}, abcd);
+        assertEquals('B', p.permute('A'));
+        assertEquals('A', p.invert('B'));
+        assertFalse(p.derangement());
+        assertArrayEquals(new int[] {3, 1}, p.cycleLengths());
+        assertArrayEquals(new int[] {1, 1, 1, 1},
+                          new Permutation("", abcd).cycleLengths());
+    }
+
+    @Test
+    public void testSupplementaryCharacters() {
+        Alphabet wide = new Alphabet("A\uD83D\uDE00B\uD801\uDC00");
+        Permutation p = new Permutation("(A\uD83D\uDE00\uD801\uDC00)",
+                                        wide);
+        assertEquals(4, wide.size());
+        assertEquals(1, p.permute(0));
+        assertEquals(3, p.permute(1));
+        assertEquals(0, p.permute(3));
+        assertEquals(2, p.permute(2));
+        assertEquals(3, p.invert(0));
+        assertEquals("\uD83D\uDE00", wide.symbol(1));
+        assertEquals('B', wide.toChar(2));
+        try {
+            wide.toChar(1);
+            fail("supplementary character truncated to a char");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+    }
 }
@@ -0,0 +1,183 @@
+package enigma;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+
+import static enigma.EnigmaException.*;
+
+/** A scorer giving the log probability of a text under a model of
+ *  plaintext built from the frequencies of its four-character sequences
+ *  (quadgrams).  The table of log probabilities is one flat float array
+ *  indexed by the quadgram's characters as the digits of a number in
+ *  base alphabet size, so scoring a text is one table lookup per
+ *  character, with no allocation.  Tables are kept in a compact binary
+ *  file (see save), which is memory-mapped and copied into the array in
+ *  one bulk transfer when loaded.
+ *  @author Preston Weber
+ */
+public final class Quadgrams implements Scorer {
+
+    /** Compile the quadgrams of a corpus, as specified by ARGS, where
+     *  ARGS.length = 3.  ARGS[0] is the name of a configuration file
+     *  whose alphabet the table is for, ARGS[1] the name of a file
+     *  holding the corpus (characters outside the alphabet are ignored)
+     *  and ARGS[2] the name of the table file to write.  Exits normally
+     *  if there are no errors; otherwise with code 1. */
+    public static void main(String... args) {
+        try {
+            if (args.length != 3) {
+                throw error("Only 3 command-line arguments allowed");
+            }
+            Alphabet alphabet = Main.configure(args[0]).alphabet();
+            count(alphabet, Main.readFile(args[1])).save(args[2]);
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Magic number at the start of every table file ("ENQG"). */
+    static final int MAGIC = 0x454e5147;
+
+    /** A scorer for texts over ALPHABET with the log probabilities
+     *  LOGPROBS, indexed as described above. */
+    Quadgrams(Alphabet alphabet, float[] logProbs) {
+        int size = alphabet.size();
+        if (cells(size) != logProbs.length) {
+            throw error("quadgram table does not fit its alphabet");
+        }
+        _alphabet = alphabet;
+        _size = size;
+        _cube = size * size * size;
+        _logProbs = logProbs;
+    }
+
+    /** Return the scorer for the quadgrams of CORPUS over ALPHABET,
+     *  skipping the characters of CORPUS outside ALPHABET.  Quadgrams
+     *  that never occur are given the log probability of a hundredth of
+     *  an occurrence. */
+    static Quadgrams count(Alphabet alphabet, String corpus) {
+        int size = alphabet.size();
+        if (cells(size) > Integer.MAX_VALUE - 8) {
+            throw error("alphabet too large for a quadgram table");
+        }
+        int cube = size * size * size;
+        int[] counts = new int[(int) cells(size)];
+        long total = 0;
+        int index = 0, run = 0;
+        for (int i = 0; i < corpus.length(); i += 1) {
+            int c = alphabet.indexOf(corpus.charAt(i));
+            if (c < 0) {
+                continue;
+            }
+            index = (index % cube) * size + c;
+            run += 1;
+            if (run >= 4) {
+                counts[index] += 1;
+                total += 1;
+            }
+        }
+        if (total == 0) {
+            throw error("corpus holds no quadgrams");
+        }
+        float[] logProbs = new float[counts.length];
+        for (int q = 0; q < counts.length; q += 1) {
+            double count = counts[q] == 0 ? 0.01 : counts[q];
+            logProbs[q] = (float) Math.log10(count / total);
+        }
+        return new Quadgrams(alphabet, logProbs);
+    }
+
+    /** Return the table in the file named NAME, written by save, for
+     *  texts over ALPHABET. */
+    static Quadgrams load(Alphabet alphabet, String name) {
+        try (FileChannel file = FileChannel.open(Paths.get(name))) {
+            MappedByteBuffer map =
+                file.map(FileChannel.MapMode.READ_ONLY, 0, file.size());
+            if (map.remaining() < 8 || map.getInt() != MAGIC) {
+                throw error("%s is not a quadgram table", name);
+            }
+            int size = map.getInt();
+            if (size != alphabet.size() || map.remaining() < 4L * size
+                || cells(size) > Integer.MAX_VALUE - 8) {
+                throw error("%s is for another alphabet", name);
+            }
+            for (int c = 0; c < size; c += 1) {
+                if (map.getInt() != alphabet.toCodePoint(c)) {
+                    throw error("%s is for another alphabet", name);
+                }
+            }
+            float[] logProbs = new float[(int) cells(size)];
+            if (map.remaining() != 4L * logProbs.length) {
+                throw error("%s is truncated", name);
+            }
+            map.asFloatBuffer().get(logProbs);
+            return new Quadgrams(alphabet, logProbs);
+        } catch (IOException excp) {
+            throw error("could not read %s", name);
+        }
+    }
+
+    /** Write my table to the file named NAME: the int MAGIC, the size of
+     *  my alphabet, the code point of each of its characters, and then
+     *  the log probability of each quadgram as a float, all big-endian. */
+    void save(String name) {
+        try (DataOutputStream out = new DataOutputStream(
+                 new BufferedOutputStream(new FileOutputStream(name)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(_size);
+            for (int c = 0; c < _size; c += 1) {
+                out.writeInt(_alphabet.toCodePoint(c));
+            }
+            ByteBuffer chunk = ByteBuffer.allocate(4 * _cube);
+            for (int q = 0; q < _logProbs.length; q += _cube) {
+                chunk.clear();
+                chunk.asFloatBuffer().put(_logProbs, q, _cube);
+                out.write(chunk.array());
+            }
+        } catch (IOException excp) {
+            throw error("could not write %s", name);
+        }
+    }
+
+    /** Return the number of quadgrams over an alphabet of SIZE
+     *  characters. */
+    private static long cells(int size) {
+        return (long) size * size * size * size;
+    }
+
+    @Override
+    public double score(int[] text, int len) {
+        if (len < 4) {
+            return 0.0;
+        }
+        int index = (text[0] * _size + text[1]) * _size + text[2];
+        double total = 0.0;
+        for (int i = 3; i < len; i += 1) {
+            int quadgram = index * _size + text[i];
+            total += _logProbs[quadgram];
+            index = quadgram - text[i - 3] * _cube;
+        }
+        return total;
+    }
+
+    /** Alphabet of the texts scored. */
+    private final Alphabet _alphabet;
+
+    /** Size of _alphabet. */
+    private final int _size;
+
+    /** Cube of _size: the place value of a quadgram's first
+     *  character. */
+    private final int _cube;
+
+    /** Log probability of each quadgram. */
+    private final float[] _logProbs;
+}
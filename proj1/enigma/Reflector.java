@@ -19,15 +19,8 @@ class Reflector extends FixedRotor {
     }
 
     @Override
-    int convertBackward(int e) {
+    int convertBackward(int e, int setting) {
         throw error("reflector doesn't convert backward, only forward.");
     }
 
-    @Override
-    void set(int posn) {
-        if (posn != 0) {
-            throw error("reflector has only one position");
-        }
-    }
-
 }
@@ -2,7 +2,10 @@ package enigma;
 
 import static enigma.EnigmaException.*;
 
-/** Superclass that represents a rotor in the enigma machine.
+/** Superclass that represents a rotor in the enigma machine.  A rotor
+ *  has no setting of its own: the machine holding it keeps the setting
+ *  of each of its slots and passes it in, so one rotor can serve any
+ *  number of machines at once.
  *  @author Preston Weber
  */
 class Rotor {
@@ -11,7 +14,6 @@ class Rotor {
     Rotor(String name, Permutation perm) {
         _name = name;
         _permutation = perm;
-        _setting = 0;
     }
 
     /** Return my name. */
@@ -44,49 +46,38 @@ class Rotor {
         return false;
     }
 
-    /** Return my current setting. */
-    int setting() {
-        return _setting;
-    }
-
-    /** Set setting() to POSN.  */
-    void set(int posn) {
-        _setting = mod(posn);
-    }
-
-    /** Set setting() to character CPOSN. */
-    void set(char cposn) {
-        _setting = mod(_permutation.alphabet().toInt(cposn));
-    }
-
     /** Return the conversion of P (an integer in the range 0..size()-1)
-     *  according to my permutation. */
-    int convertForward(int p) {
-        int cEntered = mod(p + _setting);
+     *  according to my permutation, when my setting is SETTING. */
+    int convertForward(int p, int setting) {
+        int cEntered = mod(p + setting);
         int cExited = _permutation.permute(cEntered);
-        int pExited = mod(cExited - _setting);
+        int pExited = mod(cExited - setting);
 
         return pExited;
     }
 
     /** Return the conversion of E (an integer in the range 0..size()-1)
-     *  according to the inverse of my permutation. */
-    int convertBackward(int e) {
-        int cEntered = mod(e + _setting);
+     *  according to the inverse of my permutation, when my setting is
+     *  SETTING. */
+    int convertBackward(int e, int setting) {
+        int cEntered = mod(e + setting);
         int cExited = _permutation.invert(cEntered);
-        int pExited = mod(cExited - _setting);
+        int pExited = mod(cExited - setting);
 
         return pExited;
     }
 
-    /** Returns true iff I am positioned to allow the rotor to my left
-     *  to advance. */
-    boolean atNotch() {
+    /** Returns true iff I would allow the rotor to my left to advance
+     *  at setting SETTING.  By default, I have no notches. */
+    boolean atNotch(int setting) {
         return false;
     }
 
-    /** Advance me one position, if possible. By default, does nothing. */
-    void advance() {
+    /** Returns the number of times I must advance from setting SETTING
+     *  before I am at a notch, or -1 if that never happens.  By default,
+     *  I have no notches. */
+    int advancesToNotch(int setting) {
+        return -1;
     }
 
 
@@ -101,9 +92,6 @@ class Rotor {
     /** The permutation implemented by this rotor in its 0 position. */
     private Permutation _permutation;
 
-    /** Setting of the rotor in its position. */
-    private int _setting;
-
     /** Method to find the mod of a given number.
      * @param x the number to be modded.
      * @return the modded number.*/
@@ -0,0 +1,33 @@
+package enigma;
+
+import java.util.Arrays;
+
+/** A measure of how much a candidate decryption looks like plaintext.
+ *  Higher scores are better.
+ *  @author Preston Weber
+ */
+interface Scorer {
+
+    /** Return the score of the first LEN alphabet indices in TEXT. */
+    double score(int[] text, int len);
+
+    /** Return a scorer giving the index of coincidence of texts over an
+     *  alphabet of SIZE characters: the probability that two characters
+     *  drawn from different positions of the text are equal.  The
+     *  scorer reuses one table of counts, so it must not be shared
+     *  between threads. */
+    static Scorer indexOfCoincidence(int size) {
+        int[] counts = new int[size];
+        return (text, len) -> {
+            Arrays.fill(counts, 0);
+            for (int i = 0; i < len; i += 1) {
+                counts[text[i]] += 1;
+            }
+            long pairs = 0;
+            for (int count : counts) {
+                pairs += (long) count * (count - 1);
+            }
+            return len < 2 ? 0.0 : (double) pairs / ((long) len * (len - 1));
+        };
+    }
+}
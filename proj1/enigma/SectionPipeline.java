@@ -0,0 +1,129 @@
+package enigma;
+
+import java.io.CharArrayWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static enigma.EnigmaException.*;
+
+/** Converts independent pieces of messages concurrently on a bounded
+ *  pool of worker threads, writing their formatted output in the order
+ *  in which the pieces were submitted.
+ *  @author Preston Weber
+ */
+class SectionPipeline {
+
+    /** A piece of work whose formatted output goes to a buffer. */
+    interface Piece {
+        /** Write my formatted output to OUT, throwing an EnigmaException
+         *  if I fail after writing some of it. */
+        void run(Writer out);
+    }
+
+    /** Number of submitted pieces per worker that may be awaiting
+     *  output before submit waits for the oldest one. */
+    static final int PENDING_PER_WORKER = 2;
+
+    /** A pipeline running pieces on WORKERS threads and writing their
+     *  output to OUT. */
+    SectionPipeline(int workers, Writer out) {
+        _workers = Executors.newFixedThreadPool(workers, r -> {
+            Thread thread = new Thread(r, "enigma-section");
+            thread.setDaemon(true);
+            return thread;
+        });
+        _maxPending = PENDING_PER_WORKER * workers;
+        _out = out;
+    }
+
+    /** Schedule PIECE.  If too many pieces are outstanding, first waits
+     *  for and writes the output of the oldest ones. */
+    void submit(Piece piece) {
+        while (_pending.size() >= _maxPending) {
+            writeOldest();
+        }
+        CharArrayWriter output = new CharArrayWriter();
+        _outputs.add(output);
+        _pending.add(_workers.submit(() -> piece.run(output)));
+    }
+
+    /** Write the output of all outstanding pieces, flush my output,
+     *  and stop my workers.  If a piece fails, the output of the pieces
+     *  before it, and what it wrote before failing, is still flushed. */
+    void finish() {
+        try {
+            while (!_pending.isEmpty()) {
+                writeOldest();
+            }
+        } finally {
+            _workers.shutdownNow();
+            try {
+                _out.flush();
+            } catch (IOException excp) {
+                throw error("could not write output: %s",
+                            excp.getMessage());
+            }
+        }
+    }
+
+    /** Wait for the oldest outstanding piece and write its output.
+     *  Errors in the piece are rethrown here, after what it wrote before
+     *  failing, so that the output is that of converting the pieces one
+     *  after another. */
+    private void writeOldest() {
+        Future<?> oldest = _pending.remove();
+        CharArrayWriter output = _outputs.remove();
+        try {
+            try {
+                oldest.get();
+            } finally {
+                if (oldest.isDone() && !oldest.isCancelled()) {
+                    output.writeTo(_out);
+                }
+            }
+        } catch (ExecutionException excp) {
+            abandon();
+            if (excp.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) excp.getCause();
+            }
+            throw error("section failed: %s", excp.getCause());
+        } catch (InterruptedException excp) {
+            abandon();
+            throw error("interrupted while converting sections");
+        } catch (IOException excp) {
+            abandon();
+            throw error("could not write output: %s", excp.getMessage());
+        }
+    }
+
+    /** Discard all outstanding pieces, whose output must not follow
+     *  that of a failed piece, and stop my workers. */
+    private void abandon() {
+        for (Future<?> piece : _pending) {
+            piece.cancel(true);
+        }
+        _pending.clear();
+        _outputs.clear();
+        _workers.shutdownNow();
+    }
+
+    /** Threads converting sections. */
+    private final ExecutorService _workers;
+
+    /** Largest number of pieces awaiting output. */
+    private final int _maxPending;
+
+    /** Completions of submitted pieces, oldest first. */
+    private final ArrayDeque<Future<?>> _pending = new ArrayDeque<>();
+
+    /** Output buffers of the pieces in _pending, in the same order. */
+    private final ArrayDeque<CharArrayWriter> _outputs = new ArrayDeque<>();
+
+    /** Destination of formatted output. */
+    private final Writer _out;
+}
@@ -0,0 +1,304 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static enigma.EnigmaException.*;
+
+/** A long-running Enigma service on a local socket, so that messages
+ *  can be converted without starting a process and reading a
+ *  configuration for each.  Each connection is a session, which sends
+ *  lines in the format of Main's input and receives the converted
+ *  message lines, in groups of five, as Main would write them.  A
+ *  session may also send a line "@ NAME" to use the configuration file
+ *  NAME in the server's configuration directory for its following
+ *  settings lines; until it does, it uses the server's default
+ *  configuration, if any.  Names of files outside that directory are
+ *  refused, as is every name if the server has no directory.  An
+ *  erroneous line is answered with a line "Error: " followed by a
+ *  description, and the session continues.  Output is flushed whenever
+ *  the session has sent nothing more, so short messages are answered at
+ *  once and long ones streamed.
+ *
+ *  The most recently used configurations are kept once read and shared
+ *  by every session; each session has its own copy of the machine,
+ *  whose compiled rotors are shared too.  Sessions run on virtual
+ *  threads where the Java runtime has them, and otherwise on a pool of
+ *  platform threads.
+ *  @author Preston Weber
+ */
+public final class Server {
+
+    /** Serve sessions, as specified by ARGS, where 1 <= ARGS.length <=
+     *  3.  ARGS[0] is either a port number, on which to listen for TCP
+     *  connections on the loopback interface, or the path of a
+     *  Unix-domain socket to create, which is deleted when the server
+     *  stops.  ARGS[1] and ARGS[2], when present, are the default
+     *  configuration file and the configuration directory, in either
+     *  order: whichever names a directory is the latter.  Runs until
+     *  killed; exits with code 1 if the socket cannot be opened. */
+    public static void main(String... args) {
+        try {
+            if (args.length < 1 || args.length > 3) {
+                throw error("Only 1 to 3 command-line arguments allowed");
+            }
+            String defaultConfig = null, configDir = null;
+            for (int i = 1; i < args.length; i += 1) {
+                if (Files.isDirectory(Paths.get(args[i]))) {
+                    if (configDir != null) {
+                        throw error("only one configuration directory"
+                                    + " allowed");
+                    }
+                    configDir = args[i];
+                } else {
+                    if (defaultConfig != null) {
+                        throw error("only one default configuration"
+                                    + " allowed");
+                    }
+                    defaultConfig = args[i];
+                }
+            }
+            Server server = new Server(defaultConfig, configDir);
+            try (ServerSocketChannel channel = open(args[0])) {
+                Path socket = socketFile(channel);
+                if (socket != null) {
+                    Runtime.getRuntime().addShutdownHook(
+                        new Thread(() -> deleteSocket(socket)));
+                }
+                server.serve(channel);
+            } catch (IOException excp) {
+                throw error("could not listen on %s: %s", args[0],
+                            excp.getMessage());
+            }
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** A server whose sessions start with the configuration file named
+     *  DEFAULTCONFIG, or with none if it is null, and may choose the
+     *  configuration files in the directory named CONFIGDIR, or none if
+     *  it is null.  The default configuration is read at once, so that
+     *  errors in it are reported before any session starts. */
+    Server(String defaultConfig, String configDir) {
+        _defaultConfig =
+            defaultConfig == null ? null : Main.configure(defaultConfig);
+        try {
+            _configDir = configDir == null ? null
+                : Paths.get(configDir).toAbsolutePath().normalize();
+        } catch (InvalidPathException excp) {
+            throw error("bad configuration directory: %s", configDir);
+        }
+    }
+
+    /** Serve each session connecting to SERVER until it is closed,
+     *  deleting SERVER's socket file, if it is a Unix-domain socket,
+     *  when it is. */
+    void serve(ServerSocketChannel server) throws IOException {
+        Path socket = socketFile(server);
+        ExecutorService sessions = sessionExecutor();
+        try {
+            while (true) {
+                SocketChannel client = server.accept();
+                sessions.execute(() -> session(client));
+            }
+        } catch (ClosedChannelException excp) {
+            /* Shut down. */
+        } finally {
+            sessions.shutdown();
+            deleteSocket(socket);
+        }
+    }
+
+    /** Return the machine configured by the file named NAME in my
+     *  configuration directory, with no rotors inserted, reading it
+     *  unless it is among the CONFIG_CACHE_SIZE configurations used
+     *  most recently.  The machine must only be copied. */
+    Machine config(String name) {
+        if (_configDir == null) {
+            throw error("no configuration directory");
+        }
+        Path file;
+        try {
+            file = _configDir.resolve(name).normalize();
+        } catch (InvalidPathException excp) {
+            file = null;
+        }
+        if (file == null || !_configDir.equals(file.getParent())) {
+            throw error("%s is not in the configuration directory", name);
+        }
+        Machine config = _configs.get(file);
+        if (config == null) {
+            config = Main.configure(file.toString());
+            _configs.put(file, config);
+        }
+        return config;
+    }
+
+    /** Conduct the session with CLIENT. */
+    private void session(SocketChannel client) {
+        Charset charset = Charset.defaultCharset();
+        try (client;
+             BufferedReader in = new BufferedReader(
+                 Channels.newReader(client, charset.newDecoder(), -1));
+             Writer out =
+                 Channels.newWriter(client, charset.newEncoder(), -1)) {
+            GroupedWriter writer = new GroupedWriter(out, BUFFER_SIZE);
+            Machine config = null, machine = null;
+            char[] message = new char[0];
+            for (String line = in.readLine(); line != null;
+                 line = in.readLine()) {
+                try {
+                    if (line.startsWith("@")) {
+                        config = config(line.substring(1).trim());
+                        machine = null;
+                    } else if (line.startsWith("*")) {
+                        if (config == null && _defaultConfig == null) {
+                            throw error("no configuration chosen");
+                        } else if (config == null) {
+                            config = _defaultConfig;
+                        }
+                        machine = config.copy();
+                        Main.setUp(machine, line);
+                    } else if (machine == null) {
+                        throw error("No Configuration Present.");
+                    } else {
+                        if (message.length < line.length()) {
+                            message = new char[line.length()];
+                        }
+                        int count = 0;
+                        for (int i = 0; i < line.length(); i += 1) {
+                            if (line.charAt(i) != ' ') {
+                                message[count] = line.charAt(i);
+                                count += 1;
+                            }
+                        }
+                        machine.convert(message, 0, message, 0, count);
+                        writer.write(message, 0, count);
+                        writer.endLine();
+                    }
+                } catch (EnigmaException excp) {
+                    writer.flush();
+                    out.write("Error: " + excp.getMessage()
+                              + System.lineSeparator());
+                }
+                if (!in.ready()) {
+                    writer.flush();
+                }
+            }
+            writer.flush();
+        } catch (IOException | EnigmaException excp) {
+            /* The client has gone. */
+        }
+    }
+
+    /** Return a new server socket listening on ADDRESS: a port number on
+     *  the loopback interface, or else the path of a Unix-domain
+     *  socket. */
+    static ServerSocketChannel open(String address) throws IOException {
+        int port;
+        try {
+            port = Integer.parseInt(address);
+        } catch (NumberFormatException excp) {
+            return ServerSocketChannel.open(StandardProtocolFamily.UNIX)
+                .bind(UnixDomainSocketAddress.of(address));
+        }
+        return ServerSocketChannel.open().bind(
+            new InetSocketAddress(InetAddress.getLoopbackAddress(), port),
+            BACKLOG);
+    }
+
+    /** Return the path of the socket file of SERVER, if it is a
+     *  Unix-domain socket, and otherwise null. */
+    private static Path socketFile(ServerSocketChannel server)
+        throws IOException {
+        if (server.getLocalAddress() instanceof UnixDomainSocketAddress) {
+            return ((UnixDomainSocketAddress) server.getLocalAddress())
+                .getPath();
+        }
+        return null;
+    }
+
+    /** Delete the socket file SOCKET, unless it is null. */
+    private static void deleteSocket(Path socket) {
+        try {
+            if (socket != null) {
+                Files.deleteIfExists(socket);
+            }
+        } catch (IOException excp) {
+            /* Nothing more can be done. */
+        }
+    }
+
+    /** Return an executor running each task on a new virtual thread, if
+     *  this Java runtime has them, and otherwise on a pool of daemon
+     *  platform threads. */
+    private static ExecutorService sessionExecutor() {
+        try {
+            return (ExecutorService) Executors.class
+                .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException excp) {
+            return Executors.newCachedThreadPool(task -> {
+                Thread thread = new Thread(null, task, "enigma-session",
+                                           SESSION_STACK_SIZE);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /** Size of each session's output buffer.  Small, since sessions are
+     *  many and flushed often. */
+    private static final int BUFFER_SIZE = 1 << 10;
+
+    /** Number of connections waiting to be accepted. */
+    private static final int BACKLOG = 1 << 12;
+
+    /** Stack size requested for session threads when they are platform
+     *  threads, so that many sessions fit. */
+    private static final long SESSION_STACK_SIZE = 1 << 18;
+
+    /** Largest number of configurations kept once read. */
+    static final int CONFIG_CACHE_SIZE = 64;
+
+    /** Machine configured by the configuration file sessions start
+     *  with, or null. */
+    private final Machine _defaultConfig;
+
+    /** Directory holding the configuration files sessions may choose,
+     *  or null. */
+    private final Path _configDir;
+
+    /** Machines configured by the CONFIG_CACHE_SIZE configuration files
+     *  used most recently, by path. */
+    private final Map<Path, Machine> _configs =
+        Collections.synchronizedMap(
+            new LinkedHashMap<Path, Machine>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(
+                    Map.Entry<Path, Machine> eldest) {
+                    return size() > CONFIG_CACHE_SIZE;
+                }
+            });
+}
@@ -0,0 +1,199 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Server class.
+ *  @author Preston Weber
+ */
+public class ServerTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return a new temporary directory, deleted on exit if empty. */
+    private File tempDir() throws Exception {
+        File dir = Files.createTempDirectory("enigma").toFile();
+        dir.deleteOnExit();
+        return dir;
+    }
+
+    /** Return a new temporary configuration file in DIR holding the
+     *  naval rotors B, Beta, I, III and IV. */
+    private File navalConfig(File dir) throws Exception {
+        File config = File.createTempFile("enigma", ".conf", dir);
+        config.deleteOnExit();
+        String text = UPPER_STRING + "\n5 3\n"
+            + "I MQ " + NAVALA.get("I") + "\n"
+            + "III MV " + NAVALA.get("III") + "\n"
+            + "IV MJ " + NAVALA.get("IV") + "\n"
+            + "Beta N " + NAVALA.get("Beta") + "\n"
+            + "B R " + NAVALA.get("B") + "\n";
+        Files.write(config.toPath(), text.getBytes(StandardCharsets.UTF_8));
+        return config;
+    }
+
+    /** Return a thread, started, serving SERVER on CHANNEL until it is
+     *  closed. */
+    private Thread serve(Server server, ServerSocketChannel channel) {
+        Thread serving = new Thread(() -> {
+            try {
+                server.serve(channel);
+            } catch (Exception excp) {
+                /* Closed. */
+            }
+        });
+        serving.start();
+        return serving;
+    }
+
+    /** Return the lines answered by the server on PORT to a session
+     *  sending LINES, which should be answered by EXPECTED lines. */
+    private List<String> session(int port, int expected, String... lines)
+        throws Exception {
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress(
+                InetAddress.getLoopbackAddress(), port));
+            PrintWriter out = new PrintWriter(socket.getOutputStream());
+            BufferedReader in = new BufferedReader(new InputStreamReader(
+                socket.getInputStream()));
+            for (String line : lines) {
+                out.println(line);
+            }
+            out.flush();
+            List<String> result = new ArrayList<>();
+            for (int i = 0; i < expected; i += 1) {
+                result.add(in.readLine());
+            }
+            return result;
+        }
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testSessions() throws Exception {
+        File dir = tempDir();
+        String config = navalConfig(dir).getName();
+        Server server = new Server(null, dir.getPath());
+        ServerSocketChannel channel = Server.open("0");
+        int port =
+            ((InetSocketAddress) channel.getLocalAddress()).getPort();
+        Thread serving = serve(server, channel);
+        ExecutorService clients = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<List<String>>> answers = new ArrayList<>();
+            for (int i = 0; i < 16; i += 1) {
+                answers.add(clients.submit(() -> session(
+                    port, 2, "@ " + config,
+                    "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)",
+                    "FROM his shoulder Hiawatha".toUpperCase(),
+                    "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)",
+                    "QVPQS OKOIL PUBKJ ZPISF XDW")));
+            }
+            for (Future<List<String>> answer : answers) {
+                assertEquals(List.of("QVPQS OKOIL PUBKJ ZPISF XDW",
+                                     "FROMH ISSHO ULDER HIAWA THA"),
+                             answer.get());
+            }
+            List<String> errors = session(port, 3, "FROM",
+                                          "* B Beta III IV I AXLE",
+                                          "@ " + config,
+                                          "* B Beta III IV X AXLE",
+                                          "* B Beta III IV I AXLE",
+                                          "A");
+            assertTrue(errors.get(0).startsWith("Error: "));
+            assertTrue(errors.get(1).startsWith("Error: "));
+            assertTrue(errors.get(2).startsWith("Error: "));
+            assertEquals(List.of("Error: No Configuration Present."),
+                         session(port, 1, "@ " + config, "A"));
+            List<String> outside =
+                session(port, 2, "@ /etc/passwd", "@ ../" + config);
+            assertTrue(outside.get(0).startsWith("Error: "));
+            assertTrue(outside.get(1).startsWith("Error: "));
+        } finally {
+            clients.shutdown();
+            channel.close();
+            serving.join();
+        }
+    }
+
+    @Test
+    public void testConfigDirectory() throws Exception {
+        File dir = tempDir();
+        String config = navalConfig(dir).getName();
+        Server server = new Server(null, dir.getPath());
+        assertTrue(server.config(config) == server.config(config));
+        assertTrue(server.config(config) == server.config("./" + config));
+        String[] refused = {
+            "../" + config, "", ".", navalConfig(tempDir()).getPath(),
+        };
+        for (String name : refused) {
+            try {
+                server.config(name);
+                fail("configuration outside the directory read: " + name);
+            } catch (EnigmaException excp) {
+                /* Expected. */
+            }
+        }
+        try {
+            new Server(null, null).config(config);
+            fail("configuration read with no directory");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+    }
+
+    @Test
+    public void testUnixSocketDeleted() throws Exception {
+        File dir = tempDir();
+        File config = navalConfig(dir);
+        Path socket = dir.toPath().resolve("enigma.sock");
+        Server server = new Server(config.getPath(), null);
+        ServerSocketChannel channel = Server.open(socket.toString());
+        Thread serving = serve(server, channel);
+        try (SocketChannel client = SocketChannel.open(
+                 UnixDomainSocketAddress.of(socket));
+             PrintWriter out = new PrintWriter(
+                 Channels.newWriter(client, StandardCharsets.UTF_8));
+             BufferedReader in = new BufferedReader(
+                 Channels.newReader(client, StandardCharsets.UTF_8))) {
+            out.println("* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)");
+            out.println("QVPQS");
+            out.flush();
+            assertEquals("FROMH", in.readLine());
+            assertTrue(Files.exists(socket));
+        } finally {
+            channel.close();
+            serving.join();
+        }
+        assertFalse(Files.exists(socket));
+    }
+}
@@ -0,0 +1,202 @@
+package enigma;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/** The stepping of the moving rotors of a machine through one cycle of
+ *  their settings, precomputed so that a keystroke is a table walk
+ *  rather than a test of every notch.  Between the keystrokes at which
+ *  some slot other than the fast one moves (carries), only the fast
+ *  rotor moves, so the schedule is kept run-length encoded: entry E is
+ *  idle(E) keystrokes moving only the fast rotor, followed by a carry,
+ *  which takes the moving slots from the settings before it to those
+ *  after it.  Entries are indexed by the settings before their carries,
+ *  and each records the number of keystrokes from the start of the
+ *  cycle, so any position in the cycle is found by binary search.
+ *  Instances are immutable and may be shared by machines with the same
+ *  rotors.
+ *  @author Preston Weber
+ */
+final class SteppingSchedule {
+
+    /** Largest number of carries in a cycle that is scheduled.  Longer
+     *  cycles (those of machines with many moving rotors) are stepped
+     *  by testing the notches on each keystroke. */
+    static final int MAX_ENTRIES = 1 << 16;
+
+    /** Largest number of moving-slot settings stored by a schedule, which
+     *  limits the entries of schedules for machines with many pawls. */
+    static final int MAX_SETTINGS = 1 << 18;
+
+    /** Return the schedule of the cycle of settings reached from
+     *  SETTINGS, the settings of the slots of COMPILED, from which the
+     *  next keystroke is a carry.  SETTINGS itself need not be on the
+     *  cycle.  Returns null if the cycle has more than MAX_ENTRIES
+     *  carries or would store more than MAX_SETTINGS settings, or if it
+     *  has no carries. */
+    static SteppingSchedule build(CompiledRotors compiled, int[] settings) {
+        int first = compiled.firstMoving();
+        int pawls = settings.length - first;
+        int size = compiled.forwardTable(0).length;
+        HashMap<List<Integer>, Integer> seen = new HashMap<>();
+        int[] idle = new int[16];
+        int[] before = new int[16 * pawls], after = new int[16 * pawls];
+        int[] state = settings.clone();
+        int count = 0, run = 0;
+        while (true) {
+            Integer start = seen.get(key(state, first));
+            if (start != null) {
+                idle[start] = run;
+                return new SteppingSchedule(
+                    first, size,
+                    Arrays.copyOfRange(idle, start, count),
+                    Arrays.copyOfRange(before, start * pawls, count * pawls),
+                    Arrays.copyOfRange(after, start * pawls, count * pawls));
+            }
+            if (count == MAX_ENTRIES
+                || (long) (count + 1) * pawls > MAX_SETTINGS) {
+                return null;
+            }
+            if (count == idle.length) {
+                idle = Arrays.copyOf(idle, 2 * count);
+                before = Arrays.copyOf(before, 2 * count * pawls);
+                after = Arrays.copyOf(after, 2 * count * pawls);
+            }
+            seen.put(key(state, first), count);
+            idle[count] = run;
+            System.arraycopy(state, first, before, count * pawls, pawls);
+            compiled.step(state);
+            System.arraycopy(state, first, after, count * pawls, pawls);
+            count += 1;
+            for (run = 0; !compiled.carryPending(state); run += 1) {
+                if (run == size) {
+                    return null;
+                }
+                compiled.step(state);
+            }
+        }
+    }
+
+    /** A schedule whose moving slots start at FIRST, for an alphabet of
+     *  SIZE characters, with the entries described by IDLE and the
+     *  moving settings before and after each carry in BEFORE and AFTER,
+     *  one entry after another. */
+    private SteppingSchedule(int first, int size, int[] idle, int[] before,
+                             int[] after) {
+        _first = first;
+        _pawls = before.length / idle.length;
+        _size = size;
+        _idle = idle;
+        _before = before;
+        _after = after;
+        _ends = new long[idle.length];
+        long end = 0;
+        for (int e = 0; e < idle.length; e += 1) {
+            end += idle[e] + 1;
+            _ends[e] = end;
+            _index.put(key(before, e * _pawls, _pawls), e);
+        }
+    }
+
+    /** Return the number of entries. */
+    int numEntries() {
+        return _idle.length;
+    }
+
+    /** Return the number of keystrokes after which the settings recur. */
+    long period() {
+        return _ends[_ends.length - 1];
+    }
+
+    /** Return the entry whose carry is made from SETTINGS, the settings
+     *  of all slots, or -1 if SETTINGS is not on my cycle or no carry is
+     *  made from it. */
+    int indexOf(int[] settings) {
+        Integer e = _index.get(key(settings, _first));
+        return e == null ? -1 : e;
+    }
+
+    /** Return the number of keystrokes of entry E before its carry. */
+    int idle(int e) {
+        return _idle[e];
+    }
+
+    /** Return the entry following entry E. */
+    int next(int e) {
+        return e + 1 == _idle.length ? 0 : e + 1;
+    }
+
+    /** Set the moving slots of SETTINGS to their settings after the
+     *  carry of entry E. */
+    void carry(int e, int[] settings) {
+        System.arraycopy(_after, e * _pawls, settings, _first, _pawls);
+    }
+
+    /** Return the number of keystrokes from the start of my cycle to
+     *  the position REMAINING keystrokes before the carry of entry E. */
+    long position(int e, int remaining) {
+        return _ends[e] - 1 - remaining;
+    }
+
+    /** Return the entry holding the position POSITION keystrokes from the
+     *  start of my cycle, 0 <= POSITION < period(). */
+    int entryAt(long position) {
+        int e = Arrays.binarySearch(_ends, position + 1);
+        return e >= 0 ? e : -e - 1;
+    }
+
+    /** Set the moving slots of SETTINGS to their settings REMAINING
+     *  keystrokes before the carry of entry E, where REMAINING <=
+     *  idle(E). */
+    void settingsAt(int e, int remaining, int[] settings) {
+        System.arraycopy(_before, e * _pawls, settings, _first, _pawls);
+        int fast = settings.length - 1;
+        settings[fast] -= remaining;
+        if (settings[fast] < 0) {
+            settings[fast] += _size;
+        }
+    }
+
+    /** Return a key identifying the settings of the slots of SETTINGS
+     *  from FIRST on. */
+    private static List<Integer> key(int[] settings, int first) {
+        return key(settings, first, settings.length - first);
+    }
+
+    /** Return a key identifying the LEN settings starting at
+     *  SETTINGS[START]. */
+    private static List<Integer> key(int[] settings, int start, int len) {
+        Integer[] key = new Integer[len];
+        for (int i = 0; i < len; i += 1) {
+            key[i] = settings[start + i];
+        }
+        return Arrays.asList(key);
+    }
+
+    /** First moving slot. */
+    private final int _first;
+
+    /** Number of moving slots. */
+    private final int _pawls;
+
+    /** Size of the alphabet. */
+    private final int _size;
+
+    /** Number of keystrokes of each entry before its carry. */
+    private final int[] _idle;
+
+    /** Settings of the moving slots before each carry. */
+    private final int[] _before;
+
+    /** Settings of the moving slots after each carry. */
+    private final int[] _after;
+
+    /** Number of keystrokes from the start of the cycle to the end of
+     *  each entry. */
+    private final long[] _ends;
+
+    /** Entry of each key of the settings before a carry. */
+    private final HashMap<List<Integer>, Integer> _index =
+        new HashMap<>();
+}
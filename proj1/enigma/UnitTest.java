@@ -10,7 +10,13 @@ public class UnitTest {
     /** Run the JUnit tests in this package. Add xxxTest.class entries to
      *  the arguments of runClasses to run other JUnit tests. */
     public static void main(String[] ignored) {
-        textui.runClasses(PermutationTest.class, MovingRotorTest.class);
+        textui.runClasses(PermutationTest.class, MovingRotorTest.class,
+                          MachineTest.class, KeyTrialsTest.class,
+                          BombeTest.class, HillClimbTest.class,
+                          CoordinatorTest.class, CatalogTest.class,
+                          CompiledConfigTest.class, ServerTest.class,
+                          MachineProcessorTest.class, ByteModeTest.class,
+                          MainTest.class, MetricsTest.class);
     }
 }
 
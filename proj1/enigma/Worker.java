@@ -0,0 +1,83 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static enigma.EnigmaException.*;
+
+/** Searches the units handed out by a Coordinator (see there for the
+ *  protocol) until none are left.  A worker may run in its own process
+ *  or on a thread of the coordinator's.
+ *  @author Preston Weber
+ */
+class Worker {
+
+    /** A search of a range of keys producing results. */
+    interface Search {
+        /** Search keys FROM .. TO-1, passing each result to RESULTS,
+         *  possibly from several threads at once. */
+        void search(long from, long to, Consumer<String> results);
+    }
+
+    /** A worker doing SEARCH for the search identified by JOB. */
+    Worker(String job, Search search) {
+        _job = job;
+        _search = search;
+    }
+
+    /** Search the units handed out by the coordinator at port PORT of
+     *  HOST until it has none left.  Returns the number of units
+     *  searched. */
+    int run(String host, int port) {
+        int units = 0;
+        try (Socket socket = new Socket(host, port);
+             BufferedReader in = new BufferedReader(new InputStreamReader(
+                 socket.getInputStream(), StandardCharsets.UTF_8));
+             PrintWriter out = new PrintWriter(new OutputStreamWriter(
+                 socket.getOutputStream(), StandardCharsets.UTF_8))) {
+            out.println("READY " + _job);
+            out.flush();
+            for (String line = in.readLine(); !"FINISHED".equals(line);
+                 line = in.readLine()) {
+                if (line == null || line.equals("REJECT")) {
+                    throw error("coordinator refused this search");
+                }
+                String[] unit = line.split(" ");
+                if (unit.length != 4 || !unit[0].equals("UNIT")) {
+                    throw error("bad message from coordinator: %s", line);
+                }
+                List<String> results = new ArrayList<>();
+                _search.search(Long.parseLong(unit[2]),
+                               Long.parseLong(unit[3]),
+                               result -> {
+                                   synchronized (results) {
+                                       results.add(result);
+                                   }
+                               });
+                for (String result : results) {
+                    out.println("STOP " + result);
+                }
+                out.println("DONE " + unit[1]);
+                out.flush();
+                units += 1;
+            }
+        } catch (IOException | NumberFormatException excp) {
+            throw error("lost the coordinator: %s", excp.getMessage());
+        }
+        return units;
+    }
+
+    /** Identifies the search. */
+    private final String _job;
+
+    /** Searches each unit. */
+    private final Search _search;
+}
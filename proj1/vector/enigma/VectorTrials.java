@@ -0,0 +1,267 @@
+package enigma;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/** Key trials that run several trials in lock step, one per lane of an
+ *  int vector of at most 256 bits (8 lanes on AVX2), on the incubating
+ *  Vector API.  Each keystroke steps and converts every lane at once,
+ *  looking up the wiring tables with gathers and wrapping rotor offsets
+ *  with masked adds instead of divisions.  Groups of trials that do not
+ *  share a rotor order, and trials left over after the last full group,
+ *  run one at a time as in KeyTrials.
+ *
+ *  This class needs the jdk.incubator.vector module both to compile and
+ *  to run, so it is kept out of the enigma sources and compiled after
+ *  them, into the same class directory:
+ *      javac --add-modules jdk.incubator.vector -cp CLASSES -d CLASSES \
+ *          vector/enigma/VectorTrials.java
+ *  and the program run with java --add-modules jdk.incubator.vector.
+ *  Nothing refers to it directly: KeyTrials.create loads it reflectively
+ *  and falls back to scalar trials when the class or the module is
+ *  absent.
+ *  @author Preston Weber
+ */
+class VectorTrials extends KeyTrials {
+
+    /** The vector shape used for lanes: the preferred one, but no wider
+     *  than 256 bits, since the 512-bit gathers crash the JDK 17 C2
+     *  compiler on AVX-512 processors. */
+    private static final VectorSpecies<Integer> LANES =
+        IntVector.SPECIES_PREFERRED.vectorBitSize() > 256
+        ? IntVector.SPECIES_256 : IntVector.SPECIES_PREFERRED;
+
+    /** Trials for a machine with alphabet ALPHABET, NUMROTORS rotor slots
+     *  and PAWLS pawls, whose rotors are chosen from ROTORS. */
+    VectorTrials(Alphabet alphabet, List<Rotor> rotors, int numRotors,
+                 int pawls) {
+        super(alphabet, rotors, numRotors, pawls);
+        int lanes = LANES.length();
+        _size = alphabet.size();
+        _identity = new int[_size];
+        for (int i = 0; i < _size; i += 1) {
+            _identity[i] = i;
+        }
+        _lanes = new int[numRotors * lanes];
+        _index = new int[lanes];
+        _column = new int[lanes];
+        _plain = new int[lanes][0];
+    }
+
+    @Override
+    void run(int[] ciphertext, int n, int[] orders, int[] positions,
+             int[] plugboard, Scorer scorer, double[] scores) {
+        int lanes = LANES.length();
+        if (plugboard == null) {
+            plugboard = _identity;
+        }
+        for (int t = 0; t < n; ) {
+            if (t + lanes <= n && sameOrder(orders, n, t)) {
+                runLanes(ciphertext, n, t, positions, plugboard,
+                         tables(compile(orders, n, t)), scorer, scores);
+                _last = _plain[lanes - 1];
+                t += lanes;
+            } else {
+                runOne(ciphertext, n, t, orders, positions, plugboard,
+                       scorer, scores);
+                _last = null;
+                t += 1;
+            }
+        }
+    }
+
+    @Override
+    int[] plaintext() {
+        return _last != null ? _last : super.plaintext();
+    }
+
+    /** Return true iff the LANES.length() trials of N starting at T all
+     *  have the same rotor order in slot-major ORDERS. */
+    private boolean sameOrder(int[] orders, int n, int t) {
+        for (int s = 0; s < numRotors(); s += 1) {
+            int first = orders[s * n + t];
+            for (int k = 1; k < LANES.length(); k += 1) {
+                if (orders[s * n + t + k] != first) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /** Run the LANES.length() trials of N starting at T, which all use the
+     *  rotor order compiled into TABLES, storing their SCORER scores in
+     *  SCORES.  CIPHERTEXT, POSITIONS and PLUGBOARD are as for run(). */
+    private void runLanes(int[] ciphertext, int n, int t, int[] positions,
+                          int[] plugboard, Tables tables, Scorer scorer,
+                          double[] scores) {
+        int lanes = LANES.length(), fast = numRotors() - 1;
+        if (_plain[0].length < ciphertext.length) {
+            for (int k = 0; k < lanes; k += 1) {
+                _plain[k] = new int[ciphertext.length];
+            }
+        }
+        IntVector.zero(LANES).intoArray(_lanes, 0);
+        for (int s = 1; s <= fast; s += 1) {
+            IntVector.fromArray(LANES, positions, (s - 1) * n + t)
+                .intoArray(_lanes, s * lanes);
+        }
+        for (int i = 0; i < ciphertext.length; i += 1) {
+            step(tables);
+            IntVector x = IntVector.broadcast(LANES, plugboard[ciphertext[i]]);
+            for (int a = fast; a > 0; a -= 1) {
+                x = through(x, tables._forward[a], a);
+            }
+            x = gather(tables._forward[0], x);
+            for (int b = 1; b <= fast; b += 1) {
+                x = through(x, tables._inverse[b], b);
+            }
+            gather(plugboard, x).intoArray(_column, 0);
+            for (int k = 0; k < lanes; k += 1) {
+                _plain[k][i] = _column[k];
+            }
+        }
+        for (int k = 0; k < lanes; k += 1) {
+            scores[t + k] = scorer.score(_plain[k], ciphertext.length);
+        }
+    }
+
+    /** Advance the settings of every lane for one keystroke, following
+     *  the stepping rule of CompiledRotors.step. */
+    private void step(Tables tables) {
+        int lanes = LANES.length(), fast = numRotors() - 1;
+        for (int j = tables._firstMoving; j < fast; j += 1) {
+            if (!tables._moves[j]) {
+                continue;
+            }
+            IntVector setting = IntVector.fromArray(LANES, _lanes, j * lanes);
+            IntVector right =
+                IntVector.fromArray(LANES, _lanes, (j + 1) * lanes);
+            VectorMask<Integer> advance =
+                gather(tables._notches[j + 1], right)
+                .compare(VectorOperators.NE, 0);
+            if (tables._doubleSteps[j]) {
+                advance = advance.or(gather(tables._notches[j], setting)
+                                     .compare(VectorOperators.NE, 0));
+            }
+            next(setting, advance).intoArray(_lanes, j * lanes);
+        }
+        if (tables._moves[fast]) {
+            IntVector setting =
+                IntVector.fromArray(LANES, _lanes, fast * lanes);
+            next(setting, LANES.maskAll(true))
+                .intoArray(_lanes, fast * lanes);
+        }
+    }
+
+    /** Return SETTING advanced by one in the lanes selected by ADVANCE. */
+    private IntVector next(IntVector setting, VectorMask<Integer> advance) {
+        IntVector result = setting.add(1, advance);
+        return result.sub(_size, result.compare(VectorOperators.EQ, _size));
+    }
+
+    /** Return the result of passing X through the rotor in SLOT at the
+     *  lanes' settings, where TABLE is its forward or inverse table at
+     *  setting 0, doubled so that it may be indexed without wrapping. */
+    private IntVector through(IntVector x, int[] table, int slot) {
+        IntVector setting =
+            IntVector.fromArray(LANES, _lanes, slot * LANES.length());
+        IntVector result = gather(table, x.add(setting)).sub(setting);
+        return result.add(_size, result.compare(VectorOperators.LT, 0));
+    }
+
+    /** Return the elements of TABLE at the indices in the lanes of
+     *  INDEX. */
+    private IntVector gather(int[] table, IntVector index) {
+        index.intoArray(_index, 0);
+        return IntVector.fromArray(LANES, table, 0, _index, 0);
+    }
+
+    /** Return the lane tables of COMPILED, building them on first use. */
+    private Tables tables(CompiledRotors compiled) {
+        Tables tables = _tables.get(compiled);
+        if (tables == null) {
+            tables = new Tables(compiled, _size);
+            _tables.put(compiled, tables);
+        }
+        return tables;
+    }
+
+    /** The tables of a compiled rotor order laid out for gathers. */
+    private static class Tables {
+
+        /** Tables for the rotors of COMPILED over an alphabet of SIZE
+         *  characters. */
+        Tables(CompiledRotors compiled, int size) {
+            int slots = compiled.numSlots();
+            _firstMoving = compiled.firstMoving();
+            _forward = new int[slots][];
+            _inverse = new int[slots][];
+            _notches = new int[slots][size];
+            _moves = new boolean[slots];
+            _doubleSteps = new boolean[slots];
+            for (int i = 0; i < slots; i += 1) {
+                _forward[i] = doubled(compiled.forwardTable(i));
+                _inverse[i] = doubled(compiled.inverseTable(i));
+                for (int k = 0; k < size; k += 1) {
+                    _notches[i][k] = compiled.atNotch(i, k) ? 1 : 0;
+                }
+                _moves[i] = compiled.moves(i);
+                _doubleSteps[i] = compiled.doubleSteps(i);
+            }
+        }
+
+        /** Return TABLE followed by a second copy of itself. */
+        private static int[] doubled(int[] table) {
+            int[] result = new int[2 * table.length];
+            System.arraycopy(table, 0, result, 0, table.length);
+            System.arraycopy(table, 0, result, table.length, table.length);
+            return result;
+        }
+
+        /** Index of the leftmost slot with a pawl. */
+        private final int _firstMoving;
+
+        /** Doubled forward and inverse tables of each slot. */
+        private final int[][] _forward, _inverse;
+
+        /** _notches[I][K] is 1 iff slot I is at a notch at setting K, and
+         *  0 otherwise. */
+        private final int[][] _notches;
+
+        /** Which slots move, and which double-step, as in
+         *  CompiledRotors. */
+        private final boolean[] _moves, _doubleSteps;
+    }
+
+    /** Size of the alphabet. */
+    private final int _size;
+
+    /** The identity table, used when there is no plugboard. */
+    private final int[] _identity;
+
+    /** Settings of the lanes being run: slot S of lane K is at
+     *  _lanes[S * LANES.length() + K]. */
+    private final int[] _lanes;
+
+    /** Scratch index map for gathers. */
+    private final int[] _index;
+
+    /** One converted character of each lane. */
+    private final int[] _column;
+
+    /** Decryption of each lane. */
+    private final int[][] _plain;
+
+    /** Decryption of the last trial run, or null if it ran alone. */
+    private int[] _last;
+
+    /** Lane tables of the rotor orders seen so far. */
+    private final IdentityHashMap<CompiledRotors, Tables> _tables =
+        new IdentityHashMap<>();
+}